@@ -8,9 +8,10 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
-import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 
 public class Filter {
@@ -30,7 +31,193 @@ public class Filter {
 	final String		filter;
 	final boolean		extended;
 
-	abstract class Query {
+	/**
+	 * The compiled form of the filter, created on the first match. Filters are
+	 * immutable so it is safe to share them between threads.
+	 */
+	private volatile Expr	expr;
+
+	abstract static class Expr {
+		abstract boolean match(Get get) throws Exception;
+	}
+
+	static final Expr INVALID = new Expr() {
+		@Override
+		boolean match(Get get) {
+			return false;
+		}
+	};
+
+	static final class And extends Expr {
+		private final Expr[] exprs;
+
+		And(Expr[] exprs) {
+			this.exprs = exprs;
+		}
+
+		@Override
+		boolean match(Get get) throws Exception {
+			for (Expr e : exprs) {
+				if (!e.match(get))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	static final class Or extends Expr {
+		private final Expr[] exprs;
+
+		Or(Expr[] exprs) {
+			this.exprs = exprs;
+		}
+
+		@Override
+		boolean match(Get get) throws Exception {
+			for (Expr e : exprs) {
+				if (e.match(get))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	static final class Not extends Expr {
+		private final Expr expr;
+
+		Not(Expr expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		boolean match(Get get) throws Exception {
+			return !expr.match(get);
+		}
+	}
+
+	/**
+	 * The value of a simple expression converted to the type of the property
+	 * it was last compared with. A null value indicates that the value could
+	 * not be converted.
+	 */
+	static final class Operand {
+		final Class< ? >	type;
+		final Object		value;
+		final boolean		numeric;
+
+		Operand(Class< ? > type, Object value, boolean numeric) {
+			this.type = type;
+			this.value = value;
+			this.numeric = numeric;
+		}
+	}
+
+	final class Simple extends Expr {
+		private final String		key;
+		private final int			op;
+		private final String		value;
+		private final String		approx;
+		private volatile Operand	operand;
+
+		Simple(String key, int op, String value) {
+			this.key = key;
+			this.op = op;
+			this.value = value;
+			this.approx = op == APPROX ? fixupString(value) : null;
+		}
+
+		@Override
+		boolean match(Get get) throws Exception {
+			return compare(get.get(key));
+		}
+
+		boolean compare(Object obj) {
+			if (obj == null)
+				return false;
+			if ((op == EQ) && (value.length() == 1) && (value.charAt(0) == WILDCARD))
+				return true;
+			try {
+				Class< ? > type = obj.getClass();
+				if (type == String.class) {
+					return compareString((String) obj);
+				} else if (type == Character.class) {
+					return compareString(obj.toString());
+				} else if (type == Boolean.class) {
+					if (op != EQ)
+						return false;
+					int a = Boolean.valueOf(value).booleanValue() ? 1 : 0;
+					int b = ((Boolean) obj).booleanValue() ? 1 : 0;
+					return compareSign(op, a - b);
+				} else if (obj instanceof Collection< ? >) {
+					for (Object x : (Collection< ? >) obj)
+						if (compare(x))
+							return true;
+					return false;
+				} else if (type.isArray()) {
+					int len = Array.getLength(obj);
+					for (int i = 0; i < len; i++)
+						if (compare(Array.get(obj, i)))
+							return true;
+					return false;
+				}
+
+				Operand o = operand(type);
+				if (o.value == null)
+					return false;
+				if (op == EQ && !o.numeric)
+					return o.value.equals(obj);
+
+				@SuppressWarnings("unchecked")
+				Comparable<Object> source = (Comparable<Object>) o.value;
+				return compareSign(op, source.compareTo(obj));
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		private boolean compareString(String s) {
+			if (op == APPROX)
+				return approx.equals(fixupString(s));
+			return Filter.this.compareString(s, op, value);
+		}
+
+		private Operand operand(Class< ? > type) {
+			Operand o = operand;
+			if (o == null || o.type != type) {
+				o = convert(type);
+				operand = o;
+			}
+			return o;
+		}
+
+		private Operand convert(Class< ? > type) {
+			try {
+				if (type == Long.class)
+					return new Operand(type, Long.valueOf(value), true);
+				if (type == Integer.class)
+					return new Operand(type, Integer.valueOf(value), true);
+				if (type == Short.class)
+					return new Operand(type, Short.valueOf(value), true);
+				if (type == Byte.class)
+					return new Operand(type, Byte.valueOf(value), true);
+				if (type == Double.class)
+					return new Operand(type, Double.valueOf(value), true);
+				if (type == Float.class)
+					return new Operand(type, Float.valueOf(value), true);
+				if (type == BigInteger.class)
+					return new Operand(type, new BigInteger(value), true);
+				if (type == BigDecimal.class)
+					return new Operand(type, new BigDecimal(value), true);
+
+				Constructor< ? > constructor = type.getConstructor(String.class);
+				return new Operand(type, constructor.newInstance(value), false);
+			} catch (Exception e) {
+				return new Operand(type, null, false);
+			}
+		}
+	}
+
+	class Parser {
 		static final String	GARBAGE		= "Trailing garbage";
 		static final String	MALFORMED	= "Malformed query";
 		static final String	EMPTY		= "Empty list";
@@ -41,25 +228,25 @@ public class Filter {
 
 		private String		tail;
 
-		boolean match() throws Exception {
+		Expr parse() throws IllegalArgumentException {
 			tail = filter;
-			boolean val = doQuery();
+			Expr val = doQuery();
 			if (tail.length() > 0)
 				error(GARBAGE);
 			return val;
 		}
 
-		private boolean doQuery() throws Exception {
+		private Expr doQuery() {
 			if (tail.length() < 3 || !prefix("("))
 				error(MALFORMED);
-			boolean val;
+			Expr val;
 
 			switch (tail.charAt(0)) {
 				case '&' :
-					val = doAnd();
+					val = new And(doList());
 					break;
 				case '|' :
-					val = doOr();
+					val = new Or(doList());
 					break;
 				case '!' :
 					val = doNot();
@@ -74,16 +261,15 @@ public class Filter {
 			return val;
 		}
 
-		private boolean doAnd() throws Exception {
+		private Expr[] doList() {
 			tail = skip();
-			boolean val = true;
+			List<Expr> list = new ArrayList<Expr>();
 			if (!tail.startsWith("("))
 				error(EMPTY);
 			do {
-				if (!doQuery())
-					val = false;
+				list.add(doQuery());
 			} while (tail.startsWith("("));
-			return val;
+			return list.toArray(new Expr[list.size()]);
 		}
 
 		String skip() {
@@ -94,28 +280,16 @@ public class Filter {
 			return a;
 		}
 
-		private boolean doOr() throws Exception {
-			tail = skip();
-			boolean val = false;
-			if (!tail.startsWith("("))
-				error(EMPTY);
-			do {
-				if (doQuery())
-					val = true;
-			} while (tail.startsWith("("));
-			return val;
-		}
-
-		private boolean doNot() throws Exception {
+		private Expr doNot() {
 			tail = skip();
 			if (!tail.startsWith("("))
 				error(SUBEXPR);
-			return !doQuery();
+			return new Not(doQuery());
 		}
 
-		boolean doSimple() throws Exception {
+		Expr doSimple() {
 			int op = 0;
-			Object attr = getAttr();
+			String attr = getAttr();
 
 			if (prefix("="))
 				op = EQ;
@@ -134,7 +308,7 @@ public class Filter {
 			else
 				error(OPERATOR);
 
-			return compare(attr, op, getValue());
+			return new Simple(attr, op, getValue());
 		}
 
 		boolean prefix(String pre) {
@@ -144,7 +318,7 @@ public class Filter {
 			return true;
 		}
 
-		Object getAttr() throws Exception {
+		String getAttr() {
 			int len = tail.length();
 			int ix = 0;
 			label: for (; ix < len; ix++) {
@@ -162,11 +336,9 @@ public class Filter {
 			}
 			String attr = tail.substring(0, ix);
 			tail = tail.substring(ix);
-			return getProp(attr);
+			return attr;
 		}
 
-		abstract Object getProp(String key) throws Exception;
-
 		private String getValue() {
 			StringBuilder sb = new StringBuilder();
 			int len = tail.length();
@@ -197,103 +369,32 @@ public class Filter {
 		void error(String m) throws IllegalArgumentException {
 			throw new IllegalArgumentException(m + " " + tail);
 		}
-
-		@SuppressWarnings("unchecked")
-		<T> boolean compare(T obj, int op, String s) {
-			if (obj == null)
-				return false;
-			if ((op == EQ) && (s.length() == 1) && (s.charAt(0) == WILDCARD))
-				return true;
-			try {
-				Class<T> numClass = (Class<T>) obj.getClass();
-				if (numClass == String.class) {
-					return compareString((String) obj, op, s);
-				} else if (numClass == Character.class) {
-					return compareString(obj.toString(), op, s);
-				} else if (numClass == Long.class) {
-					return compareSign(op, Long.valueOf(s).compareTo((Long) obj));
-				} else if (numClass == Integer.class) {
-					return compareSign(op, Integer.valueOf(s).compareTo((Integer) obj));
-				} else if (numClass == Short.class) {
-					return compareSign(op, Short.valueOf(s).compareTo((Short) obj));
-				} else if (numClass == Byte.class) {
-					return compareSign(op, Byte.valueOf(s).compareTo((Byte) obj));
-				} else if (numClass == Double.class) {
-					return compareSign(op, Double.valueOf(s).compareTo((Double) obj));
-				} else if (numClass == Float.class) {
-					return compareSign(op, Float.valueOf(s).compareTo((Float) obj));
-				} else if (numClass == Boolean.class) {
-					if (op != EQ)
-						return false;
-					int a = Boolean.valueOf(s).booleanValue() ? 1 : 0;
-					int b = ((Boolean) obj).booleanValue() ? 1 : 0;
-					return compareSign(op, a - b);
-				} else if (numClass == BigInteger.class) {
-					return compareSign(op, new BigInteger(s).compareTo((BigInteger) obj));
-				} else if (numClass == BigDecimal.class) {
-					return compareSign(op, new BigDecimal(s).compareTo((BigDecimal) obj));
-				} else if (obj instanceof Collection< ? >) {
-					for (Object x : (Collection< ? >) obj)
-						if (compare(x, op, s))
-							return true;
-				} else if (numClass.isArray()) {
-					int len = Array.getLength(obj);
-					for (int i = 0; i < len; i++)
-						if (compare(Array.get(obj, i), op, s))
-							return true;
-				} else {
-					Constructor<T> constructor = numClass.getConstructor(String.class);
-					T source = constructor.newInstance(s);
-					if (op == EQ)
-						return source.equals(obj);
-					Comparable<T> a = Comparable.class.cast(source);
-					Comparable<T> b = Comparable.class.cast(obj);
-					return compareSign(op, a.compareTo((T) b));
-				}
-			} catch (Exception e) {}
-			return false;
-		}
 	}
 
-	class DictQuery extends Query {
-		private Dictionary< ? , ? > dict;
+	static class DictGet implements Get {
+		private final Dictionary< ? , ? > dict;
 
-		DictQuery(Dictionary< ? , ? > dict) {
+		DictGet(Dictionary< ? , ? > dict) {
 			this.dict = dict;
 		}
 
-		@Override
-		Object getProp(String key) {
+		public Object get(String key) {
 			return dict.get(key);
 		}
 	}
 
-	class MapQuery extends Query {
-		private Map< ? , ? > map;
+	static class MapGet implements Get {
+		private final Map< ? , ? > map;
 
-		MapQuery(Map< ? , ? > dict) {
-			this.map = dict;
+		MapGet(Map< ? , ? > map) {
+			this.map = map;
 		}
 
-		@Override
-		Object getProp(String key) {
+		public Object get(String key) {
 			return map.get(key);
 		}
 	}
 
-	class GetQuery extends Query {
-		private Get get;
-
-		GetQuery(Get get) {
-			this.get = get;
-		}
-
-		@Override
-		Object getProp(String key) throws Exception {
-			return get.get(key);
-		}
-	}
-
 	public Filter(String filter, boolean extended) throws IllegalArgumentException {
 		this.filter = filter;
 		this.extended = extended;
@@ -306,24 +407,16 @@ public class Filter {
 	}
 
 	public boolean match(Dictionary< ? , ? > dict) throws Exception {
-		try {
-			return new DictQuery(dict).match();
-		} catch (IllegalArgumentException e) {
-			return false;
-		}
+		return match(new DictGet(dict));
 	}
 
 	public boolean matchMap(Map< ? , ? > dict) throws Exception {
-		try {
-			return new MapQuery(dict).match();
-		} catch (IllegalArgumentException e) {
-			return false;
-		}
+		return match(new MapGet(dict));
 	}
 
 	public boolean match(Get get) throws Exception {
 		try {
-			return new GetQuery(get).match();
+			return compile().match(get);
 		} catch (IllegalArgumentException e) {
 			return false;
 		}
@@ -331,13 +424,57 @@ public class Filter {
 
 	public String verify() throws Exception {
 		try {
-			new DictQuery(new Hashtable<Object,Object>()).match();
+			new Parser().parse();
 		} catch (IllegalArgumentException e) {
 			return e.getMessage();
 		}
 		return null;
 	}
 
+	/**
+	 * Answer the value the given attribute must be equal to for this filter to
+	 * match. This is only known for an equality without wildcards at the top
+	 * of the filter or in a top level and. The value is taken from the
+	 * compiled filter, so it is the value the matcher compares with.
+	 *
+	 * @param key the name of the attribute
+	 * @return the value or {@code null} if the filter does not demand one
+	 */
+	public String getEquality(String key) {
+		return getEquality(compile(), key);
+	}
+
+	private String getEquality(Expr expr, String key) {
+		if (expr instanceof And) {
+			for (Expr e : ((And) expr).exprs) {
+				String value = getEquality(e, key);
+				if (value != null)
+					return value;
+			}
+		} else if (expr instanceof Simple) {
+			Simple simple = (Simple) expr;
+			if (simple.op == EQ && key.equals(simple.key) && simple.value.indexOf(WILDCARD) < 0)
+				return simple.value;
+		}
+		return null;
+	}
+
+	/**
+	 * Parse the filter once. An invalid filter never matches.
+	 */
+	private Expr compile() {
+		Expr e = expr;
+		if (e == null) {
+			try {
+				e = new Parser().parse();
+			} catch (IllegalArgumentException iae) {
+				e = INVALID;
+			}
+			expr = e;
+		}
+		return e;
+	}
+
 	@Override
 	public String toString() {
 		return filter;
@@ -408,20 +545,28 @@ public class Filter {
 	boolean patSubstr(String s, String pat) {
 		if (s == null)
 			return false;
-		if (pat.length() == 0)
-			return s.length() == 0;
-		if (pat.charAt(0) == WILDCARD) {
-			pat = pat.substring(1);
-			for (;;) {
-				if (patSubstr(s, pat))
-					return true;
-				if (s.length() == 0)
-					return false;
-				s = s.substring(1);
-			}
+		return patSubstr(s, 0, pat, 0);
+	}
+
+	private boolean patSubstr(String s, int si, String pat, int pi) {
+		int slen = s.length();
+		int plen = pat.length();
+		while (pi < plen && pat.charAt(pi) != WILDCARD) {
+			if (si == slen || s.charAt(si) != pat.charAt(pi))
+				return false;
+			si++;
+			pi++;
+		}
+		if (pi == plen)
+			return si == slen;
+
+		pi++;
+		for (;;) {
+			if (patSubstr(s, si, pat, pi))
+				return true;
+			if (si == slen)
+				return false;
+			si++;
 		}
-		if (s.length() == 0 || s.charAt(0) != pat.charAt(0))
-			return false;
-		return patSubstr(s.substring(1), pat.substring(1));
 	}
 }
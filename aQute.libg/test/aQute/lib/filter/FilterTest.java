@@ -1,5 +1,9 @@
 package aQute.lib.filter;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import junit.framework.TestCase;
 
 public class FilterTest extends TestCase {
@@ -18,6 +22,37 @@ public class FilterTest extends TestCase {
 		verify("(willResolve=false)");
 	}
 
+	public void testTypedOperands() throws Exception {
+		Map<String,Object> map = new HashMap<String,Object>();
+		map.put("long", 99L);
+		map.put("double", 1.5d);
+		map.put("list", Arrays.asList("a", "b", "c"));
+		map.put("string", "Hello World");
+
+		Filter filter = new Filter("(&(long>=99)(long<=100)(double>=1.0)(list=b)(string=H*o W*)(string~=hello  world))");
+		for (int i = 0; i < 3; i++)
+			assertTrue(filter.matchMap(map));
+
+		map.put("long", 101);
+		assertFalse(filter.matchMap(map));
+		map.put("long", 100);
+		assertTrue(filter.matchMap(map));
+
+		assertFalse(new Filter("(long=1").matchMap(map));
+		assertNotNull(new Filter("(long=1").verify());
+	}
+
+	public void testEquality() throws Exception {
+		assertEquals("a", new Filter("(&(x=a)(version>=1))").getEquality("x"));
+		assertEquals("a(b", new Filter("(x=a\\(b)").getEquality("x"));
+		assertNull(new Filter("(x=a*)").getEquality("x"));
+		assertNull(new Filter("(|(x=a)(x=b))").getEquality("x"));
+		assertNull(new Filter("(!(x=a))").getEquality("x"));
+		assertNull(new Filter("(x>=a)").getEquality("x"));
+		assertNull(new Filter("(y=a)").getEquality("x"));
+		assertNull(new Filter("(x=a").getEquality("x"));
+	}
+
 	private void verify(String string) throws IllegalArgumentException, Exception {
 		assertNull("Invalid filter", new Filter(string).verify());
 
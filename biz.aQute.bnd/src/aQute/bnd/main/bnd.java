@@ -848,10 +848,37 @@ public class bnd extends Processor {
 
 		@Description("Do full")
 		boolean full();
+
+		@Description("Build all projects in the workspace in dependency order, projects that do not depend on each other are built in parallel")
+		boolean workspace();
+
+		@Description("The maximum number of projects to build in parallel with --workspace, default is the number of processors")
+		int jobs();
 	}
 
 	@Description("Build a project. This will create the jars defined in the bnd.bnd and sub-builders.")
 	public void _build(final buildoptions opts) throws Exception {
+		if (opts.workspace()) {
+			Workspace ws = Workspace.findWorkspace(getBase());
+			if (ws == null || !ws.isValid()) {
+				messages.NoValidWorkspace(getBase());
+				return;
+			}
+			Collection<Project> projects = ws.getAllProjects();
+			if (projects.isEmpty()) {
+				out.println("No projects");
+				return;
+			}
+			int parallel = opts.jobs() > 0 ? opts.jobs() : Runtime.getRuntime().availableProcessors();
+			boolean ok = ws.build(projects, opts.test(), parallel);
+			for (Project p : projects) {
+				getInfo(p, p + ": ");
+			}
+			getInfo(ws);
+			if (!ok && isOk())
+				error("Workspace build was canceled");
+			return;
+		}
 
 		perProject(opts, new PerProject() {
 			public void doit(Project p) throws Exception {
@@ -6,6 +6,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import aQute.bnd.http.HttpClient;
 import aQute.bnd.service.url.State;
@@ -103,6 +105,34 @@ public class HttpClientCacheTest extends TestCase {
 		}
 	}
 
+	public void testRevalidate() throws Exception {
+		try (HttpClient client = new HttpClient();) {
+			client.setCache(cache);
+			etag = "1234";
+
+			URI a = new URI(httpServer.getBaseURI() + "/testetag?a");
+			URI b = new URI(httpServer.getBaseURI() + "/testetag?b");
+			client.build().useCache().go(a);
+			client.build().useCache().go(b);
+
+			Map<URI,State> states = client.revalidate(0, TimeUnit.SECONDS).getValue();
+			assertEquals(2, states.size());
+			assertEquals(State.UNMODIFIED, states.get(a));
+			assertEquals(State.UNMODIFIED, states.get(b));
+			assertTrue(new File(cache, "index.json").isFile());
+
+			// Both were just verified so nothing is checked
+
+			states = client.revalidate(1, TimeUnit.HOURS).getValue();
+			assertTrue(states.isEmpty());
+
+			etag = "5678";
+			states = client.revalidate(0, TimeUnit.SECONDS).getValue();
+			assertEquals(State.UPDATED, states.get(a));
+			assertEquals("5678", IO.collect(client.build().useCache(100000).go(a)));
+		}
+	}
+
 	/**
 	 * Use the cached form but use our own file, not one from the central cache
 	 * 
@@ -5,12 +5,16 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.util.promise.Promise;
 
 import aQute.bnd.http.HttpClient;
+import aQute.bnd.http.HttpRequestException;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.service.progress.ProgressPlugin;
 import aQute.bnd.service.url.State;
@@ -35,7 +39,9 @@ public class HttpClientTest extends TestCase {
 	}
 
 	public static class TestServer extends Httpbin {
-		boolean second = false;
+		boolean			second		= false;
+		AtomicInteger	concurrent	= new AtomicInteger();
+		AtomicInteger	maximum		= new AtomicInteger();
 
 		public TestServer(Config config) throws Exception {
 			super(config);
@@ -53,6 +59,20 @@ public class HttpClientTest extends TestCase {
 			second = true;
 		}
 
+		public void _concurrent(Request rq, Response rsp) throws Exception {
+			int n = concurrent.incrementAndGet();
+			try {
+				int max;
+				while ((max = maximum.get()) < n && !maximum.compareAndSet(max, n))
+					;
+				Thread.sleep(100);
+			} finally {
+				concurrent.decrementAndGet();
+			}
+			rsp.code = 200;
+			rsp.content = "OK".getBytes();
+		}
+
 	}
 
 	@Override
@@ -167,6 +187,29 @@ public class HttpClientTest extends TestCase {
 		}
 	}
 
+	public void testAsyncConnectionsPerHost() throws Exception {
+		try (HttpClient hc = new HttpClient();) {
+			hc.setMaxConnectionsPerHost(2);
+
+			List<Promise<String>> promises = new ArrayList<>();
+			for (int i = 0; i < 10; i++)
+				promises.add(hc.build().get(String.class).async(httpServer.getBaseURI("concurrent")));
+
+			for (Promise<String> p : promises)
+				assertEquals("OK", p.getValue());
+
+			assertTrue(httpServer.maximum.get() >= 1);
+			assertTrue(httpServer.maximum.get() <= 2);
+		}
+	}
+
+	public void testAsyncFailure() throws Exception {
+		try (HttpClient hc = new HttpClient();) {
+			Promise<String> p = hc.build().get(String.class).async(httpServer.getBaseURI("status/500"));
+			assertTrue(p.getFailure() instanceof HttpRequestException);
+		}
+	}
+
 	public void testFetch() throws Exception {
 		try (HttpClient hc = new HttpClient();) {
 			String text = hc.build().get(String.class).go(httpServer.getBaseURI("get"));
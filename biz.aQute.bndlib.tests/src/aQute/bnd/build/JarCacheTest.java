@@ -0,0 +1,118 @@
+package aQute.bnd.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import aQute.bnd.osgi.Resource;
+
+import aQute.bnd.osgi.Jar;
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class JarCacheTest extends TestCase {
+
+	public void testShared() throws Exception {
+		File tmp = IO.getFile("generated/tmp/jarcache");
+		IO.delete(tmp);
+		tmp.mkdirs();
+		File file = new File(tmp, "asm.jar");
+		IO.copy(IO.getFile("jar/asm.jar"), file);
+
+		JarCache cache = new JarCache();
+		try {
+			Jar a = cache.get(file);
+			Jar b = cache.get(file);
+			assertNotSame(a, b);
+			assertEquals("asm", a.getName());
+			assertEquals(file, a.getSource());
+			assertEquals(a.getResources().keySet(), b.getResources().keySet());
+			assertSame(a.getResource("META-INF/MANIFEST.MF"), b.getResource("META-INF/MANIFEST.MF"));
+
+			// closing one user does not affect the other
+			a.close();
+			a.close();
+			assertNotNull(IO.collect(b.getResource("META-INF/MANIFEST.MF").openInputStream()));
+
+			// the resources are shared until a user changes them
+			try {
+				b.getResources().remove("META-INF/MANIFEST.MF");
+				fail("expected the shared resources to be unmodifiable");
+			} catch (UnsupportedOperationException e) {
+				// expected
+			}
+
+			// changing a jar does not affect the other users
+			b.remove("META-INF/MANIFEST.MF");
+			assertNull(b.getResources().remove("META-INF/MANIFEST.MF"));
+			Jar c = cache.get(file);
+			assertNotNull(c.getResource("META-INF/MANIFEST.MF"));
+			assertTrue(c.getDirectories().get("META-INF").containsKey("META-INF/MANIFEST.MF"));
+			assertSame(c.getResource("org/objectweb/asm/ClassReader.class"),
+					b.getResource("org/objectweb/asm/ClassReader.class"));
+			b.close();
+
+			// a changed file is read again, the new content is swapped in
+			// since the old file is still open
+			File changed = new File(tmp, "osgi.jar");
+			IO.copy(IO.getFile("jar/osgi.jar"), changed);
+			changed.setLastModified(file.lastModified() + 2000);
+			Files.move(changed.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Jar d = cache.get(file);
+			assertNull(d.getResource("org/objectweb/asm/ClassReader.class"));
+
+			// the old jar stays open as long as it is used
+			assertNotNull(IO.collect(c.getResource("org/objectweb/asm/ClassReader.class").openInputStream()));
+			c.close();
+			d.close();
+
+			// directories are not cached
+			Jar e = cache.get(tmp);
+			Jar f = cache.get(tmp);
+			assertNotSame(e.getResource("asm.jar"), f.getResource("asm.jar"));
+			e.close();
+			f.close();
+		} finally {
+			cache.close();
+			IO.delete(tmp);
+		}
+	}
+
+	public void testEvict() throws Exception {
+		File tmp = IO.getFile("generated/tmp/jarcache-evict");
+		IO.delete(tmp);
+		tmp.mkdirs();
+		File asm = new File(tmp, "asm.jar");
+		IO.copy(IO.getFile("jar/asm.jar"), asm);
+		File osgi = new File(tmp, "osgi.jar");
+		IO.copy(IO.getFile("jar/osgi.jar"), osgi);
+
+		JarCache cache = new JarCache(1);
+		try {
+			Jar a = cache.get(asm);
+			Resource manifest = a.getResource("META-INF/MANIFEST.MF");
+			a.close();
+
+			// an unused jar stays open for the next user
+			Jar b = cache.get(asm);
+			assertSame(manifest, b.getResource("META-INF/MANIFEST.MF"));
+			b.close();
+
+			// it is closed when too many jars are unused
+			cache.get(osgi).close();
+			try {
+				IO.collect(manifest.openInputStream());
+				fail("expected the evicted jar to be closed");
+			} catch (IOException e) {
+				// expected
+			}
+			Jar c = cache.get(asm);
+			assertNotSame(manifest, c.getResource("META-INF/MANIFEST.MF"));
+			c.close();
+		} finally {
+			cache.close();
+			IO.delete(tmp);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package aQute.bnd.osgi;
+
+import junit.framework.TestCase;
+
+public class MacroCacheTest extends TestCase {
+
+	public void testInstructionChanged() throws Exception {
+		try (Processor top = new Processor(); Processor p = new Processor(top)) {
+			p.setProperty("a", "${b}");
+			p.setProperty("b", "x");
+			assertFalse(p.isMacroCache());
+			assertEquals("x", p.getProperty("a"));
+			assertNull(p.expansions);
+
+			// enabled later in the parent, through a macro
+			top.setProperty(Constants.MACROCACHE, "${enabled}");
+			top.setProperty("enabled", "true");
+			assertTrue(p.isMacroCache());
+			assertEquals("x", p.getProperty("a"));
+			assertTrue(p.expansions.containsKey("a"));
+
+			// disabled again
+			top.setProperty("enabled", "false");
+			assertFalse(p.isMacroCache());
+			p.setProperty(Constants.MACROCACHE, "true");
+			assertTrue(p.isMacroCache());
+			p.unsetProperty(Constants.MACROCACHE);
+			assertFalse(p.isMacroCache());
+		}
+	}
+
+	public void testOffWithParallelSub() throws Exception {
+		try (Processor top = new Processor(); Processor p = new Processor(top)) {
+			top.setProperty(Constants.MACROCACHE, "true");
+			assertTrue(p.isMacroCache());
+			top.setProperty(Constants.PARALLELSUB, "true");
+			assertFalse(p.isMacroCache());
+		}
+	}
+
+	public void testReportedNotCached() throws Exception {
+		try (Processor p = new Processor()) {
+			p.setProperty(Constants.MACROCACHE, "true");
+			p.setProperty("a", "${undefined}");
+			p.setProperty("b", "${toupper;b}");
+			assertEquals("${undefined}", p.getProperty("a"));
+			assertEquals("B", p.getProperty("b"));
+			assertEquals(1, p.getWarnings().size());
+			assertFalse(p.expansions.containsKey("a"));
+			assertTrue(p.expansions.containsKey("b"));
+
+			// the warning is reported again
+			p.getWarnings().clear();
+			p.getProperty("a");
+			assertEquals(1, p.getWarnings().size());
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package aQute.bnd.osgi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class ZipWriterTest extends TestCase {
+	File tmp;
+
+	@Override
+	protected void setUp() throws Exception {
+		tmp = IO.getFile("generated/tmp/zipwriter");
+		IO.delete(tmp);
+		tmp.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IO.delete(tmp);
+	}
+
+	public void testStoredAndDeflated() throws Exception {
+		Map<String,byte[]> content = new LinkedHashMap<>();
+		content.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+		content.put("stored.txt", "stored data".getBytes("UTF-8"));
+		content.put("deflated.txt", repeat("deflated data ", 1000));
+		content.put("empty.txt", new byte[0]);
+		content.put("nl/été.txt", "utf-8 name".getBytes("UTF-8"));
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ZipWriter zout = new ZipWriter(bout, true);
+		try {
+			for (Map.Entry<String,byte[]> e : content.entrySet()) {
+				ZipEntry ze = new ZipEntry(e.getKey());
+				if (e.getKey().startsWith("stored")) {
+					ze.setMethod(ZipEntry.STORED);
+					ze.setSize(e.getValue().length);
+					ze.setCrc(crc(e.getValue()));
+				}
+				zout.putNextEntry(ze);
+				zout.write(e.getValue());
+				zout.closeEntry();
+			}
+			zout.finish();
+		} finally {
+			zout.release();
+		}
+
+		File file = new File(tmp, "out.jar");
+		IO.copy(bout.toByteArray(), file);
+		assertContent(content, file);
+		assertStreamed(content, bout.toByteArray());
+
+		ZipFile zip = new ZipFile(file);
+		try {
+			assertEquals(ZipEntry.STORED, zip.getEntry("stored.txt").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zip.getEntry("deflated.txt").getMethod());
+			// the first entry carries the jar magic like JarOutputStream
+			assertEquals(0xCAFE, ZipDirectory.get16(zip.getEntry("META-INF/MANIFEST.MF").getExtra(), 0));
+		} finally {
+			zip.close();
+		}
+	}
+
+	public void testRawCopy() throws Exception {
+		Map<String,byte[]> content = new LinkedHashMap<>();
+		content.put("a.txt", repeat("a", 10000));
+		content.put("b.txt", "b".getBytes("UTF-8"));
+		content.put("c.txt", new byte[0]);
+
+		File source = new File(tmp, "source.zip");
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(source));
+		for (Map.Entry<String,byte[]> e : content.entrySet()) {
+			zos.putNextEntry(new ZipEntry(e.getKey()));
+			zos.write(e.getValue());
+			zos.closeEntry();
+		}
+		ZipEntry stored = new ZipEntry("stored.txt");
+		stored.setMethod(ZipEntry.STORED);
+		stored.setSize(1);
+		stored.setCrc(crc(new byte[] {
+				's'
+		}));
+		zos.putNextEntry(stored);
+		zos.write('s');
+		zos.closeEntry();
+		zos.close();
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ZipWriter zout = new ZipWriter(bout, false);
+		ZipFile zip = new ZipFile(source);
+		try {
+			for (String name : content.keySet()) {
+				assertTrue(name, zout.putRawEntry(new ZipEntry(name), zip, zip.getEntry(name)));
+			}
+			// stored entries are not copied raw
+			assertFalse(zout.putRawEntry(new ZipEntry("stored.txt"), zip, zip.getEntry("stored.txt")));
+			zout.finish();
+		} finally {
+			zout.release();
+			zip.close();
+		}
+
+		File file = new File(tmp, "copy.zip");
+		IO.copy(bout.toByteArray(), file);
+		assertContent(content, file);
+		assertStreamed(content, bout.toByteArray());
+	}
+
+	public void testZip64EntryCount() throws Exception {
+		Map<String,byte[]> content = new LinkedHashMap<>();
+		for (int i = 0; i < 0x10000 + 10; i++)
+			content.put("e/" + i, new byte[0]);
+
+		File file = new File(tmp, "zip64.zip");
+		ZipWriter zout = new ZipWriter(new FileOutputStream(file), false);
+		try {
+			for (String name : content.keySet()) {
+				ZipEntry ze = new ZipEntry(name);
+				ze.setMethod(ZipEntry.STORED);
+				ze.setSize(0);
+				ze.setCrc(0);
+				zout.putNextEntry(ze);
+			}
+		} finally {
+			zout.close();
+		}
+
+		assertContent(content, file);
+
+		// the central directory is also readable by the Jar
+		Jar jar = new Jar(file);
+		try {
+			assertEquals(content.size(), jar.getResources().size());
+		} finally {
+			jar.close();
+		}
+	}
+
+	public void testReleaseKeepsStreamOpen() throws Exception {
+		final boolean[] closed = new boolean[1];
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		FilterOutputStream out = new FilterOutputStream(bout) {
+			@Override
+			public void close() throws IOException {
+				closed[0] = true;
+				super.close();
+			}
+		};
+
+		ZipWriter zout = new ZipWriter(out, false);
+		zout.putNextEntry(new ZipEntry("a"));
+		zout.write(1);
+		zout.finish();
+		zout.release();
+		assertFalse(closed[0]);
+
+		ZipWriter zout2 = new ZipWriter(out, false);
+		zout2.close();
+		assertTrue(closed[0]);
+	}
+
+	public void testInvalidEntries() throws Exception {
+		ZipWriter zout = new ZipWriter(new ByteArrayOutputStream(), false);
+		try {
+			zout.putNextEntry(new ZipEntry("a"));
+			try {
+				zout.putNextEntry(new ZipEntry("a"));
+				fail("expected a duplicate entry");
+			} catch (ZipException e) {
+				// expected
+			}
+
+			ZipEntry stored = new ZipEntry("b");
+			stored.setMethod(ZipEntry.STORED);
+			try {
+				zout.putNextEntry(stored);
+				fail("expected STORED without size and crc to fail");
+			} catch (ZipException e) {
+				// expected
+			}
+		} finally {
+			zout.release();
+		}
+	}
+
+	private static void assertContent(Map<String,byte[]> content, File file) throws Exception {
+		ZipFile zip = new ZipFile(file);
+		try {
+			assertEquals(content.size(), zip.size());
+			int n = 0;
+			for (Enumeration< ? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); n++) {
+				ZipEntry entry = e.nextElement();
+				byte[] expected = content.get(entry.getName());
+				assertNotNull(entry.getName(), expected);
+				assertEquals(entry.getName(), expected.length, entry.getSize());
+				assertEquals(entry.getName(), crc(expected), entry.getCrc());
+				assertTrue(entry.getName(), Arrays.equals(expected, IO.read(zip.getInputStream(entry))));
+			}
+			assertEquals(content.size(), n);
+		} finally {
+			zip.close();
+		}
+	}
+
+	/*
+	 * ZipInputStream reads the local headers and data descriptors instead of
+	 * the central directory
+	 */
+	private static void assertStreamed(Map<String,byte[]> content, byte[] data) throws Exception {
+		ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(data));
+		try {
+			int n = 0;
+			for (ZipEntry entry; (entry = zin.getNextEntry()) != null; n++) {
+				byte[] expected = content.get(entry.getName());
+				assertNotNull(entry.getName(), expected);
+				assertTrue(entry.getName(), Arrays.equals(expected, read(zin)));
+				assertEquals(entry.getName(), expected.length, entry.getSize());
+				assertEquals(entry.getName(), crc(expected), entry.getCrc());
+			}
+			assertEquals(content.size(), n);
+		} finally {
+			zin.close();
+		}
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int size; (size = in.read(buffer)) > 0;)
+			bout.write(buffer, 0, size);
+		return bout.toByteArray();
+	}
+
+	private static long crc(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	private static byte[] repeat(String s, int n) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		for (int i = 0; i < n; i++)
+			bout.write(s.getBytes("UTF-8"));
+		return bout.toByteArray();
+	}
+}
@@ -0,0 +1,127 @@
+package aQute.bnd.osgi.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.header.Attrs;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.bnd.osgi.resource.ResourceUtils;
+import junit.framework.TestCase;
+
+public class ResourcesRepositoryTest extends TestCase {
+
+	public void testEqualityTerm() {
+		assertEquals("a.b", CapabilityIndex.getEqualityTerm("(osgi.wiring.package=a.b)", "osgi.wiring.package"));
+		assertEquals("a.b", CapabilityIndex.getEqualityTerm(
+				"(&(osgi.wiring.package=a.b)(version>=1.0.0)(!(version>=2.0.0)))", "osgi.wiring.package"));
+		assertEquals("foo", CapabilityIndex.getEqualityTerm("(&(osgi.identity=foo)(type=osgi.bundle))", "osgi.identity"));
+		assertEquals("x.Y", CapabilityIndex.getEqualityTerm("(objectClass=x.Y)", "objectClass"));
+		assertEquals("e", CapabilityIndex.getEqualityTerm("(&(osgi.extender=e)(version>=1))", "osgi.extender"));
+
+		// escapes and white space are taken as the matcher takes them
+		assertEquals("a(b", CapabilityIndex.getEqualityTerm("(osgi.wiring.package=a\\(b)", "osgi.wiring.package"));
+		assertEquals(" a", CapabilityIndex.getEqualityTerm("(osgi.wiring.package= a)", "osgi.wiring.package"));
+
+		assertNull(CapabilityIndex.getEqualityTerm("(osgi.wiring.package=a.*)", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getEqualityTerm("(|(osgi.wiring.package=a)(osgi.wiring.package=b))",
+				"osgi.wiring.package"));
+		assertNull(CapabilityIndex.getEqualityTerm("(!(osgi.wiring.package=a))", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getEqualityTerm("(osgi.identity=foo)", "osgi.wiring.package"));
+		assertNull(CapabilityIndex.getEqualityTerm("(osgi.wiring.package=", "osgi.wiring.package"));
+	}
+
+	public void testFindProviderSameAsScan() throws Exception {
+		List<Resource> resources = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			ResourceBuilder rb = new ResourceBuilder();
+			rb.addProvideCapability("osgi.identity", attrs("osgi.identity", "bundle" + i, "version:Version", i + ".0.0"));
+			rb.addExportPackage("p" + (i % 5), attrs("version", i + ".0.0"));
+			rb.addExportPackage("q" + i, new Attrs());
+			rb.addProvideCapability("osgi.service", attrs("objectClass:List<String>", "s" + (i % 3) + ",t" + (i % 2)));
+			rb.addProvideCapability("other", attrs("other:Version", i + ".0.0"));
+			resources.add(rb.build());
+		}
+		ResourcesRepository repository = new ResourcesRepository(resources);
+
+		String[][] requirements = {
+				{
+						"osgi.wiring.package", "(osgi.wiring.package=p1)"
+				}, {
+						"osgi.wiring.package", "(&(osgi.wiring.package=p2)(version>=5.0.0)(!(version>=15.0.0)))"
+				}, {
+						"osgi.wiring.package", "(osgi.wiring.package=q*)"
+				}, {
+						"osgi.wiring.package", "(|(osgi.wiring.package=q1)(osgi.wiring.package=p3))"
+				}, {
+						"osgi.wiring.package", "(osgi.wiring.package=unknown)"
+				}, {
+						"osgi.identity", "(osgi.identity=bundle7)"
+				}, {
+						"osgi.service", "(objectClass=s1)"
+				}, {
+						"osgi.service", "(&(objectClass=t0)(objectClass=s2))"
+				}, {
+						"other", "(other=3.0.0)"
+				}, {
+						"other", "(other>=10.0.0)"
+				}, {
+						"osgi.wiring.package", null
+				}, {
+						"unknown", null
+				}
+		};
+
+		for (String[] r : requirements) {
+			CapReqBuilder builder = new CapReqBuilder(r[0]);
+			if (r[1] != null)
+				builder.addDirective("filter", r[1]);
+			Requirement requirement = builder.buildSyntheticRequirement();
+
+			List<Capability> expected = new ArrayList<>();
+			for (Resource resource : resources) {
+				for (Capability capability : resource.getCapabilities(r[0])) {
+					if (ResourceUtils.matches(requirement, capability))
+						expected.add(capability);
+				}
+			}
+			assertEquals(Arrays.toString(r), expected, repository.findProvider(requirement));
+		}
+	}
+
+	public void testAddAndSet() throws Exception {
+		ResourceBuilder rb = new ResourceBuilder();
+		rb.addExportPackage("a", new Attrs());
+		Resource a = rb.build();
+		rb = new ResourceBuilder();
+		rb.addExportPackage("b", new Attrs());
+		Resource b = rb.build();
+
+		Requirement ra = CapReqBuilder.createPackageRequirement("a", null).buildSyntheticRequirement();
+		Requirement rb2 = CapReqBuilder.createPackageRequirement("b", null).buildSyntheticRequirement();
+
+		ResourcesRepository repository = new ResourcesRepository(a);
+		repository.add(a);
+		assertEquals(1, repository.findProvider(ra).size());
+		assertEquals(0, repository.findProvider(rb2).size());
+
+		repository.add(b);
+		assertEquals(1, repository.findProvider(rb2).size());
+
+		repository.set(Arrays.asList(b));
+		assertEquals(0, repository.findProvider(ra).size());
+		assertEquals(1, repository.findProvider(rb2).size());
+	}
+
+	private static Attrs attrs(String... kv) {
+		Attrs attrs = new Attrs();
+		for (int i = 0; i < kv.length; i += 2)
+			attrs.put(kv[i], kv[i + 1]);
+		return attrs;
+	}
+}
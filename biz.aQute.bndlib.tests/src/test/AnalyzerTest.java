@@ -83,6 +83,34 @@ public class AnalyzerTest extends BndTestCase {
 
 	}
 
+	/**
+	 * Parallel analysis must result in exactly the same manifest as the serial
+	 * analysis
+	 */
+
+	public void testParallelAnalysis() throws Exception {
+		String serial = analyzeOsgiAndAsm(false);
+		String parallel = analyzeOsgiAndAsm(true);
+		assertEquals(serial, parallel);
+	}
+
+	private String analyzeOsgiAndAsm(boolean parallel) throws Exception {
+		Builder b = new Builder();
+		try {
+			b.addClasspath(IO.getFile("jar/osgi.jar"));
+			b.addClasspath(IO.getFile("jar/asm.jar"));
+			b.setProperty(Constants.PARALLELANALYSIS, Boolean.toString(parallel));
+			b.setProperty(Constants.NOEXTRAHEADERS, "true");
+			b.setExportPackage("org.osgi.*,org.objectweb.*");
+			b.setPrivatePackage("*");
+			b.build();
+			assertTrue(b.check());
+			return b.getJar().getManifest().getMainAttributes().entrySet().toString();
+		} finally {
+			b.close();
+		}
+	}
+
 	/**
 	 * Verify that the OSGi and the bnd Version annotation both work
 	 */
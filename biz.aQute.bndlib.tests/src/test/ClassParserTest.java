@@ -10,16 +10,23 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Annotation;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.ClassDataCollector;
 import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.Clazz.FieldDef;
+import aQute.bnd.osgi.Clazz.MethodDef;
 import aQute.bnd.osgi.Descriptors.PackageRef;
+import aQute.bnd.osgi.Descriptors.TypeRef;
 import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.service.Plugin;
@@ -180,6 +187,168 @@ public class ClassParserTest extends TestCase {
 		// values.get("clss")).getName());
 	}
 
+	/**
+	 * With -classdatalog the later collectors must see the same events as when
+	 * the class file is parsed again.
+	 */
+
+	public void testClassDataLog() throws Exception {
+		Analyzer logged = new Analyzer();
+		logged.setProperty("-classdatalog", "true");
+		Analyzer plain = new Analyzer();
+		try {
+			File dir = IO.getFile("bin/test/component");
+			File[] files = dir.listFiles();
+			assertNotNull(files);
+			int n = 0;
+			for (File file : files) {
+				if (!file.getName().endsWith(".class"))
+					continue;
+				n++;
+				Clazz expected = new Clazz(plain, file.getName(), new FileResource(file));
+				Clazz actual = new Clazz(logged, file.getName(), new FileResource(file));
+				for (int i = 0; i < 3; i++) {
+					Events e = new Events();
+					Events l = new Events();
+					assertEquals(names(expected.parseClassFileWithCollector(e)),
+							names(actual.parseClassFileWithCollector(l)));
+					assertEquals(file.getName(), e.events, l.events);
+				}
+				assertNotNull(actual.parseClassFileWithCollector(new Events()));
+				assertNull(actual.parseClassFileWithCollector(new ClassDataCollector() {
+					@Override
+					public boolean classStart(Clazz c) {
+						return false;
+					}
+				}));
+			}
+			assertTrue(n > 10);
+		} finally {
+			logged.close();
+			plain.close();
+		}
+	}
+
+	static Set<String> names(Set<TypeRef> refs) {
+		Set<String> names = new TreeSet<String>();
+		for (TypeRef ref : refs)
+			names.add(ref.getFQN());
+		return names;
+	}
+
+	static class Events extends ClassDataCollector {
+		final List<String> events = new ArrayList<String>();
+
+		@Override
+		public boolean classStart(Clazz c) {
+			events.add("classStart " + c.getClassName());
+			return true;
+		}
+
+		@Override
+		public void extendsClass(TypeRef zuper) throws Exception {
+			events.add("extendsClass " + zuper);
+		}
+
+		@Override
+		public void implementsInterfaces(TypeRef[] interfaces) throws Exception {
+			events.add("implementsInterfaces " + Arrays.toString(interfaces));
+		}
+
+		@Override
+		public void addReference(TypeRef ref) {
+			events.add("addReference " + ref);
+		}
+
+		@Override
+		public void annotation(Annotation annotation) throws Exception {
+			StringBuilder sb = new StringBuilder("annotation ").append(annotation.getName());
+			for (String key : annotation.keySet())
+				sb.append(" ").append(key).append("=").append(value(annotation.get(key)));
+			events.add(sb.toString());
+			// collectors may change the annotation, this must not show up
+			// in a replay
+			annotation.put("changed", true);
+		}
+
+		@Override
+		public void parameter(int p) {
+			events.add("parameter " + p);
+		}
+
+		@Override
+		public void method(MethodDef defined) {
+			events.add("method " + defined);
+		}
+
+		@Override
+		public void field(FieldDef defined) {
+			events.add("field " + defined);
+		}
+
+		@Override
+		public void classEnd() throws Exception {
+			events.add("classEnd");
+		}
+
+		@Override
+		public void deprecated() throws Exception {
+			events.add("deprecated");
+		}
+
+		@Override
+		public void enclosingMethod(TypeRef cName, String mName, String mDescriptor) {
+			events.add("enclosingMethod " + cName + " " + mName + " " + mDescriptor);
+		}
+
+		@Override
+		public void innerClass(TypeRef innerClass, TypeRef outerClass, String innerName, int innerClassAccessFlags)
+				throws Exception {
+			events.add("innerClass " + innerClass + " " + outerClass + " " + innerName + " " + innerClassAccessFlags);
+		}
+
+		@Override
+		public void signature(String signature) {
+			events.add("signature " + signature);
+		}
+
+		@Override
+		public void constant(Object object) {
+			events.add("constant " + value(object));
+		}
+
+		@Override
+		public void memberEnd() {
+			events.add("memberEnd");
+		}
+
+		@Override
+		public void version(int minor, int major) {
+			events.add("version " + minor + " " + major);
+		}
+
+		@Override
+		public void referenceMethod(int access, TypeRef className, String method, String descriptor) {
+			events.add("referenceMethod " + access + " " + className + " " + method + " " + descriptor);
+		}
+
+		@Override
+		public void referTo(TypeRef typeRef, int modifiers) {
+			events.add("referTo " + typeRef + " " + modifiers);
+		}
+
+		private static String value(Object value) {
+			if (value instanceof Object[])
+				return Arrays.deepToString((Object[]) value);
+			return String.valueOf(value);
+		}
+
+		@Override
+		public void annotationDefault(MethodDef last, Object value) {
+			events.add("annotationDefault " + last + " " + value(value));
+		}
+	}
+
 	public static void testGeneric() throws Exception {
 		print(System.err, WithGenerics.class.getField("field").getGenericType());
 		System.err.println();
@@ -3,12 +3,19 @@ package test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
@@ -17,6 +24,7 @@ import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Resource;
 import aQute.lib.io.IO;
+import aQute.lib.zip.ZipUtil;
 import junit.framework.TestCase;
 
 @SuppressWarnings("resource")
@@ -161,4 +169,217 @@ public class JarTest extends TestCase {
 
 		assertEquals(expectedValue, parsedValue);
 	}
+
+	public static void testCopyCompressedEntries() throws Exception {
+		File file = IO.getFile("jar/asm.jar");
+		File out = IO.getFile("generated/tmp/asm-copy.jar");
+		out.getParentFile().mkdirs();
+		Jar jar = new Jar(file);
+		try {
+			jar.setDoNotTouchManifest();
+			jar.write(out);
+		} finally {
+			jar.close();
+		}
+
+		ZipFile source = new ZipFile(file);
+		ZipFile copy = new ZipFile(out);
+		try {
+			int n = 0;
+			for (Enumeration< ? extends ZipEntry> e = source.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				if (entry.isDirectory())
+					continue;
+				ZipEntry copied = copy.getEntry(entry.getName());
+				assertNotNull(entry.getName(), copied);
+				assertEquals(entry.getCrc(), copied.getCrc());
+				assertEquals(entry.getSize(), copied.getSize());
+				if (entry.getMethod() == ZipEntry.DEFLATED) {
+					assertEquals("not copied as is " + entry.getName(), entry.getCompressedSize(),
+							copied.getCompressedSize());
+					n++;
+				}
+				assertTrue(Arrays.equals(IO.read(source.getInputStream(entry)), IO.read(copy.getInputStream(copied))));
+			}
+			assertTrue(n > 0);
+		} finally {
+			source.close();
+			copy.close();
+		}
+
+		// The local headers must be readable without the central directory
+		ZipInputStream zin = new ZipInputStream(new FileInputStream(out));
+		try {
+			byte[] buffer = new byte[1024];
+			int n = 0;
+			while (zin.getNextEntry() != null) {
+				while (zin.read(buffer) >= 0)
+					continue;
+				n++;
+			}
+			assertTrue(n > 0);
+		} finally {
+			zin.close();
+		}
+		IO.delete(out);
+	}
+
+	public static void testReadSameAsZipFile() throws Exception {
+		readSameAsZipFile(false);
+	}
+
+	public static void testReadMappedSameAsZipFile() throws Exception {
+		readSameAsZipFile(true);
+	}
+
+	private static void readSameAsZipFile(boolean immutable) throws Exception {
+		for (File file : IO.getFile("jar").listFiles()) {
+			if (!file.getName().endsWith(".jar"))
+				continue;
+
+			Jar jar = new Jar(file, immutable);
+			ZipFile zip = new ZipFile(file);
+			try {
+				int n = 0;
+				for (Enumeration< ? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+					ZipEntry entry = e.nextElement();
+					if (entry.isDirectory())
+						continue;
+					String name = file.getName() + "!" + entry.getName();
+					Resource r = jar.getResource(entry.getName());
+					assertNotNull(name, r);
+					assertEquals(name, entry.getSize(), r.size());
+					assertEquals(name, ZipUtil.getModifiedTime(entry), r.lastModified());
+					assertTrue(name, Arrays.equals(IO.read(zip.getInputStream(entry)), IO.read(r.openInputStream())));
+					n++;
+				}
+				assertEquals(file.getName(), n, jar.getResources().size());
+			} finally {
+				zip.close();
+				jar.close();
+			}
+		}
+	}
+
+	public static void testDuplicateEntriesLastWins() throws Exception {
+		File file = IO.getFile("generated/tmp/duplicates.jar");
+		byte[] data = zip("dup/1", "first", "dup/2", "second");
+		replace(data, "dup/2", "dup/1");
+		IO.copy(data, file);
+
+		Jar jar = new Jar(file);
+		try {
+			assertEquals(1, jar.getResources().size());
+			assertEquals("second", new String(IO.read(jar.getResource("dup/1").openInputStream()), "UTF-8"));
+		} finally {
+			jar.close();
+			IO.delete(file);
+		}
+	}
+
+	public static void testInvalidCentralDirectory() throws Exception {
+		File file = IO.getFile("generated/tmp/invalid-directory.jar");
+		byte[] data = zip("a", "first", "b", "second");
+
+		// move the local header of the first entry beyond the end of the file
+		for (int i = 0; i + 46 <= data.length; i++) {
+			if (data[i] == 'P' && data[i + 1] == 'K' && data[i + 2] == 1 && data[i + 3] == 2) {
+				data[i + 42] = (byte) 0xF0;
+				data[i + 43] = (byte) 0xFF;
+				data[i + 44] = (byte) 0xFF;
+				data[i + 45] = (byte) 0x7F;
+				break;
+			}
+		}
+		IO.copy(data, file);
+
+		// falls back to java.util.zip, the broken entry fails on read
+		Jar jar = new Jar(file);
+		try {
+			assertEquals("second", new String(IO.read(jar.getResource("b").openInputStream()), "UTF-8"));
+			try {
+				IO.read(jar.getResource("a").openInputStream());
+				fail("expected an IOException");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			jar.close();
+			IO.delete(file);
+		}
+	}
+
+	public static void testRewrittenInPlace() throws Exception {
+		File file = IO.getFile("generated/tmp/rewritten.jar");
+		IO.copy(zip("a", "first", "b", "second"), file);
+
+		Jar jar = new Jar(file);
+		try {
+			assertEquals("first", new String(IO.read(jar.getResource("a").openInputStream()), "UTF-8"));
+
+			// same length, the old directory must not be used for the new data
+			IO.copy(zip("a", "other", "b", "second"), file);
+			file.setLastModified(file.lastModified() - 2000);
+			try {
+				IO.read(jar.getResource("a").openInputStream());
+				fail("expected a ZipException");
+			} catch (ZipException e) {
+				// expected
+			}
+
+			// shorter
+			IO.copy(zip("a", "x"), file);
+			try {
+				IO.read(jar.getResource("b").openInputStream());
+				fail("expected a ZipException");
+			} catch (ZipException e) {
+				// expected
+			}
+		} finally {
+			jar.close();
+			IO.delete(file);
+		}
+	}
+
+	public static void testImmutableReplaced() throws Exception {
+		File file = IO.getFile("generated/tmp/immutable.jar");
+		File other = IO.getFile("generated/tmp/immutable.tmp");
+		IO.copy(zip("a", "first"), file);
+
+		Jar jar = new Jar(file, true);
+		try {
+			// a repository replaces a file instead of rewriting it
+			IO.copy(zip("a", "other", "b", "second"), other);
+			Files.move(other.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			assertEquals("first", new String(IO.read(jar.getResource("a").openInputStream()), "UTF-8"));
+		} finally {
+			jar.close();
+			IO.delete(file);
+			IO.delete(other);
+		}
+	}
+
+	private static byte[] zip(String... namesAndContent) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ZipOutputStream zout = new ZipOutputStream(bout);
+		for (int i = 0; i < namesAndContent.length; i += 2) {
+			zout.putNextEntry(new ZipEntry(namesAndContent[i]));
+			zout.write(namesAndContent[i + 1].getBytes("UTF-8"));
+			zout.closeEntry();
+		}
+		zout.close();
+		return bout.toByteArray();
+	}
+
+	private static void replace(byte[] data, String from, String to) throws IOException {
+		byte[] f = from.getBytes("UTF-8");
+		byte[] t = to.getBytes("UTF-8");
+		outer: for (int i = 0; i + f.length <= data.length; i++) {
+			for (int j = 0; j < f.length; j++) {
+				if (data[i + j] != f[j])
+					continue outer;
+			}
+			System.arraycopy(t, 0, data, i, t.length);
+		}
+	}
 }
@@ -439,6 +439,55 @@ public class MacroTest extends TestCase {
 		assertEquals("a\nb\nc\n", s);
 	}
 
+	/**
+	 * Test commands on targets, the lookup of the methods is cached per class
+	 */
+	public static class CommandTarget {
+		public String _hello(String[] args) {
+			return "hello " + args.length;
+		}
+
+		public Object _hello_world(String[] args) {
+			return args[1];
+		}
+
+		public String _nothing(String[] args) {
+			return null;
+		}
+
+		public String _fails(String[] args) {
+			throw new IllegalArgumentException("bad argument");
+		}
+	}
+
+	public static class ExtendedCommandTarget extends CommandTarget {
+		@Override
+		public String _hello(String[] args) {
+			return "extended " + args.length;
+		}
+	}
+
+	public void testCommandTargets() throws Exception {
+		try (Processor p = new Processor()) {
+			Macro macro = new Macro(p, new CommandTarget());
+			for (int i = 0; i < 2; i++) {
+				assertEquals("hello 1", macro.process("${hello}"));
+				assertEquals("hello 3", macro.process("${hello;a;b}"));
+				assertEquals("x", macro.process("${hello-world;x}"));
+				assertEquals("x", macro.process("${hello_world;x}"));
+				assertEquals("${nothing}", macro.process("${nothing}"));
+				assertEquals("${unknowncommand}", macro.process("${unknowncommand}"));
+			}
+			assertTrue(p.check("No translation found for macro: unknowncommand",
+					"No translation found for macro: nothing"));
+
+			assertEquals("extended 1", new Macro(p, new ExtendedCommandTarget()).process("${hello}"));
+
+			macro.process("${fails}");
+			assertTrue(p.check("bad argument, for cmd: fails", "No translation found for macro: fails"));
+		}
+	}
+
 	/**
 	 * Test the custom macros
 	 */
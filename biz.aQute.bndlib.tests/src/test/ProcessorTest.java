@@ -19,6 +19,52 @@ import junit.framework.TestCase;
 
 public class ProcessorTest extends TestCase {
 
+	public static class CountingProcessor extends Processor {
+		int count;
+
+		public CountingProcessor(Processor parent) {
+			super(parent);
+		}
+
+		public String _count(String[] args) {
+			return Integer.toString(++count);
+		}
+	}
+
+	public void testMacroCache() throws IOException {
+		try (Processor top = new Processor(); CountingProcessor p = new CountingProcessor(top)) {
+			top.setProperty(Constants.MACROCACHE, "true");
+			top.setProperty("version", "1.0");
+			p.setProperty("a", "${b}-${version}");
+			p.setProperty("b", "${toupper;x}");
+			p.setProperty("c", "${a};${count}");
+
+			assertEquals("X-1.0", p.getProperty("a"));
+			assertEquals("X-1.0", p.getProperty("a"));
+			assertEquals("X-1.0;1", p.getProperty("c"));
+			assertEquals("X-1.0;2", p.getProperty("c"));
+
+			// a change of a property that is referred to, also in a parent
+			p.setProperty("b", "y");
+			assertEquals("y-1.0", p.getProperty("a"));
+			top.setProperty("version", "2.0");
+			assertEquals("y-2.0", p.getProperty("a"));
+
+			// a property that overrides a parent property
+			p.setProperty("version", "3.0");
+			assertEquals("y-3.0", p.getProperty("a"));
+			p.unsetProperty("version");
+			assertEquals("y-2.0", p.getProperty("a"));
+
+			// a property that was missing before
+			p.setProperty("a", "${b}${missing}");
+			assertEquals("y${missing}", p.getProperty("a"));
+			p.setProperty("missing", "z");
+			assertEquals("yz", p.getProperty("a"));
+			assertTrue(p.check("No translation found for macro: missing"));
+		}
+	}
+
 	public void testFixupMerge() throws IOException {
 		Processor p = new Processor();
 		p.setProperty("-fixupmessages.foo", "foo");
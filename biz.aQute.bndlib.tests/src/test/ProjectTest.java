@@ -465,6 +465,36 @@ public class ProjectTest extends TestCase {
 		assertEquals("b", mb.getMainAttributes().getValue("Sub-Header"));
 	}
 
+	/**
+	 * Check that -parallelsub builds the same sub bundles in the same order
+	 */
+
+	public void testParallelSub() throws Exception {
+		Workspace ws = getWorkspace(IO.getFile("testresources/ws"));
+		Project project = ws.getProject("p4-sub");
+		File[] serial = project.build();
+		assertTrue(project.check());
+		assertNotNull(serial);
+		assertEquals(3, serial.length);
+
+		project.setProperty("-parallelsub", "true");
+		project.clean();
+		File[] parallel = project.build();
+		assertTrue(project.check());
+		assertNotNull(parallel);
+		assertEquals(Arrays.asList(serial), Arrays.asList(parallel));
+
+		for (File file : parallel) {
+			try (Jar jar = new Jar(file)) {
+				Manifest m = jar.getManifest();
+				assertEquals("base", m.getMainAttributes().getValue("Base-Header"));
+				String bsn = m.getMainAttributes().getValue("Bundle-SymbolicName");
+				assertTrue(file.getName().startsWith(bsn));
+				assertEquals(bsn.substring(bsn.length() - 1), m.getMainAttributes().getValue("Sub-Header"));
+			}
+		}
+	}
+
 	public void testOutofDate() throws Exception {
 		Workspace ws = getWorkspace(IO.getFile("testresources/ws"));
 		Project project = ws.getProject("p3");
@@ -1,10 +1,15 @@
 package test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
 import aQute.bnd.header.Attrs;
+import aQute.bnd.service.progress.ProgressPlugin;
 import aQute.lib.io.IO;
 import junit.framework.TestCase;
 
@@ -118,4 +123,73 @@ public class WorkspaceTest extends TestCase {
 			assertEquals(version, w.getProperty("javac.target"));
 		}
 	}
+
+	public void testBuild() throws Exception {
+		project("a", "");
+		project("b", "-dependson: a");
+		project("c", "-dependson: a");
+		project("d", "-dependson: b,c");
+
+		try (Workspace ws = new Workspace(tmp)) {
+			Progress progress = new Progress();
+			ws.addBasicPlugin(progress);
+
+			assertEquals("[a, b, c, d]", ws.getBuildOrder().toString());
+			assertTrue(ws.build(Arrays.asList(ws.getProject("d")), false, 4));
+			assertTrue(ws.check());
+
+			List<String> order = progress.started;
+			assertEquals(4, order.size());
+			assertEquals("Build a", order.get(0));
+			assertEquals("Build d", order.get(3));
+			assertEquals(4, progress.done.size());
+			assertTrue(progress.done.get(0).matches("a built in \\d+ ms"));
+			assertTrue(IO.getFile(tmp, "d/generated/d.jar").isFile());
+		}
+	}
+
+	public void testBuildStopsOnFailure() throws Exception {
+		project("a", "Include-Resource: missing.txt");
+		project("b", "-dependson: a");
+		project("c", "");
+
+		try (Workspace ws = new Workspace(tmp)) {
+			Progress progress = new Progress();
+			ws.addBasicPlugin(progress);
+
+			assertFalse(ws.build(Arrays.asList(ws.getProject("b")), false, 1));
+			assertEquals(Arrays.asList("Build a"), progress.started);
+			assertFalse(ws.getProject("a").isOk());
+			assertFalse(IO.getFile(tmp, "b/generated/b.jar").isFile());
+		}
+	}
+
+	private void project(String name, String bnd) throws Exception {
+		IO.getFile(tmp, "cnf").mkdirs();
+		IO.store("", IO.getFile(tmp, "cnf/build.bnd"));
+		File dir = IO.getFile(tmp, name);
+		dir.mkdirs();
+		IO.store("-resourceonly: true\nInclude-Resource: " + name + ";literal=" + name + "\n" + bnd + "\n",
+				new File(dir, "bnd.bnd"));
+	}
+
+	static class Progress implements ProgressPlugin {
+		final List<String>	started	= Collections.synchronizedList(new ArrayList<String>());
+		final List<String>	done	= Collections.synchronizedList(new ArrayList<String>());
+
+		public Task startTask(final String name, int size) {
+			started.add(name);
+			return new Task() {
+				public void worked(int units) {}
+
+				public void done(String message, Throwable e) {
+					done.add(message);
+				}
+
+				public boolean isCanceled() {
+					return false;
+				}
+			};
+		}
+	}
 }
@@ -7,6 +7,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -32,6 +34,7 @@ import aQute.bnd.service.diff.Tree;
 import aQute.bnd.version.Version;
 import aQute.lib.collections.SortedList;
 import aQute.lib.io.IO;
+import aQute.lib.json.JSONCodec;
 import aQute.libg.reporter.ReporterAdapter;
 import junit.framework.TestCase;
 
@@ -350,6 +353,45 @@ public class BaselineTest extends TestCase {
 		}
 	}
 
+	/**
+	 * The tree of the baseline jar is cached in the workspace
+	 */
+	public void testBaselineTreeCache() throws Exception {
+		Project p3 = getWorkspace().getProject("p3");
+		p3.setBundleVersion("1.3.0");
+		p3.setProperty(Constants.BASELINE, "*");
+		p3.setProperty(Constants.BASELINEREPO, "Release");
+		p3.build();
+		List<String> errors = new ArrayList<String>(p3.getErrors());
+		List<String> warnings = new ArrayList<String>(p3.getWarnings());
+
+		File[] cached = getWorkspace().getCache("baselines").listFiles();
+		assertNotNull(cached);
+		assertEquals(1, cached.length);
+
+		DiffPluginImpl differ = new DiffPluginImpl();
+		Tree tree;
+		try (Jar jar = new Jar(IO.getFile(tmp, "cnf/releaserepo/p3/p3-1.2.0.jar"))) {
+			tree = differ.tree(jar);
+		}
+		Tree fromCache = differ.deserialize(new JSONCodec().dec().from(cached[0]).get(Tree.Data.class));
+		assertEquals(Delta.UNCHANGED, fromCache.diff(tree).getDelta());
+
+		// A second build must report the same using the cached tree
+		p3.clean();
+		p3.clear();
+		p3.build();
+		assertEquals(errors, p3.getErrors());
+		assertEquals(warnings, p3.getWarnings());
+		assertEquals(1, getWorkspace().getCache("baselines").listFiles().length);
+
+		// Another -diffignore makes another tree
+		p3.setProperty(Constants.DIFFIGNORE, "Bundle-Version");
+		p3.clean();
+		p3.build();
+		assertEquals(2, getWorkspace().getCache("baselines").listFiles().length);
+	}
+
 	/**
 	 * Check what happens when there is nothing in the repo ... We do not
 	 * generate an error when version <=1.0.0, otherwise we generate an error.
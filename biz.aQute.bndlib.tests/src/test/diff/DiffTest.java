@@ -9,6 +9,7 @@ import aQute.bnd.differ.Baseline.Info;
 import aQute.bnd.differ.DiffPluginImpl;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.EmbeddedResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.service.diff.Delta;
@@ -149,6 +150,28 @@ public class DiffTest extends TestCase {
 		assertTrue(diff.getDelta() == Delta.UNCHANGED);
 	}
 
+	/**
+	 * The digests of zip entries are cached and can be calculated in parallel
+	 */
+	public void testResourceDigests() throws Exception {
+		File file = IO.getFile("jar/osgi.jar");
+		Tree serial = new DiffPluginImpl().tree(file).get("<resources>");
+		assertTrue(serial.getChildren().length > 1);
+
+		DiffPluginImpl parallel = new DiffPluginImpl();
+		parallel.setParallel(true);
+		assertEquals(Delta.UNCHANGED, parallel.tree(file).get("<resources>").diff(serial).getDelta());
+		assertEquals(Delta.UNCHANGED, new DiffPluginImpl().tree(file).get("<resources>").diff(serial).getDelta());
+
+		// A resource that is replaced must not get the cached digest
+		try (Jar jar = new Jar(file)) {
+			String path = serial.getChildren()[0].getName();
+			jar.putResource(path, new EmbeddedResource("changed".getBytes("UTF-8"), 0));
+			Diff diff = parallel.tree(jar).get("<resources>").diff(serial);
+			assertFalse(diff.get(path).getDelta() == Delta.UNCHANGED);
+		}
+	}
+
 	/**
 	 * Test the scenario where nested annotations can generate false positive in
 	 * diffs
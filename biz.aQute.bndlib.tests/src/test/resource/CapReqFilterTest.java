@@ -1,5 +1,6 @@
 package test.resource;
 
+import org.osgi.framework.Version;
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
 
@@ -49,4 +50,19 @@ public class CapReqFilterTest extends TestCase {
 		assertFalse(ResourceUtils.matches(req, cap));
 	}
 
+	public void testReqWithVersionFilter() throws Exception {
+		Capability cap = new CapabilityBuilder("foobar").addAttribute("version", new Version("1.2.3"))
+				.buildSyntheticCapability();
+		Requirement in = new RequirementBuilder("foobar").addDirective("filter", "(&(version>=1.2)(!(version>=2)))")
+				.buildSyntheticRequirement();
+		Requirement out = new RequirementBuilder("foobar").addDirective("filter", "(version>=1.3)")
+				.buildSyntheticRequirement();
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(ResourceUtils.matches(in, cap));
+			assertFalse(ResourceUtils.matches(out, cap));
+		}
+		assertSame(ResourceUtils.getFilter("(version>=1.3)"), ResourceUtils.getFilter("(version>=1.3)"));
+	}
+
 }
@@ -0,0 +1,214 @@
+package aQute.bnd.build;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import aQute.bnd.osgi.Jar;
+
+/**
+ * A workspace wide cache of the JAR files on the classpath of projects. A JAR
+ * is only opened once, as long as its size and modification time do not
+ * change. Each user gets its own {@link Jar} that shares the resources of the
+ * cached JAR, closing it releases the cached JAR.
+ * <p>
+ * The cached JAR is reference counted, the cache holds a reference while the
+ * JAR is in the cache and each user holds one until it is closed. The JAR is
+ * closed when the last reference is released, so the resources of a user stay
+ * readable even when the JAR is removed from the cache in the meantime.
+ * <p>
+ * A cached JAR that is no longer used stays open for the next user. Only a
+ * limited number of unused JARs are kept, the least recently used ones are
+ * closed first. A JAR of a file that changed is closed when its last user
+ * releases it. Closing the cache closes all JARs that are not in use.
+ * <p>
+ * Directories are not cached since their modification time does not tell if
+ * their content has changed. Only repository files are cached, they are not
+ * rewritten in place and therefore memory mapped.
+ */
+class JarCache implements Closeable {
+	static final int				MAX_IDLE	= 64;
+
+	private final Map<String,Entry>	entries		= new HashMap<String,Entry>();
+	/*
+	 * The entries without users, the least recently released first
+	 */
+	private final Map<String,Entry>	idle		= new LinkedHashMap<String,Entry>();
+	private final int				maxIdle;
+	private boolean					closed;
+
+	JarCache() {
+		this(MAX_IDLE);
+	}
+
+	JarCache(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	private class Entry {
+		final String	path;
+		final long		length;
+		final long		lastModified;
+		final Jar		master;
+		int				users;
+		/*
+		 * The users plus one for the cache while the entry is in the cache
+		 */
+		int				references	= 1;
+		boolean			stale;
+
+		Entry(String path, long length, long lastModified, Jar master) {
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.master = master;
+		}
+
+		/**
+		 * Answer a new user of the cached jar.
+		 */
+		Jar acquire() {
+			if (users++ == 0)
+				idle.remove(path);
+			references++;
+			return new SharedJar(this, master);
+		}
+
+		void release() {
+			if (--users == 0 && !stale) {
+				idle.put(path, this);
+				evict();
+			}
+			unreference();
+		}
+
+		/**
+		 * The entry is no longer in the cache, the jar is closed when it is
+		 * no longer used.
+		 */
+		void drop() {
+			if (stale)
+				return;
+			stale = true;
+			if (idle.get(path) == this)
+				idle.remove(path);
+			unreference();
+		}
+
+		private void unreference() {
+			if (--references == 0)
+				master.close();
+		}
+	}
+
+	/**
+	 * A jar that shares the resources of the cached jar. Close releases it.
+	 */
+	private class SharedJar extends Jar {
+		private Entry entry;
+
+		SharedJar(Entry entry, Jar master) {
+			super(master);
+			this.entry = entry;
+		}
+
+		@Override
+		public void close() {
+			super.close();
+			synchronized (JarCache.this) {
+				if (entry != null) {
+					entry.release();
+					entry = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Answer a jar for the given file. The jar must be closed when it is no
+	 * longer used.
+	 */
+	Jar get(File file) throws IOException {
+		if (!file.isFile())
+			return new Jar(file);
+
+		File canonical = file.getCanonicalFile();
+		String path = canonical.getPath();
+		long length = canonical.length();
+		long lastModified = canonical.lastModified();
+
+		synchronized (this) {
+			Jar jar = acquire(path, length, lastModified);
+			if (jar != null)
+				return jar;
+		}
+
+		Jar master = new Jar(file, true);
+		synchronized (this) {
+			if (closed)
+				return master;
+
+			Jar jar = acquire(path, length, lastModified);
+			if (jar != null) {
+				// someone else was faster
+				master.close();
+				return jar;
+			}
+
+			Entry entry = new Entry(path, length, lastModified, master);
+			entries.put(path, entry);
+			return entry.acquire();
+		}
+	}
+
+	/**
+	 * Answer a new user of a cached jar or null. An entry for an older version
+	 * of the file is removed, its jar is closed when the last user releases
+	 * it.
+	 */
+	private Jar acquire(String path, long length, long lastModified) {
+		if (closed)
+			return null;
+
+		Entry entry = entries.get(path);
+		if (entry == null)
+			return null;
+
+		if (entry.length == length && entry.lastModified == lastModified)
+			return entry.acquire();
+
+		entries.remove(path);
+		entry.drop();
+		return null;
+	}
+
+	/**
+	 * Close the least recently used jars that are not used when there are too
+	 * many.
+	 */
+	private void evict() {
+		for (Iterator<Entry> i = idle.values().iterator(); idle.size() > maxIdle;) {
+			Entry entry = i.next();
+			i.remove();
+			entries.remove(entry.path);
+			entry.drop();
+		}
+	}
+
+	/**
+	 * Close the jars that are not used, the others are closed when they are
+	 * released.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (Entry entry : entries.values()) {
+			entry.drop();
+		}
+		entries.clear();
+		idle.clear();
+	}
+}
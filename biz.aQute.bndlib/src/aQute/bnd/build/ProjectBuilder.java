@@ -27,15 +27,21 @@ import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Packages;
 import aQute.bnd.osgi.Verifier;
 import aQute.bnd.service.RepositoryPlugin;
+import aQute.bnd.service.diff.Tree;
+import aQute.bnd.service.diff.Tree.Data;
 import aQute.bnd.service.repository.InfoRepository;
 import aQute.bnd.service.repository.Phase;
 import aQute.bnd.service.repository.SearchableRepository.ResourceDescriptor;
 import aQute.bnd.version.Version;
 import aQute.lib.collections.SortedList;
 import aQute.lib.io.IO;
+import aQute.lib.json.JSONCodec;
+import aQute.libg.cryptography.SHA1;
 
 public class ProjectBuilder extends Builder {
-	private final DiffPluginImpl	differ	= new DiffPluginImpl();
+	private static final JSONCodec	codec				= new JSONCodec();
+	private final DiffPluginImpl	differ				= new DiffPluginImpl();
+	private final List<Jar>			projectClasspath	= new ArrayList<Jar>();
 	Project							project;
 	boolean							initialized;
 
@@ -79,16 +85,28 @@ public class ProjectBuilder extends Builder {
 			if (!initialized) {
 				initialized = true;
 				doRequireBnd();
-				for (Container file : project.getClasspath()) {
-					addClasspath(file);
-				}
+				if (getParent() instanceof ProjectBuilder) {
+					//
+					// A sub-builder shares the classpath JARs of its parent,
+					// it gets its own view so it can close them
+					//
+					ProjectBuilder parent = (ProjectBuilder) getParent();
+					parent.init();
+					for (Jar jar : parent.projectClasspath) {
+						super.addClasspath(new ParentJar(jar));
+					}
+				} else {
+					for (Container file : project.getClasspath()) {
+						addClasspath(file);
+					}
 
-				for (Container file : project.getBuildpath()) {
-					addClasspath(file);
-				}
+					for (Container file : project.getBuildpath()) {
+						addClasspath(file);
+					}
 
-				for (Container file : project.getBootclasspath()) {
-					addClasspath(file);
+					for (Container file : project.getBootclasspath()) {
+						addClasspath(file);
+					}
 				}
 
 				for (File file : project.getAllsourcepath()) {
@@ -102,11 +120,26 @@ public class ProjectBuilder extends Builder {
 	}
 
 	public void addClasspath(Container c) throws IOException {
-		Jar jar = new Jar(c.getFile());
+		//
+		// Repository JARs are shared between the projects of the workspace,
+		// JARs of projects change too often
+		//
+		Jar jar = c.getType() == Container.TYPE.REPO ? project.getWorkspace().classpathJars.get(c.getFile())
+				: new Jar(c.getFile());
 		super.addClasspath(jar);
+		projectClasspath.add(jar);
 		project.unreferencedClasspathEntries.put(jar.getName(), c);
 	}
 
+	/**
+	 * A view on a classpath JAR of the parent builder.
+	 */
+	private static class ParentJar extends Jar {
+		ParentJar(Jar jar) {
+			super(jar);
+		}
+	}
+
 	@Override
 	public List<Jar> getClasspath() {
 		init();
@@ -129,6 +162,7 @@ public class ProjectBuilder extends Builder {
 		String diffignore = project.getProperty(Constants.DIFFIGNORE);
 		trace("ignore headers & paths %s", diffignore);
 		differ.setIgnore(diffignore);
+		differ.setParallel(is(Constants.PARALLELANALYSIS));
 
 		Jar fromRepo = getBaselineJar();
 		if (fromRepo == null) {
@@ -165,7 +199,7 @@ public class ProjectBuilder extends Builder {
 		try {
 			Baseline baseliner = new Baseline(this, differ);
 
-			Set<Info> infos = baseliner.baseline(dot, fromRepo, null);
+			Set<Info> infos = baseliner.baseline(dot, fromRepo, getBaselineTree(fromRepo, diffignore), null);
 			if (infos.isEmpty())
 				trace("no deltas");
 
@@ -202,6 +236,49 @@ public class ProjectBuilder extends Builder {
 		}
 	}
 
+	/**
+	 * Answer the tree of the baseline jar. A released baseline never changes,
+	 * so the tree is kept in the workspace cache under the SHA-1 of the jar
+	 * and of the -diffignore it was made with.
+	 */
+	private Tree getBaselineTree(Jar fromRepo, String diffignore) throws Exception {
+		File source = fromRepo.getSource();
+		if (source == null || !source.isFile())
+			return differ.tree(fromRepo);
+
+		String key = SHA1.digest(source).asHex();
+		if (diffignore != null)
+			key += "-" + SHA1.digest(diffignore.getBytes("UTF-8")).asHex();
+		File dir = project.getWorkspace().getCache("baselines");
+		File file = new File(dir, key + ".json");
+
+		if (file.isFile()) {
+			try {
+				Data data = codec.dec().from(file).get(Data.class);
+				trace("baseline tree from cache %s", file);
+				return differ.deserialize(data);
+			} catch (Exception e) {
+				trace("cannot read the cached baseline tree %s: %s", file, e);
+			}
+		}
+
+		Tree tree = differ.tree(fromRepo);
+		try {
+			// write to a temporary file first, parallel builds can read it
+			dir.mkdirs();
+			File tmp = IO.createTempFile(dir, key, ".tmp");
+			try {
+				codec.enc().to(tmp).put(tree.serialize());
+				IO.rename(tmp, file);
+			} finally {
+				IO.delete(tmp);
+			}
+		} catch (Exception e) {
+			trace("cannot cache the baseline tree in %s: %s", file, e);
+		}
+		return tree;
+	}
+
 	// *
 
 	public void fillInLocationForPackageInfo(Location location, String packageName) throws Exception {
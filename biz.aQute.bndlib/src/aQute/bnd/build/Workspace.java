@@ -9,20 +9,28 @@ import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
@@ -54,6 +62,7 @@ import aQute.bnd.service.RepositoryPlugin;
 import aQute.bnd.service.action.Action;
 import aQute.bnd.service.extension.ExtensionActivator;
 import aQute.bnd.service.lifecycle.LifeCyclePlugin;
+import aQute.bnd.service.progress.ProgressPlugin;
 import aQute.bnd.service.repository.Prepare;
 import aQute.bnd.service.repository.RepositoryDigest;
 import aQute.bnd.service.repository.SearchableRepository.ResourceDescriptor;
@@ -114,6 +123,7 @@ public class Workspace extends Processor {
 			.newSetFromMap(new ConcurrentHashMap<Project,Boolean>());
 	private WorkspaceData						data					= new WorkspaceData();
 	private File								buildDir;
+	final JarCache								classpathJars			= new JarCache();
 
 	/**
 	 * This static method finds the workspace and creates a project (or returns
@@ -548,28 +558,140 @@ public class Workspace extends Processor {
 	}
 
 	public Collection<Project> getBuildOrder() throws Exception {
-		List<Project> result = new ArrayList<Project>();
+		Set<Project> result = new LinkedHashSet<Project>();
 		for (Project project : getAllProjects()) {
 			Collection<Project> dependsOn = project.getDependson();
 			getBuildOrder(dependsOn, result);
-			if (!result.contains(project)) {
-				result.add(project);
-			}
+			result.add(project);
 		}
-		return result;
+		return new ArrayList<Project>(result);
 	}
 
-	private void getBuildOrder(Collection<Project> dependsOn, List<Project> result) throws Exception {
+	private void getBuildOrder(Collection<Project> dependsOn, Set<Project> result) throws Exception {
 		for (Project project : dependsOn) {
-			Collection<Project> subProjects = project.getDependson();
-			for (Project subProject : subProjects) {
-				if (!result.contains(subProject)) {
-					result.add(subProject);
+			result.addAll(project.getDependson());
+			result.add(project);
+		}
+	}
+
+	/**
+	 * Build the given projects and the projects they depend on. A project is
+	 * built when all the projects it depends on have been built, projects that
+	 * do not depend on each other are built concurrently. After a project
+	 * failed to build no new builds are started. Each build is reported as a
+	 * task to the {@link ProgressPlugin}s, canceling a task also stops the
+	 * build.
+	 * 
+	 * @param projects the projects to build
+	 * @param underTest build for test
+	 * @param parallel the maximum number of projects to build at the same
+	 *            time
+	 * @return true if all projects were built without errors
+	 */
+	public boolean build(Collection<Project> projects, final boolean underTest, int parallel) throws Exception {
+		Set<Project> targets = new LinkedHashSet<Project>();
+		for (Project project : projects) {
+			targets.addAll(project.getDependson());
+			targets.add(project);
+		}
+
+		Map<Project,Integer> pending = new HashMap<Project,Integer>();
+		Map<Project,List<Project>> dependents = new HashMap<Project,List<Project>>();
+		Deque<Project> ready = new ArrayDeque<Project>();
+		for (Project project : targets) {
+			int n = 0;
+			for (Project dependency : project.getDependson()) {
+				if (dependency == project || !targets.contains(dependency))
+					continue;
+				List<Project> list = dependents.get(dependency);
+				if (list == null) {
+					list = new ArrayList<Project>();
+					dependents.put(dependency, list);
 				}
+				list.add(project);
+				n++;
 			}
-			if (!result.contains(project)) {
-				result.add(project);
+			if (n == 0)
+				ready.add(project);
+			else
+				pending.put(project, n);
+		}
+
+		final AtomicBoolean canceled = new AtomicBoolean();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallel));
+		CompletionService<Project> builds = new ExecutorCompletionService<Project>(pool);
+		boolean ok = true;
+		int running = 0;
+		try {
+			while (true) {
+				while (ok && !canceled.get() && !ready.isEmpty()) {
+					final Project project = ready.remove();
+					builds.submit(new Callable<Project>() {
+						public Project call() {
+							build(project, underTest, canceled);
+							return project;
+						}
+					});
+					running++;
+				}
+				if (running == 0)
+					break;
+
+				Project done = builds.take().get();
+				running--;
+				if (!done.isOk()) {
+					ok = false;
+					continue;
+				}
+
+				List<Project> list = dependents.get(done);
+				if (list != null) {
+					for (Project dependent : list) {
+						int n = pending.get(dependent) - 1;
+						if (n == 0) {
+							pending.remove(dependent);
+							ready.add(dependent);
+						} else
+							pending.put(dependent, n);
+					}
+				}
 			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (ok && !canceled.get() && !pending.isEmpty()) {
+			error("Circular dependency between projects, could not build %s", pending.keySet());
+			ok = false;
+		}
+		return ok && !canceled.get();
+	}
+
+	private void build(Project project, boolean underTest, AtomicBoolean canceled) {
+		String name = "Build " + project.getName();
+		List<ProgressPlugin.Task> tasks = new ArrayList<ProgressPlugin.Task>();
+		for (ProgressPlugin progress : getPlugins(ProgressPlugin.class)) {
+			tasks.add(progress.startTask(name, 1));
+		}
+
+		long start = System.nanoTime();
+		Throwable failure = null;
+		try {
+			project.build(underTest);
+		} catch (Throwable e) {
+			failure = e;
+			project.exception(e, "Failed to build %s", project);
+		}
+		long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		String message = String.format("%s %s in %d ms", project.getName(), project.isOk() ? "built" : "failed",
+				ms);
+		trace("%s", message);
+
+		for (ProgressPlugin.Task task : tasks) {
+			task.worked(1);
+			task.done(message, failure);
+			if (task.isCanceled())
+				canceled.set(true);
 		}
 	}
 
@@ -880,6 +1002,8 @@ public class Workspace extends Processor {
 			}
 		}
 
+		classpathJars.close();
+
 		try {
 			super.close();
 		} catch (IOException e) {
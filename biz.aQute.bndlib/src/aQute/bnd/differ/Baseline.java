@@ -82,9 +82,16 @@ public class Baseline {
 	 * @throws Exception
 	 */
 	public Set<Info> baseline(Jar newer, Jar older, Instructions packageFilters) throws Exception {
+		return baseline(newer, older, differ.tree(older), packageFilters);
+	}
+
+	/**
+	 * Baseline against an older jar of which the tree is already known, for
+	 * example because it was cached.
+	 */
+	public Set<Info> baseline(Jar newer, Jar older, Tree o, Instructions packageFilters) throws Exception {
 		Tree n = differ.tree(newer);
 		Parameters nExports = getExports(newer);
-		Tree o = differ.tree(older);
 		Parameters oExports = getExports(older);
 		if (packageFilters == null)
 			packageFilters = new Instructions();
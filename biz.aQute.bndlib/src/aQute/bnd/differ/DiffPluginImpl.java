@@ -8,10 +8,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
 
@@ -26,7 +32,9 @@ import aQute.bnd.osgi.Descriptors.PackageRef;
 import aQute.bnd.osgi.Descriptors.TypeRef;
 import aQute.bnd.osgi.Instructions;
 import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Processor;
 import aQute.bnd.osgi.Resource;
+import aQute.bnd.osgi.ZipResource;
 import aQute.bnd.service.diff.Differ;
 import aQute.bnd.service.diff.Tree;
 import aQute.bnd.service.diff.Tree.Data;
@@ -82,7 +90,23 @@ public class DiffPluginImpl implements Differ {
 		ORDERED_HEADERS.add(Constants.TESTCASES);
 	}
 
-	Instructions localIgnore = null;
+	/**
+	 * The SHA-1 digests of zip entries by zip file, its last modified time,
+	 * and the path, time, CRC, and size of the entry. The least recently used
+	 * digests are dropped.
+	 */
+	private static final int				MAX_DIGESTS	= 10000;
+	@SuppressWarnings("serial")
+	private static final Map<String,String>	digests		= Collections
+			.synchronizedMap(new LinkedHashMap<String,String>(256, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String,String> eldest) {
+					return size() > MAX_DIGESTS;
+				}
+			});
+
+	Instructions							localIgnore	= null;
+	boolean									parallel;
 
 	/**
 	 * @see aQute.bnd.service.diff.Differ#tree(aQute.bnd.osgi.Jar)
@@ -144,7 +168,8 @@ public class DiffPluginImpl implements Differ {
 	private Element resourcesElement(Analyzer analyzer) throws Exception {
 		Jar jar = analyzer.getJar();
 
-		List<Element> resources = new ArrayList<Element>();
+		List<String> paths = new ArrayList<String>();
+		List<Resource> todo = new ArrayList<Resource>();
 
 		for (Map.Entry<String,Resource> entry : jar.getResources().entrySet()) {
 
@@ -181,22 +206,104 @@ public class DiffPluginImpl implements Differ {
 
 			}
 
-			Resource resource = entry.getValue();
-
-			InputStream in = resource.openInputStream();
-			try {
-				Digester<SHA1> digester = SHA1.getDigester();
-				IO.copy(in, digester);
-				String value = Hex.toHexString(digester.digest().digest());
-				resources.add(new Element(Type.RESOURCE, entry.getKey(), Arrays.asList(new Element(Type.SHA, value)),
-						CHANGED, CHANGED, null));
-			} finally {
-				in.close();
-			}
+			paths.add(path);
+			todo.add(entry.getValue());
+		}
+
+		String[] shas = digests(jar.getSource(), paths, todo);
+
+		List<Element> resources = new ArrayList<Element>(paths.size());
+		for (int i = 0; i < shas.length; i++) {
+			resources.add(new Element(Type.RESOURCE, paths.get(i), Arrays.asList(new Element(Type.SHA, shas[i])),
+					CHANGED, CHANGED, null));
 		}
 		return new Element(Type.RESOURCES, "<resources>", resources, CHANGED, CHANGED, null);
 	}
 
+	/**
+	 * Calculate the SHA-1 digests of the resources. The digest of a zip entry
+	 * is remembered under the zip file and its last modified time, and the
+	 * path, time, CRC, and size from the zip directory, so an unchanged entry
+	 * is not hashed again. In parallel mode the remaining resources are hashed
+	 * by a few tasks on the shared executor of the {@link Processor}.
+	 */
+	private String[] digests(File source, List<String> paths, final List<Resource> resources) throws Exception {
+		final String[] shas = new String[resources.size()];
+		String[] keys = new String[shas.length];
+		final List<Integer> todo = new ArrayList<Integer>();
+
+		for (int i = 0; i < shas.length; i++) {
+			keys[i] = digestKey(source, paths.get(i), resources.get(i));
+			if (keys[i] != null)
+				shas[i] = digests.get(keys[i]);
+			if (shas[i] == null)
+				todo.add(i);
+		}
+
+		if (parallel && todo.size() > 1) {
+			final AtomicInteger next = new AtomicInteger();
+			int workers = Math.min(todo.size(), Runtime.getRuntime().availableProcessors());
+			Executor executor = Processor.getExecutor();
+			List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(workers);
+			for (int w = 0; w < workers; w++) {
+				FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+					public Void call() throws Exception {
+						for (int n; (n = next.getAndIncrement()) < todo.size();) {
+							int i = todo.get(n);
+							shas[i] = digest(resources.get(i));
+						}
+						return null;
+					}
+				});
+				tasks.add(task);
+				executor.execute(task);
+			}
+			for (FutureTask<Void> task : tasks) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					next.set(todo.size()); // stop the other tasks
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception)
+						throw (Exception) cause;
+					throw e;
+				}
+			}
+		} else {
+			for (int i : todo)
+				shas[i] = digest(resources.get(i));
+		}
+
+		for (int i : todo) {
+			if (keys[i] != null)
+				digests.put(keys[i], shas[i]);
+		}
+		return shas;
+	}
+
+	private static String digestKey(File source, String path, Resource resource) throws Exception {
+		if (source == null || !source.isFile())
+			return null;
+
+		long crc = ZipResource.getCrc(resource);
+		if (crc < 0)
+			return null;
+
+		return source.getAbsolutePath() + ":" + source.lastModified() + "!/" + path + ":" + resource.lastModified()
+				+ ":" + Long.toHexString(crc) + ":" + resource.size();
+	}
+
+	private static String digest(Resource resource) throws Exception {
+		InputStream in = resource.openInputStream();
+		try {
+			Digester<SHA1> digester = SHA1.getDigester();
+			IO.copy(in, digester);
+			return Hex.toHexString(digester.digest().digest());
+		} finally {
+			in.close();
+		}
+	}
+
 	private boolean hasSource(Analyzer analyzer, String path) throws Exception {
 
 		if (!path.endsWith(".class"))
@@ -282,6 +389,13 @@ public class DiffPluginImpl implements Differ {
 		return new Element(data);
 	}
 
+	/**
+	 * Hash the resources of a jar concurrently.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
 	public void setIgnore(String diffignore) {
 		if (diffignore == null) {
 			localIgnore = null;
@@ -346,6 +346,10 @@ public class Syntax implements Constants {
 																							null)
 
 																				),
+																			new Syntax(CLASSDATALOG,
+																					"Parse a class file once for all class data collectors, later collectors replay the recorded events.",
+																					CLASSDATALOG + "=true", "true,false",
+																					Verifier.TRUEORFALSEPATTERN),
 																			new Syntax(CONDITIONAL_PACKAGE,
 																					"The " + CONDITIONAL_PACKAGE
 																							+ " works as private package but will only include the packages when they are imported. When this header is used, bnd will recursively add packages that match the patterns until there are no more additions.",
@@ -556,6 +560,11 @@ public class Syntax implements Constants {
 																					INCLUDE_RESOURCE + ": lib=jar", null,
 																					null),
 
+																			new Syntax(MACROCACHE,
+																					"Keep expanded property values until a property they refer to changes. Values that use commands with side effects, like ${now} or ${system}, are always expanded again.",
+																					MACROCACHE + "=true", "true,false",
+																					Verifier.TRUEORFALSEPATTERN),
+
 																			new Syntax(MAKE,
 																					"Set patterns for make plugins. These patterns are used to find a plugin that can make a resource that can not be found.",
 																					MAKE + ": (*).jar;type=bnd; recipe=\"bnd/$1.bnd\"",
@@ -590,6 +599,14 @@ public class Syntax implements Constants {
 																					"Do not calculate the osgi.ee name space Execution Environment from the class file version",
 																					NOEE + "=true", "true,false",
 																					Verifier.TRUEORFALSEPATTERN),
+																			new Syntax(PARALLELANALYSIS,
+																					"Parse the class files of the bundle concurrently. The generated manifest is identical to the serial analysis. Baselining also hashes the resources concurrently.",
+																					PARALLELANALYSIS + "=true", "true,false",
+																					Verifier.TRUEORFALSEPATTERN),
+																			new Syntax(PARALLELSUB,
+																					"Build the sub-bundles of a -sub project concurrently.",
+																					PARALLELSUB + "=true", "true,false",
+																					Verifier.TRUEORFALSEPATTERN),
 																			new Syntax(PEDANTIC,
 																					"Warn about things that are not really wrong but still not right.",
 																					PEDANTIC + "=true", "true,false",
@@ -628,7 +645,11 @@ public class Syntax implements Constants {
 																					REMOVEHEADERS
 																							+ "=FOO_.*,Proprietary",
 																					null, null),
-																			new Syntax(RESOURCEONLY,
+																			new Syntax(RESOLVECACHE,
+																			"Reuse the previous resolution of a bndrun file when its inputs and the content of its repositories did not change.",
+																			RESOLVECACHE + "=true", "true,false",
+																			Verifier.TRUEORFALSEPATTERN),
+																	new Syntax(RESOURCEONLY,
 																					"Normally bnd warns when the JAR does not contain any classes, this option suppresses this warning.",
 																					RESOURCEONLY + "=true",
 																					"true,false",
@@ -675,6 +696,9 @@ public class Syntax implements Constants {
 																					"Additional JARs for the VM path, can include a framework",
 																					RUNPATH + "=org.eclipse.osgi;version=3.5",
 																					null, null, path_version),
+																			new Syntax(RUNPARALLEL,
+																					"Install and start the run bundles with multiple threads in the launcher. The value is the number of threads, true uses a thread per processor.",
+																					RUNPARALLEL + "=8", null, null),
 																			new Syntax(RUNVM,
 																					"Additional arguments for the VM invocation. Keys that start with a - are added as options, otherwise they are treated as -D properties for the VM.",
 																					RUNVM + "=-Xmax=30, secondOption=secondValue",
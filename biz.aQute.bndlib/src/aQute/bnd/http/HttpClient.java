@@ -23,16 +23,21 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TimeZone;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+
 import aQute.bnd.connection.settings.ConnectionSettings;
 import aQute.bnd.http.URLCache.Info;
 import aQute.bnd.osgi.Processor;
@@ -74,6 +79,9 @@ public class HttpClient implements Closeable, URLConnector {
 	private Registry							registry				= null;
 	private Reporter							reporter				= new Slf4jReporter(HttpClient.class);
 	private volatile AtomicBoolean				offline;
+	private HttpDispatcher						dispatcher;
+	private int									maxConnectionsPerHost	= 6;
+	private int									maxConnections			= 64;
 
 	public HttpClient() {}
 
@@ -104,6 +112,13 @@ public class HttpClient implements Closeable, URLConnector {
 
 	public void close() {
 		Authenticator.setDefault(null);
+		HttpDispatcher d;
+		synchronized (this) {
+			d = dispatcher;
+			dispatcher = null;
+		}
+		if (d != null)
+			d.close();
 	}
 
 	@Override
@@ -150,6 +165,77 @@ public class HttpClient implements Closeable, URLConnector {
 		}
 	}
 
+	/**
+	 * Send a request in the background. At most
+	 * {@link #setMaxConnectionsPerHost(int)} requests are active for a host
+	 * and at most {@link #setMaxConnections(int)} in total, other requests wait
+	 * for a request to finish.
+	 */
+	<T> Promise<T> sendAsync(final HttpRequest<T> request) {
+		return getDispatcher().submit(request.url, new Callable<T>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public T call() throws Exception {
+				return (T) send(request);
+			}
+		});
+	}
+
+	/**
+	 * Revalidate the entries in the cache that were not verified within the
+	 * freshness window. The entries are checked concurrently with conditional
+	 * requests, the results are recorded in the index of the cache so the
+	 * next revalidation skips the entries that are still fresh. Nothing is
+	 * checked when the client is offline.
+	 *
+	 * @return a promise for the state of each checked entry
+	 */
+	public Promise<Map<URI,State>> revalidate(long freshness, TimeUnit unit) {
+		final long maxStale = unit.toMillis(freshness);
+		final Deferred<Map<URI,State>> deferred = new Deferred<>();
+		Processor.getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					deferred.resolve(revalidate0(maxStale));
+				} catch (Throwable t) {
+					deferred.fail(t);
+				}
+			}
+		});
+		return deferred.getPromise();
+	}
+
+	Map<URI,State> revalidate0(long maxStale) throws Exception {
+		Map<URI,State> states = new LinkedHashMap<>();
+		if (isOffline())
+			return states;
+
+		URLCache cache = this.cache;
+		long now = System.currentTimeMillis();
+		Map<URI,Promise<State>> promises = new LinkedHashMap<>();
+		for (URI uri : cache.getUnverified(now - maxStale)) {
+			promises.put(uri, build().useCache(maxStale).get(State.class).async(uri));
+		}
+
+		for (Entry<URI,Promise<State>> e : promises.entrySet()) {
+			Throwable failure = e.getValue().getFailure();
+			if (failure != null) {
+				reporter.trace("revalidating %s failed: %s", e.getKey(), failure);
+				states.put(e.getKey(), State.OTHER);
+			} else
+				states.put(e.getKey(), e.getValue().getValue());
+		}
+		cache.verified(states, now);
+		return states;
+	}
+
+	private synchronized HttpDispatcher getDispatcher() {
+		if (dispatcher == null)
+			dispatcher = new HttpDispatcher(maxConnectionsPerHost, maxConnections);
+		return dispatcher;
+	}
+
 	Object doCached(final HttpRequest< ? > request) throws Exception, IOException {
 		TaggedData tag = doCached0(request);
 		if (request.download == TaggedData.class)
@@ -514,7 +600,9 @@ public class HttpClient implements Closeable, URLConnector {
 
 			if ((code / 100) != 2) {
 				task.done("finished", null);
-				return new TaggedData(con, null, request.useCacheFile);
+				TaggedData td = new TaggedData(con, null, request.useCacheFile);
+				release(hcon, code);
+				return td;
 			}
 
 			// Do not enclose in resource try! InputStream is potentially
@@ -532,6 +620,21 @@ public class HttpClient implements Closeable, URLConnector {
 		}
 	}
 
+	/**
+	 * Read what is left of a response without payload so the JDK can keep the
+	 * connection alive for the next request to the same host. Error responses
+	 * are read for their message by {@link TaggedData}.
+	 */
+	private void release(HttpURLConnection hcon, int code) {
+		if (code >= HttpURLConnection.HTTP_BAD_REQUEST)
+			return;
+		try {
+			IO.drain(hcon.getInputStream());
+		} catch (IOException e) {
+			// the connection will not be reused
+		}
+	}
+
 	boolean isUpdateInfo(final URLConnection con, HttpRequest< ? > request, int code) {
 		return request.upload instanceof File && request.updateTag && code == HttpURLConnection.HTTP_CREATED
 				&& con.getHeaderField("ETag") != null;
@@ -623,6 +726,26 @@ public class HttpClient implements Closeable, URLConnector {
 		this.cache = new URLCache(cache);
 	}
 
+	/**
+	 * Set the maximum number of asynchronous requests that are active at the
+	 * same time for a host. The default is 6.
+	 */
+	public synchronized void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (dispatcher != null)
+			dispatcher.setLimits(maxConnectionsPerHost, maxConnections);
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set the maximum number of asynchronous requests that are active at the
+	 * same time. The default is 64.
+	 */
+	public synchronized void setMaxConnections(int maxConnections) {
+		if (dispatcher != null)
+			dispatcher.setLimits(maxConnectionsPerHost, maxConnections);
+		this.maxConnections = maxConnections;
+	}
+
 	public void setReporter(Reporter reporter) {
 		this.reporter = reporter;
 	}
@@ -0,0 +1,234 @@
+package aQute.bnd.http;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+
+/**
+ * Dispatches asynchronous requests of a {@link HttpClient} to an executor
+ * while limiting the number of requests that are active per host and in
+ * total. Requests over the limit are queued without occupying a thread. When
+ * a request finishes the next waiting request for the same host is started
+ * first so it can reuse the kept alive connection.
+ * <p>
+ * The requests are selected while holding the lock of the dispatcher but
+ * handed to the executor after releasing it. The executor is owned by the
+ * dispatcher and rejects instead of running a request on the caller's thread,
+ * a rejected request is failed.
+ */
+class HttpDispatcher {
+	private final ThreadPoolExecutor	executor;
+	private final Map<String,Host>		hosts	= new HashMap<>();
+	private final Deque<Host>			ready	= new ArrayDeque<>();
+	private int							maxPerHost;
+	private int							maxTotal;
+	private int							active;
+	private boolean						closed;
+
+	private static class Host {
+		final String				key;
+		final Deque<Request< ? >>	waiting	= new ArrayDeque<>();
+		int							active;
+
+		Host(String key) {
+			this.key = key;
+		}
+	}
+
+	private class Request<T> implements Runnable {
+		final Host			host;
+		final Callable<T>	callable;
+		final Deferred<T>	deferred	= new Deferred<>();
+
+		Request(Host host, Callable<T> callable) {
+			this.host = host;
+			this.callable = callable;
+		}
+
+		@Override
+		public void run() {
+			try {
+				deferred.resolve(callable.call());
+			} catch (Throwable t) {
+				deferred.fail(t);
+			} finally {
+				execute(finished(host));
+			}
+		}
+	}
+
+	HttpDispatcher(int maxPerHost, int maxTotal) {
+		final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+		// the number of threads is bounded by the total limit
+		this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = threadFactory.newThread(r);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		setLimits(maxPerHost, maxTotal);
+	}
+
+	void setLimits(int maxPerHost, int maxTotal) {
+		if (maxPerHost < 1 || maxTotal < 1)
+			throw new IllegalArgumentException(
+					"Connection limits must be at least 1, per host " + maxPerHost + ", total " + maxTotal);
+		List<Request< ? >> start = new ArrayList<>();
+		synchronized (this) {
+			this.maxPerHost = maxPerHost;
+			this.maxTotal = maxTotal;
+			startWaiting(null, start);
+		}
+		execute(start);
+	}
+
+	/**
+	 * Run a request for the given url. The promise is resolved with the result
+	 * of the request or failed with the exception it threw.
+	 */
+	<T> Promise<T> submit(URL url, Callable<T> callable) {
+		Request<T> request;
+		List<Request< ? >> start = new ArrayList<>(1);
+		synchronized (this) {
+			if (closed) {
+				Deferred<T> deferred = new Deferred<>();
+				deferred.fail(new IllegalStateException("The http client is closed"));
+				return deferred.getPromise();
+			}
+
+			String key = key(url);
+			Host host = hosts.get(key);
+			if (host == null) {
+				host = new Host(key);
+				hosts.put(key, host);
+			}
+
+			request = new Request<>(host, callable);
+			if (!host.waiting.isEmpty() || !canStart(host)) {
+				if (host.waiting.isEmpty())
+					ready.add(host);
+				host.waiting.add(request);
+				return request.deferred.getPromise();
+			}
+			start(request, start);
+		}
+		execute(start);
+		return request.deferred.getPromise();
+	}
+
+	/**
+	 * Fail the requests that are still waiting, active requests run to their
+	 * end.
+	 */
+	void close() {
+		List<Request< ? >> waiting = new ArrayList<>();
+		synchronized (this) {
+			closed = true;
+			for (Host host : ready) {
+				waiting.addAll(host.waiting);
+				host.waiting.clear();
+			}
+			ready.clear();
+		}
+		executor.shutdown();
+		for (Request< ? > request : waiting)
+			request.deferred.fail(new IllegalStateException("The http client is closed"));
+	}
+
+	synchronized int getActive() {
+		return active;
+	}
+
+	private boolean canStart(Host host) {
+		return active < maxTotal && host.active < maxPerHost;
+	}
+
+	/**
+	 * Hand the started requests to the executor, must not be called while
+	 * holding the lock. A rejected request is failed and its slot is used for
+	 * the next waiting request.
+	 */
+	private void execute(List<Request< ? >> requests) {
+		Deque<Request< ? >> todo = new ArrayDeque<>(requests);
+		Request< ? > request;
+		while ((request = todo.poll()) != null) {
+			try {
+				executor.execute(request);
+			} catch (RejectedExecutionException e) {
+				request.deferred.fail(e);
+				todo.addAll(finished(request.host));
+			}
+		}
+	}
+
+	/**
+	 * Release the slot of a request and return the waiting requests that can
+	 * start now.
+	 */
+	private synchronized List<Request< ? >> finished(Host host) {
+		host.active--;
+		active--;
+		List<Request< ? >> start = new ArrayList<>();
+		startWaiting(host, start);
+		if (host.active == 0 && host.waiting.isEmpty())
+			hosts.remove(host.key);
+		return start;
+	}
+
+	/**
+	 * Start waiting requests as long as the limits allow it. The given host is
+	 * served first.
+	 */
+	private void startWaiting(Host first, List<Request< ? >> start) {
+		if (closed)
+			return;
+
+		if (first != null && !first.waiting.isEmpty()) {
+			while (!first.waiting.isEmpty() && canStart(first))
+				start(first.waiting.poll(), start);
+			if (first.waiting.isEmpty())
+				ready.remove(first);
+		}
+
+		for (Iterator<Host> i = ready.iterator(); i.hasNext() && active < maxTotal;) {
+			Host host = i.next();
+			while (!host.waiting.isEmpty() && canStart(host))
+				start(host.waiting.poll(), start);
+			if (host.waiting.isEmpty())
+				i.remove();
+		}
+	}
+
+	/**
+	 * Count the request as active, the collected requests must be handed to
+	 * {@link #execute(List)} after releasing the lock.
+	 */
+	private void start(Request< ? > request, List<Request< ? >> start) {
+		request.host.active++;
+		active++;
+		start.add(request);
+	}
+
+	private static String key(URL url) {
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		return url.getProtocol() + "://" + url.getHost() + ":" + port;
+	}
+}
@@ -7,13 +7,10 @@ import java.net.URI;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
-import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
 
-import aQute.bnd.osgi.Processor;
 import aQute.bnd.service.url.TaggedData;
 import aQute.lib.converter.TypeReference;
 import aQute.service.reporter.Reporter;
@@ -197,24 +194,13 @@ public class HttpRequest<T> {
 		return this;
 	}
 
-	public Promise<T> async(final URL url) throws InterruptedException {
+	/**
+	 * Send the request in the background, the number of requests that are
+	 * active at the same time is limited per host by the client.
+	 */
+	public Promise<T> async(URL url) throws InterruptedException {
 		this.url = url;
-		final Deferred<T> deferred = new Deferred<>();
-		Executor e = Processor.getExecutor();
-		e.execute(new Runnable() {
-
-			@Override
-			public void run() {
-				try {
-					T result = (T) client.send(HttpRequest.this);
-					deferred.resolve(result);
-				} catch (Throwable t) {
-					deferred.fail(t);
-				}
-			}
-
-		});
-		return deferred.getPromise();
+		return client.sendAsync(this);
 	}
 
 	public Promise<T> async(URI uri) throws MalformedURLException, InterruptedException {
@@ -6,11 +6,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
+import aQute.bnd.service.url.State;
 import aQute.lib.io.IO;
 import aQute.lib.json.JSONCodec;
 import aQute.libg.cryptography.SHA1;
@@ -22,6 +29,7 @@ public class URLCache {
 	private final static JSONCodec		codec		= new JSONCodec();
 
 	private final File					root;
+	private final File					index;
 	private Reporter					reporter	= new Slf4jReporter(URLCache.class);
 
 	private ConcurrentMap<File,Info>	infos		= new ConcurrentHashMap<>();
@@ -34,6 +42,20 @@ public class URLCache {
 		public String	sha_256;
 	}
 
+	/**
+	 * The index of the cache, it records when the entries were last verified
+	 * by {@link HttpClient#revalidate(long, TimeUnit)}.
+	 */
+	public static class IndexDTO {
+		public Map<String,EntryDTO> entries = new TreeMap<>();
+	}
+
+	public static class EntryDTO {
+		public URI		uri;
+		public long		verified;
+		public State	state;
+	}
+
 	public class Info implements Closeable {
 		File			file;
 		File			jsonFile;
@@ -117,6 +139,7 @@ public class URLCache {
 	public URLCache(File root) {
 		this.root = new File(root, "shas");
 		this.root.mkdirs();
+		this.index = new File(root, "index.json");
 	}
 
 	public Info get(URI uri) throws Exception {
@@ -142,6 +165,83 @@ public class URLCache {
 		}
 	}
 
+	/**
+	 * Answer the URIs of the entries in the cache that were not verified since
+	 * the given time. The URIs are taken from the index, only entries that
+	 * are not yet in the index need their JSON file to be read.
+	 */
+	synchronized List<URI> getUnverified(long since) throws Exception {
+		IndexDTO index = readIndex();
+		List<URI> uris = new ArrayList<>();
+		File[] files = root.listFiles();
+		if (files == null)
+			return uris;
+
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.endsWith(".content"))
+				continue;
+
+			EntryDTO entry = index.entries.get(name.substring(0, name.length() - ".content".length()));
+			if (entry == null) {
+				File jsonFile = new File(root, name + ".json");
+				if (!jsonFile.isFile())
+					continue;
+				entry = new EntryDTO();
+				try {
+					entry.uri = codec.dec().from(jsonFile).get(InfoDTO.class).uri;
+				} catch (Exception e) {
+					reporter.error("URLCache Failed to load data for %s from %s", file, jsonFile);
+					continue;
+				}
+				if (entry.uri == null)
+					continue;
+			}
+			if (entry.verified < since)
+				uris.add(entry.uri);
+		}
+		return uris;
+	}
+
+	/**
+	 * Record the result of verifying entries in the index. Entries that are no
+	 * longer in the cache are removed from the index.
+	 */
+	synchronized void verified(Map<URI,State> states, long time) throws Exception {
+		IndexDTO index = readIndex();
+		for (Entry<URI,State> e : states.entrySet()) {
+			EntryDTO entry = new EntryDTO();
+			entry.uri = e.getKey();
+			entry.state = e.getValue();
+			if (entry.state == State.UNMODIFIED || entry.state == State.UPDATED)
+				entry.verified = time;
+			index.entries.put(toName(entry.uri), entry);
+		}
+		for (Iterator<String> i = index.entries.keySet().iterator(); i.hasNext();) {
+			if (!new File(root, i.next() + ".content").isFile())
+				i.remove();
+		}
+
+		File tmp = IO.createTempFile(root.getParentFile(), "index", ".json");
+		try {
+			codec.enc().to(tmp).put(index);
+			IO.rename(tmp, this.index);
+		} finally {
+			IO.delete(tmp);
+		}
+	}
+
+	private IndexDTO readIndex() {
+		if (index.isFile()) {
+			try {
+				return codec.dec().from(index).get(IndexDTO.class);
+			} catch (Exception e) {
+				reporter.error("URLCache Failed to load index %s", index);
+			}
+		}
+		return new IndexDTO();
+	}
+
 	public static String toName(URI uri) throws Exception {
 		return SHA1.digest(uri.toASCIIString().getBytes(StandardCharsets.UTF_8)).asHex();
 	}
@@ -51,6 +51,8 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TimeZone;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
@@ -88,6 +90,7 @@ import aQute.libg.reporter.ReporterMessages;
 public class Analyzer extends Processor {
 	private final SortedSet<Clazz.JAVA>				ees						= new TreeSet<Clazz.JAVA>();
 	static Properties								bndInfo;
+	private static ForkJoinPool						analysisPool;
 
 	// Bundle parameters
 	private Jar										dot;
@@ -2302,6 +2305,7 @@ public class Analyzer extends Processor {
 	 */
 	private boolean analyzeJar(Jar jar, String prefix, boolean okToIncludeDirs) throws Exception {
 		Map<String,Clazz> mismatched = new HashMap<String,Clazz>();
+		Map<String,Object> parsed = is(PARALLELANALYSIS) ? parseClassesParallel(jar, prefix) : null;
 
 		next: for (String path : jar.getResources().keySet()) {
 			if (path.startsWith(prefix)) {
@@ -2320,16 +2324,16 @@ public class Analyzer extends Processor {
 
 				// Check class resources, we need to analyze them
 				if (path.endsWith(".class")) {
-					Resource resource = jar.getResource(path);
 					Clazz clazz;
 
 					try {
-						InputStream in = resource.openInputStream();
-						clazz = new Clazz(this, path, resource);
-						try {
-							clazz.parseClassFile();
-						} finally {
-							in.close();
+						if (parsed == null)
+							clazz = parseClass(path, jar.getResource(path));
+						else {
+							Object result = parsed.get(path);
+							if (result instanceof Throwable)
+								throw (Throwable) result;
+							clazz = (Clazz) result;
 						}
 					} catch (Throwable e) {
 						exception(e, "Invalid class file %s (%s)", relativePath, e);
@@ -2371,6 +2375,80 @@ public class Analyzer extends Processor {
 		return true;
 	}
 
+	private Clazz parseClass(String path, Resource resource) throws Exception {
+		Clazz clazz = new Clazz(this, path, resource);
+		clazz.parseClassFile();
+		return clazz;
+	}
+
+	/**
+	 * Parse all the classes under the prefix on a fork join pool. The result
+	 * maps the path to either the parsed Clazz or the Throwable that was thrown
+	 * while parsing. The caller merges the results in the (sorted) resource
+	 * order so the outcome is identical to the serial analysis. No reporting
+	 * must take place on the worker threads.
+	 */
+	private Map<String,Object> parseClassesParallel(Jar jar, String prefix) {
+		List<String> paths = new ArrayList<String>();
+		List<Resource> resources = new ArrayList<Resource>();
+		for (Entry<String,Resource> entry : jar.getResources().entrySet()) {
+			String path = entry.getKey();
+			if (path.startsWith(prefix) && path.endsWith(".class")) {
+				paths.add(path);
+				resources.add(entry.getValue());
+			}
+		}
+
+		Object[] results = new Object[paths.size()];
+		getAnalysisPool().invoke(new ParseClasses(paths, resources, results, 0, results.length));
+
+		Map<String,Object> parsed = new HashMap<String,Object>(paths.size() * 2);
+		for (int i = 0; i < results.length; i++)
+			parsed.put(paths.get(i), results[i]);
+		return parsed;
+	}
+
+	private static synchronized ForkJoinPool getAnalysisPool() {
+		if (analysisPool == null)
+			analysisPool = new ForkJoinPool();
+		return analysisPool;
+	}
+
+	@SuppressWarnings("serial")
+	private class ParseClasses extends RecursiveAction {
+		private static final int		THRESHOLD	= 32;
+		private final List<String>		paths;
+		private final List<Resource>	resources;
+		private final Object[]			results;
+		private final int				from;
+		private final int				to;
+
+		ParseClasses(List<String> paths, List<Resource> resources, Object[] results, int from, int to) {
+			this.paths = paths;
+			this.resources = resources;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					try {
+						results[i] = parseClass(paths.get(i), resources.get(i));
+					} catch (Throwable e) {
+						results[i] = e;
+					}
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ParseClasses(paths, resources, results, from, middle),
+					new ParseClasses(paths, resources, results, middle, to));
+		}
+	}
+
 	/**
 	 * Clean up version parameters. Other builders use more fuzzy definitions of
 	 * the version syntax. This method cleans up such a version to match an OSGi
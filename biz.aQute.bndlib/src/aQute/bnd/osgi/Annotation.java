@@ -30,6 +30,16 @@ public class Annotation {
 		this.policy = policy;
 	}
 
+	/**
+	 * Create a copy that does not share the elements with the given
+	 * annotation.
+	 */
+	Annotation(Annotation annotation) {
+		this(annotation.name,
+				annotation.elements == null ? null : new LinkedHashMap<String,Object>(annotation.elements),
+				annotation.member, annotation.policy);
+	}
+
 	public TypeRef getName() {
 		return name;
 	}
@@ -18,6 +18,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -1286,6 +1291,9 @@ public class Builder extends Analyzer {
 
 		builders = getSubBuilders();
 
+		if (builders.size() > 1 && is(PARALLELSUB))
+			return builds(builders);
+
 		for (Builder builder : builders) {
 			try {
 				startBuild(builder);
@@ -1303,6 +1311,60 @@ public class Builder extends Analyzer {
 		return result.toArray(new Jar[0]);
 	}
 
+	/**
+	 * Build the sub-builders concurrently. The start and done callbacks and the
+	 * collection of the errors and warnings happen on this thread, in the
+	 * order of the builders. Each sub-builder only reports to itself while it
+	 * builds, so the result is the same as the serial build.
+	 */
+	private Jar[] builds(List<Builder> builders) throws Exception {
+		// initialize the classpath the sub-builders share
+		getClasspath();
+
+		List<Future<Jar>> futures = new ArrayList<Future<Jar>>(builders.size());
+		ExecutorService pool = Executors
+				.newFixedThreadPool(Math.min(builders.size(), Runtime.getRuntime().availableProcessors()));
+		try {
+			for (final Builder builder : builders) {
+				try {
+					startBuild(builder);
+					futures.add(pool.submit(new Callable<Jar>() {
+						public Jar call() throws Exception {
+							return builder.build();
+						}
+					}));
+				} catch (Exception e) {
+					builder.exception(e, "Exception Building %s", builder.getBsn());
+					futures.add(null);
+				}
+			}
+
+			List<Jar> result = new ArrayList<Jar>();
+			for (int i = 0; i < builders.size(); i++) {
+				Builder builder = builders.get(i);
+				Future<Jar> future = futures.get(i);
+				if (future != null) {
+					try {
+						Jar jar = future.get();
+						jar.setName(builder.getBsn());
+
+						result.add(jar);
+						doneBuild(builder);
+					} catch (ExecutionException e) {
+						builder.exception(e.getCause(), "Exception Building %s", builder.getBsn());
+					} catch (Exception e) {
+						builder.exception(e, "Exception Building %s", builder.getBsn());
+					}
+				}
+				if (builder != this)
+					getInfo(builder, builder.getBsn() + ": ");
+			}
+			return result.toArray(new Jar[0]);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
 	/**
 	 * Called when we start to build a builder
 	 */
@@ -0,0 +1,295 @@
+package aQute.bnd.osgi;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import aQute.bnd.osgi.Clazz.FieldDef;
+import aQute.bnd.osgi.Clazz.MethodDef;
+import aQute.bnd.osgi.Descriptors.TypeRef;
+
+/**
+ * Records the events a parse of a class file delivers to a
+ * {@link ClassDataCollector} so they can be replayed to other collectors
+ * without parsing the class file again. While recording, the events are
+ * forwarded to the collector that caused the parse. If that collector is not
+ * interested in the class the parse still continues, otherwise the log would
+ * be incomplete.
+ * <p>
+ * The log is an array of event codes and an array with the arguments of the
+ * events. Annotations are copied when they are replayed since some collectors
+ * merge values into them.
+ */
+class ClassDataLog extends ClassDataCollector {
+	private static final byte			VERSION				= 0;
+	private static final byte			CLASS_START			= 1;
+	private static final byte			EXTENDS_CLASS		= 2;
+	private static final byte			IMPLEMENTS			= 3;
+	private static final byte			ADD_REFERENCE		= 4;
+	private static final byte			ANNOTATION			= 5;
+	private static final byte			PARAMETER			= 6;
+	private static final byte			METHOD				= 7;
+	private static final byte			FIELD				= 8;
+	private static final byte			DEPRECATED			= 9;
+	private static final byte			ENCLOSING_METHOD	= 10;
+	private static final byte			INNER_CLASS			= 11;
+	private static final byte			SIGNATURE			= 12;
+	private static final byte			CONSTANT			= 13;
+	private static final byte			MEMBER_END			= 14;
+	private static final byte			REFERENCE_METHOD	= 15;
+	private static final byte			REFER_TO			= 16;
+	private static final byte			ANNOTATION_DEFAULT	= 17;
+
+	private byte[]						events				= new byte[64];
+	private Object[]					args				= new Object[64];
+	private int							nevents;
+	private int							nargs;
+	private Set<TypeRef>				xref;
+
+	private final ClassDataCollector	delegate;
+	private boolean						forward				= true;
+
+	ClassDataLog(ClassDataCollector delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Called when the recording parse has finished successfully.
+	 *
+	 * @param xref the references returned by the parse
+	 * @return the references to return to the collector that caused the
+	 *         parse, null if it was not interested in the class
+	 */
+	Set<TypeRef> done(Set<TypeRef> xref) {
+		this.xref = xref;
+		events = Arrays.copyOf(events, nevents);
+		args = Arrays.copyOf(args, nargs);
+		return forward ? xref : null;
+	}
+
+	/**
+	 * Replay the recorded events to a collector. This mirrors the parser, if
+	 * the collector is not interested in the class only the class end is
+	 * delivered.
+	 *
+	 * @return the references found in the class or null if the collector was
+	 *         not interested in the class
+	 */
+	Set<TypeRef> replay(Clazz clazz, ClassDataCollector cd) throws Exception {
+		boolean started = false;
+		int a = 0;
+		try {
+			for (int e = 0; e < nevents; e++) {
+				switch (events[e]) {
+					case VERSION :
+						cd.version((Integer) args[a++], (Integer) args[a++]);
+						break;
+					case CLASS_START :
+						started = true;
+						if (!cd.classStart(clazz))
+							return null;
+						break;
+					case EXTENDS_CLASS :
+						cd.extendsClass((TypeRef) args[a++]);
+						break;
+					case IMPLEMENTS :
+						cd.implementsInterfaces((TypeRef[]) args[a++]);
+						break;
+					case ADD_REFERENCE :
+						cd.addReference((TypeRef) args[a++]);
+						break;
+					case ANNOTATION :
+						cd.annotation(new Annotation((Annotation) args[a++]));
+						break;
+					case PARAMETER :
+						cd.parameter((Integer) args[a++]);
+						break;
+					case METHOD :
+						cd.method((MethodDef) args[a++]);
+						break;
+					case FIELD :
+						cd.field((FieldDef) args[a++]);
+						break;
+					case DEPRECATED :
+						cd.deprecated();
+						break;
+					case ENCLOSING_METHOD :
+						cd.enclosingMethod((TypeRef) args[a++], (String) args[a++], (String) args[a++]);
+						break;
+					case INNER_CLASS :
+						cd.innerClass((TypeRef) args[a++], (TypeRef) args[a++], (String) args[a++],
+								(Integer) args[a++]);
+						break;
+					case SIGNATURE :
+						cd.signature((String) args[a++]);
+						break;
+					case CONSTANT :
+						cd.constant(args[a++]);
+						break;
+					case MEMBER_END :
+						cd.memberEnd();
+						break;
+					case REFERENCE_METHOD :
+						cd.referenceMethod((Integer) args[a++], (TypeRef) args[a++], (String) args[a++],
+								(String) args[a++]);
+						break;
+					case REFER_TO :
+						cd.referTo((TypeRef) args[a++], (Integer) args[a++]);
+						break;
+					case ANNOTATION_DEFAULT :
+						cd.annotationDefault((MethodDef) args[a++], args[a++]);
+						break;
+					default :
+						throw new IllegalStateException("Unknown class data event " + events[e]);
+				}
+			}
+			return new HashSet<TypeRef>(xref);
+		} finally {
+			if (started)
+				cd.classEnd();
+		}
+	}
+
+	private void event(byte event, Object... arguments) {
+		if (nevents == events.length)
+			events = Arrays.copyOf(events, nevents * 2);
+		events[nevents++] = event;
+
+		if (nargs + arguments.length > args.length)
+			args = Arrays.copyOf(args, Math.max(args.length * 2, nargs + arguments.length));
+		for (Object argument : arguments)
+			args[nargs++] = argument;
+	}
+
+	@Override
+	public void version(int minor, int major) {
+		event(VERSION, minor, major);
+		if (forward)
+			delegate.version(minor, major);
+	}
+
+	@Override
+	public boolean classStart(Clazz c) {
+		event(CLASS_START);
+		forward = delegate.classStart(c);
+		return true;
+	}
+
+	@Override
+	public void extendsClass(TypeRef zuper) throws Exception {
+		event(EXTENDS_CLASS, zuper);
+		if (forward)
+			delegate.extendsClass(zuper);
+	}
+
+	@Override
+	public void implementsInterfaces(TypeRef[] interfaces) throws Exception {
+		event(IMPLEMENTS, (Object) interfaces);
+		if (forward)
+			delegate.implementsInterfaces(interfaces);
+	}
+
+	@Override
+	public void addReference(TypeRef ref) {
+		event(ADD_REFERENCE, ref);
+		if (forward)
+			delegate.addReference(ref);
+	}
+
+	@Override
+	public void annotation(Annotation annotation) throws Exception {
+		event(ANNOTATION, new Annotation(annotation));
+		if (forward)
+			delegate.annotation(annotation);
+	}
+
+	@Override
+	public void parameter(int p) {
+		event(PARAMETER, p);
+		if (forward)
+			delegate.parameter(p);
+	}
+
+	@Override
+	public void method(MethodDef defined) {
+		event(METHOD, defined);
+		if (forward)
+			delegate.method(defined);
+	}
+
+	@Override
+	public void field(FieldDef defined) {
+		event(FIELD, defined);
+		if (forward)
+			delegate.field(defined);
+	}
+
+	@Override
+	public void classEnd() throws Exception {
+		delegate.classEnd();
+	}
+
+	@Override
+	public void deprecated() throws Exception {
+		event(DEPRECATED);
+		if (forward)
+			delegate.deprecated();
+	}
+
+	@Override
+	public void enclosingMethod(TypeRef cName, String mName, String mDescriptor) {
+		event(ENCLOSING_METHOD, cName, mName, mDescriptor);
+		if (forward)
+			delegate.enclosingMethod(cName, mName, mDescriptor);
+	}
+
+	@Override
+	public void innerClass(TypeRef innerClass, TypeRef outerClass, String innerName, int innerClassAccessFlags)
+			throws Exception {
+		event(INNER_CLASS, innerClass, outerClass, innerName, innerClassAccessFlags);
+		if (forward)
+			delegate.innerClass(innerClass, outerClass, innerName, innerClassAccessFlags);
+	}
+
+	@Override
+	public void signature(String signature) {
+		event(SIGNATURE, signature);
+		if (forward)
+			delegate.signature(signature);
+	}
+
+	@Override
+	public void constant(Object object) {
+		event(CONSTANT, object);
+		if (forward)
+			delegate.constant(object);
+	}
+
+	@Override
+	public void memberEnd() {
+		event(MEMBER_END);
+		if (forward)
+			delegate.memberEnd();
+	}
+
+	@Override
+	public void referenceMethod(int access, TypeRef className, String method, String descriptor) {
+		event(REFERENCE_METHOD, access, className, method, descriptor);
+		if (forward)
+			delegate.referenceMethod(access, className, method, descriptor);
+	}
+
+	@Override
+	public void referTo(TypeRef typeRef, int modifiers) {
+		event(REFER_TO, typeRef, modifiers);
+		if (forward)
+			delegate.referTo(typeRef, modifiers);
+	}
+
+	@Override
+	public void annotationDefault(MethodDef last, Object value) {
+		event(ANNOTATION_DEFAULT, last, value);
+		if (forward)
+			delegate.annotationDefault(last, value);
+	}
+}
@@ -454,6 +454,7 @@ public class Clazz {
 	TypeRef[]			interfaces;
 	TypeRef				zuper;
 	ClassDataCollector	cd			= null;
+	ClassDataLog		log;
 	Resource			resource;
 	FieldDef			last		= null;
 	boolean				deprecated;
@@ -480,6 +481,22 @@ public class Clazz {
 	}
 
 	public Set<TypeRef> parseClassFileWithCollector(ClassDataCollector cd) throws Exception {
+		if (cd != null && analyzer.is(Constants.CLASSDATALOG)) {
+			if (log != null)
+				return log.replay(this, cd);
+
+			ClassDataLog recorder = new ClassDataLog(cd);
+			Set<TypeRef> xref;
+			InputStream in = resource.openInputStream();
+			try {
+				xref = parseClassFile(in, recorder);
+			} finally {
+				in.close();
+			}
+			log = recorder;
+			return recorder.done(xref);
+		}
+
 		InputStream in = resource.openInputStream();
 		try {
 			return parseClassFile(in, cd);
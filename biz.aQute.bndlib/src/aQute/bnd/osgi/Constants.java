@@ -96,6 +96,7 @@ public interface Constants {
 	String							BUILDPACKAGES								= "-buildpackages";
 	String							BUMPPOLICY									= "-bumppolicy";
 	String							CHECK										= "-check";
+	String							CLASSDATALOG								= "-classdatalog";
 	String							CONDUIT										= "-conduit";
 	String							CONTRACT									= "-contract";
 	@Deprecated
@@ -141,6 +142,7 @@ public interface Constants {
 	String							JAVAC										= "javac";
 	String							JAVA										= "java";
 	String							JAVA_DEBUG									= "java.debug";
+	String							MACROCACHE									= "-macrocache";
 	String							MAKE										= "-make";
 	String							METATYPE									= "-metatype";
 	String							METATYPE_ANNOTATIONS						= "-metatypeannotations";
@@ -167,6 +169,8 @@ public interface Constants {
 	String							PACKAGE_JPM									= "jpm";
 	String							PEDANTIC									= "-pedantic";
 	String							PACKAGEINFOTYPE								= "-packageinfotype";
+	String							PARALLELANALYSIS							= "-parallelanalysis";
+	String							PARALLELSUB									= "-parallelsub";
 	String							PLUGIN										= "-plugin";
 	String							PLUGINPATH									= "-pluginpath";
 	String							PLUGINPATH_URL_ATTR							= "url";
@@ -177,6 +181,7 @@ public interface Constants {
 	String							RELEASEREPO									= "-releaserepo";
 	String							DISTRO										= "-distro";
 	String							REMOVEHEADERS								= "-removeheaders";
+	String							RESOLVECACHE								= "-resolvecache";
 	String							RESOURCEONLY								= "-resourceonly";
 	String							SIGNATURE_TEST								= "-signaturetest";
 	String							SOURCES										= "-sources";
@@ -184,6 +189,7 @@ public interface Constants {
 	String							STRICT										= "-strict";
 	String							SUB											= "-sub";
 	String							RUNNOREFERENCES								= "-runnoreferences";
+	String							RUNPARALLEL									= "-runparallel";
 	String							RUNPROPERTIES								= "-runproperties";
 	String							RUNSYSTEMPACKAGES							= "-runsystempackages";
 	String							RUNSYSTEMCAPABILITIES						= "-runsystemcapabilities";
@@ -252,14 +258,14 @@ public interface Constants {
 			RUNPATH, RUNSYSTEMPACKAGES, RUNSYSTEMCAPABILITIES, RUNPROPERTIES, REPORTNEWER, UNDERTEST, TESTPATH,
 			TESTPACKAGES, NOMANIFEST, DEPLOYREPO, RELEASEREPO, SAVEMANIFEST, RUNVM, RUNPROGRAMARGS, WAB, WABLIB,
 			RUNFRAMEWORK, RUNFW, RUNKEEP, RUNTRACE, RUNBLACKLIST, TESTCONTINUOUS, SNAPSHOT, NAMESECTION, DIGESTS,
-			DSANNOTATIONS, DSANNOTATIONS_OPTIONS, BASELINE, BASELINEREPO, PROFILE, PACKAGE, RUNNOREFERENCES, JAVAAGENT,
-			STRICT, DIFFIGNORE, CONTRACT, NOBUILDINCACHE, EXTENSION, NOJUNIT, NOJUNITOSGI, PREPROCESSMATCHERS, UPTO,
-			INVALIDFILENAMES, FIXUPMESSAGES, PRIVATEPACKAGE, CONDITIONALPACKAGE, NOEE, OUTPUTMASK, TESTUNRESOLVED,
-			RUNJDB, RUNENV, RUNEE, EEPROFILE, RUNREQUIRES, EXPORT, GESTALT, BNDDRIVER, CHECK, DISTRO,
-			METATYPE_ANNOTATIONS, METATYPE_ANNOTATIONS_OPTIONS, PACKAGEINFOTYPE, JAVAC_SOURCE, JAVAC_TARGET,
-			JAVAC_PROFILE, JAVAC, JAVA, JAVA_DEBUG, EXPORTTYPE, RUNREMOTE, TESTER, AUGMENT, REQUIRE_BND, GROUPID,
-			STANDALONE, IGNORE_STANDALONE, RUNREPOS, INIT, MAVEN_RELEASE, BUILDREPO, CONNECTION_SETTINGS,
-			RUNPROVIDEDCAPABILITIES
+			DSANNOTATIONS, DSANNOTATIONS_OPTIONS, BASELINE, BASELINEREPO, PROFILE, PACKAGE, RUNNOREFERENCES,
+			RUNPARALLEL, JAVAAGENT, STRICT, DIFFIGNORE, CONTRACT, NOBUILDINCACHE, EXTENSION, NOJUNIT, NOJUNITOSGI,
+			PREPROCESSMATCHERS, UPTO, INVALIDFILENAMES, FIXUPMESSAGES, PRIVATEPACKAGE, CONDITIONALPACKAGE, NOEE,
+			OUTPUTMASK, TESTUNRESOLVED, RUNJDB, RUNENV, RUNEE, EEPROFILE, RUNREQUIRES, EXPORT, GESTALT, BNDDRIVER,
+			CHECK, DISTRO, METATYPE_ANNOTATIONS, METATYPE_ANNOTATIONS_OPTIONS, PACKAGEINFOTYPE, JAVAC_SOURCE,
+			JAVAC_TARGET, JAVAC_PROFILE, JAVAC, JAVA, JAVA_DEBUG, EXPORTTYPE, RUNREMOTE, TESTER, AUGMENT, REQUIRE_BND,
+			GROUPID, STANDALONE, IGNORE_STANDALONE, RUNREPOS, INIT, MAVEN_RELEASE, BUILDREPO, CONNECTION_SETTINGS,
+			RUNPROVIDEDCAPABILITIES, PARALLELANALYSIS, MACROCACHE, PARALLELSUB, CLASSDATALOG, RESOLVECACHE
 
 	};
 
@@ -15,6 +15,7 @@ import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -23,14 +24,12 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import aQute.bnd.version.Version;
 import aQute.lib.base64.Base64;
@@ -49,14 +48,20 @@ public class Jar implements Closeable {
 	static final String DEFAULT_MANIFEST_NAME = "META-INF/MANIFEST.MF";
 
 	public static final Object[]				EMPTY_ARRAY		= new Jar[0];
-	final TreeMap<String,Resource>				resources		= new TreeMap<String,Resource>();
-	final TreeMap<String,Map<String,Resource>>	directories		= new TreeMap<String,Map<String,Resource>>();
+	TreeMap<String,Resource>					resources		= new TreeMap<String,Resource>();
+	TreeMap<String,Map<String,Resource>>		directories		= new TreeMap<String,Map<String,Resource>>();
+	/*
+	 * The maps are shared with other jars, see Jar(Jar), they are copied
+	 * before they are changed
+	 */
+	private boolean								shared;
 	Manifest									manifest;
 	boolean										manifestFirst;
 	String										manifestName	= DEFAULT_MANIFEST_NAME;
 	String										name;
 	File										source;
 	ZipFile										zipFile;
+	ZipDirectory								zipDirectory;
 	long										lastModified;
 	String										lastModifiedReason;
 	Reporter									reporter;
@@ -71,17 +76,78 @@ public class Jar implements Closeable {
 	}
 
 	public Jar(String name, File dirOrFile, Pattern doNotCopy) throws ZipException, IOException {
+		this(name, dirOrFile, doNotCopy, false);
+	}
+
+	private Jar(String name, File dirOrFile, Pattern doNotCopy, boolean immutable)
+			throws ZipException, IOException {
 		this(name);
 		source = dirOrFile;
 		if (dirOrFile.isDirectory())
 			FileResource.build(this, dirOrFile, doNotCopy);
 		else if (dirOrFile.isFile()) {
-			zipFile = ZipResource.build(this, dirOrFile);
+			try {
+				zipDirectory = ZipDirectory.build(this, dirOrFile, null, immutable);
+			} catch (ZipException e) {
+				// let java.util.zip have a go at it
+				zipFile = ZipResource.build(this, dirOrFile);
+			}
 		} else {
 			throw new IllegalArgumentException("A Jar can only accept a valid file or directory: " + dirOrFile);
 		}
 	}
 
+	/**
+	 * Create a jar with the name, source and resources of another jar. The
+	 * resource objects are shared, the jar itself can be changed and closed
+	 * without affecting the other jar. The maps of resources and directories
+	 * are shared until one of the jars changes them, until then they are
+	 * returned unmodifiable by {@link #getResources()} and
+	 * {@link #getDirectories()}. The file of the other jar stays open until
+	 * that jar is closed.
+	 * 
+	 * @param other the jar to share the resources of
+	 */
+	protected Jar(Jar other) {
+		this(other.getName());
+		other.check();
+		source = other.source;
+		manifestName = other.manifestName;
+		manifestFirst = other.manifestFirst;
+		lastModified = other.lastModified;
+		lastModifiedReason = other.lastModifiedReason;
+		synchronized (other) {
+			if (!other.shared) {
+				other.shared = true;
+				for (Map.Entry<String,Map<String,Resource>> entry : other.directories.entrySet()) {
+					Map<String,Resource> dir = entry.getValue();
+					if (dir != null)
+						entry.setValue(Collections.unmodifiableMap(dir));
+				}
+			}
+			resources = other.resources;
+			directories = other.directories;
+		}
+		shared = true;
+	}
+
+	/**
+	 * Take a private copy of the maps before changing them when they are
+	 * shared with another jar.
+	 */
+	private void own() {
+		if (!shared)
+			return;
+		shared = false;
+		resources = new TreeMap<String,Resource>(resources);
+		TreeMap<String,Map<String,Resource>> copy = new TreeMap<String,Map<String,Resource>>();
+		for (Map.Entry<String,Map<String,Resource>> entry : directories.entrySet()) {
+			Map<String,Resource> dir = entry.getValue();
+			copy.put(entry.getKey(), dir == null ? null : new TreeMap<String,Resource>(dir));
+		}
+		directories = copy;
+	}
+
 	public Jar(String name, InputStream in, long lastModified) throws IOException {
 		this(name);
 		EmbeddedResource.build(this, in, lastModified);
@@ -99,6 +165,18 @@ public class Jar implements Closeable {
 		this(getName(f), f, null);
 	}
 
+	/**
+	 * Create a jar for a file that does not change while the jar is open, e.g.
+	 * a file in a repository. Where the platform allows it the file is memory
+	 * mapped, a file that is rewritten in place must use {@link #Jar(File)}.
+	 * 
+	 * @param f the file or directory
+	 * @param immutable true if the file does not change while it is open
+	 */
+	public Jar(File f, boolean immutable) throws IOException {
+		this(getName(f), f, null, immutable);
+	}
+
 	/**
 	 * Make the JAR file name the project name if we get a src or bin directory.
 	 * 
@@ -138,6 +216,7 @@ public class Jar implements Closeable {
 
 	public boolean putResource(String path, Resource resource, boolean overwrite) {
 		check();
+		own();
 		updateModified(resource.lastModified(), path);
 		while (path.startsWith("/"))
 			path = path.substring(1);
@@ -187,12 +266,12 @@ public class Jar implements Closeable {
 
 	public Map<String,Map<String,Resource>> getDirectories() {
 		check();
-		return directories;
+		return shared ? Collections.unmodifiableMap(directories) : directories;
 	}
 
 	public Map<String,Resource> getResources() {
 		check();
-		return resources;
+		return shared ? Collections.unmodifiableMap(resources) : resources;
 	}
 
 	public boolean addDirectory(Map<String,Resource> directory, boolean overwrite) {
@@ -289,35 +368,29 @@ public class Jar implements Closeable {
 			return;
 		}
 
-		ZipOutputStream jout = nomanifest || doNotTouchManifest ? new ZipOutputStream(out) : new JarOutputStream(out);
-
-		switch (compression) {
-			case STORE :
-				jout.setMethod(ZipOutputStream.DEFLATED);
-				break;
-
-			default :
-				// default is DEFLATED
-		}
-
-		Set<String> done = new HashSet<String>();
+		ZipWriter jout = new ZipWriter(out, !nomanifest && !doNotTouchManifest);
+		try {
+			Set<String> done = new HashSet<String>();
+
+			Set<String> directories = new HashSet<String>();
+			if (doNotTouchManifest) {
+				Resource r = getResource(manifestName);
+				if (r != null) {
+					writeResource(jout, directories, manifestName, r);
+					done.add(manifestName);
+				}
+			} else
+				doManifest(done, jout);
 
-		Set<String> directories = new HashSet<String>();
-		if (doNotTouchManifest) {
-			Resource r = getResource(manifestName);
-			if (r != null) {
-				writeResource(jout, directories, manifestName, r);
-				done.add(manifestName);
+			for (Map.Entry<String,Resource> entry : getResources().entrySet()) {
+				// Skip metainf contents
+				if (!done.contains(entry.getKey()))
+					writeResource(jout, directories, entry.getKey(), entry.getValue());
 			}
-		} else
-			doManifest(done, jout);
-
-		for (Map.Entry<String,Resource> entry : getResources().entrySet()) {
-			// Skip metainf contents
-			if (!done.contains(entry.getKey()))
-				writeResource(jout, directories, entry.getKey(), entry.getValue());
+			jout.finish();
+		} finally {
+			jout.release();
 		}
-		jout.finish();
 	}
 
 	public void writeFolder(File dir) throws Exception {
@@ -409,7 +482,7 @@ public class Jar implements Closeable {
 		return new String(cs);
 	}
 
-	private void doManifest(Set<String> done, ZipOutputStream jout) throws Exception {
+	private void doManifest(Set<String> done, ZipWriter jout) throws Exception {
 		check();
 		if (nomanifest)
 			return;
@@ -613,7 +686,7 @@ public class Jar implements Closeable {
 			return s;
 	}
 
-	private void writeResource(ZipOutputStream jout, Set<String> directories, String path, Resource resource)
+	private void writeResource(ZipWriter jout, Set<String> directories, String path, Resource resource)
 			throws Exception {
 		if (resource == null)
 			return;
@@ -630,6 +703,19 @@ public class Jar implements Closeable {
 			ZipUtil.setModifiedTime(ze, lastModified);
 			if (resource.getExtra() != null)
 				ze.setExtra(resource.getExtra().getBytes("UTF-8"));
+
+			//
+			// Unchanged entries from another ZIP file are copied without
+			// inflating and deflating them again
+			//
+			if (resource instanceof ZipDirectory.Entry) {
+				if (jout.putRawEntry(ze, (ZipDirectory.Entry) resource))
+					return;
+			} else if (resource instanceof ZipResource) {
+				ZipResource zr = (ZipResource) resource;
+				if (jout.putRawEntry(ze, zr.zip, zr.entry))
+					return;
+			}
 			jout.putNextEntry(ze);
 			resource.write(jout);
 			jout.closeEntry();
@@ -638,7 +724,7 @@ public class Jar implements Closeable {
 		}
 	}
 
-	void createDirectories(Set<String> directories, ZipOutputStream zip, String name) throws IOException {
+	void createDirectories(Set<String> directories, ZipWriter zip, String name) throws IOException {
 		int index = name.lastIndexOf('/');
 		if (index > 0) {
 			String path = name.substring(0, index);
@@ -693,8 +779,20 @@ public class Jar implements Closeable {
 			} catch (IOException e) {
 				// Ignore
 			}
-		resources.clear();
-		directories.clear();
+		if (zipDirectory != null)
+			try {
+				zipDirectory.close();
+			} catch (IOException e) {
+				// Ignore
+			}
+		if (shared) {
+			shared = false;
+			resources = new TreeMap<String,Resource>();
+			directories = new TreeMap<String,Map<String,Resource>>();
+		} else {
+			resources.clear();
+			directories.clear();
+		}
 		manifest = null;
 		source = null;
 	}
@@ -754,6 +852,7 @@ public class Jar implements Closeable {
 
 	public Resource remove(String path) {
 		check();
+		own();
 		Resource resource = resources.remove(path);
 		String dir = getDirectory(path);
 		Map<String,Resource> mdir = directories.get(dir);
@@ -1013,6 +1112,7 @@ public class Jar implements Closeable {
 	}
 
 	public void removePrefix(String prefixLow) {
+		own();
 		String prefixHigh = prefixLow + "\uFFFF";
 		resources.navigableKeySet().subSet(prefixLow, prefixHigh).clear();
 		if (prefixLow.endsWith("/"))
@@ -4,9 +4,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.DigestInputStream;
@@ -22,6 +25,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Formatter;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -30,6 +34,8 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -77,6 +83,31 @@ public class Macro {
 	Bindings				bindings		= null;
 	StringWriter			stdout			= new StringWriter();
 	StringWriter			stderr			= new StringWriter();
+	Expansion				expansion;
+
+	/*
+	 * The commands of this class that only depend on their arguments
+	 */
+	final static Set<String>								PURE_COMMANDS	= new HashSet<String>(Arrays.asList("uniq",
+			"pathseparator", "separator", "filter", "select", "filterout", "reject", "sort", "nsort", "join", "sjoin",
+			"toclasspath", "unescape", "startswith", "endswith", "extension", "stem", "substring", "get", "sublist",
+			"first", "last", "max", "min", "nmax", "nmin", "sum", "average", "reverse", "toupper", "tolower", "trim",
+			"glob"));
+
+	/*
+	 * Per class the commands found by name, a command is a method handle of
+	 * type COMMAND, the exception when it could not be accessed, or NOCOMMAND
+	 */
+	final static Object										NOCOMMAND	= new Object();
+	final static MethodType									COMMAND		= MethodType.methodType(Object.class,
+			Object.class, String[].class);
+	final static ClassValue<ConcurrentMap<String,Object>>	dispatch	= new ClassValue<ConcurrentMap<String,Object>>() {
+																			@Override
+																			protected ConcurrentMap<String,Object> computeValue(
+																					Class< ? > type) {
+																				return new ConcurrentHashMap<String,Object>();
+																			}
+																		};
 
 	public Macro(Processor domain, Object... targets) {
 		this.domain = domain;
@@ -92,12 +123,50 @@ public class Macro {
 		return process(line, new Link(source, null, line));
 	}
 
+	/**
+	 * Expand a property value and record what the result depends on, see
+	 * {@link Expansion}.
+	 */
+	Expansion expand(String value, Processor source) {
+		Expansion outer = expansion;
+		Expansion e = expansion = new Expansion(value, source, domain.getBase());
+		try {
+			e.result = process(value, source);
+		} finally {
+			expansion = outer;
+		}
+		if (flattening)
+			e.reusable = false;
+		if (outer != null) {
+			outer.keys.addAll(e.keys);
+			outer.values.addAll(e.values);
+			outer.reusable &= e.reusable;
+		}
+		return e;
+	}
+
+	void notReusable() {
+		if (expansion != null)
+			expansion.reusable = false;
+	}
+
 	String process(String line, Link link) {
+		if (isLiteral(line))
+			return line;
+
 		StringBuilder sb = new StringBuilder();
 		process(line, 0, '\u0000', '\u0000', sb, link);
 		return sb.toString();
 	}
 
+	/**
+	 * A line without a '$' and without a './' is returned as is by the macro
+	 * processor, there is no need to scan it.
+	 */
+	static boolean isLiteral(String line) {
+		return line != null && line.indexOf('$') < 0 && line.indexOf("./") < 0;
+	}
+
 	int process(CharSequence org, int index, char begin, char end, StringBuilder result, Link link) {
 		if (org == null) { // treat null like empty string
 			return index;
@@ -169,8 +238,10 @@ public class Macro {
 	}
 
 	private String getMacro(String key, Link link, char begin, char end) {
-		if (link != null && link.contains(key))
+		if (link != null && link.contains(key)) {
+			notReusable();
 			return "${infinite:" + link.toString() + "}";
+		}
 
 		if (key != null) {
 			key = key.trim();
@@ -181,6 +252,7 @@ public class Macro {
 				if (key.indexOf(';') < 0) {
 					Instruction ins = new Instruction(key);
 					if (!ins.isLiteral()) {
+						notReusable();
 						SortedList<String> sortedList = SortedList.fromIterator(domain.iterator());
 						StringBuilder sb = new StringBuilder();
 						String del = "";
@@ -201,6 +273,8 @@ public class Macro {
 					value = source.getProperties().getProperty(key);
 					source = source.getParent();
 				}
+				if (expansion != null)
+					expansion.depends(key, value);
 
 				if (value != null)
 					return process(value, new Link(source, link, key));
@@ -214,6 +288,9 @@ public class Macro {
 					return process(value, new Link(source, link, key));
 				}
 
+				// system properties, templates, and profiles are not tracked
+				notReusable();
+
 				if (key != null && key.trim().length() > 0) {
 					value = System.getProperty(key);
 					if (value != null)
@@ -247,9 +324,11 @@ public class Macro {
 					}
 				}
 			} else {
+				notReusable();
 				domain.warning("Found empty macro key");
 			}
 		} else {
+			notReusable();
 			domain.warning("Found null macro key");
 		}
 
@@ -298,6 +377,7 @@ public class Macro {
 				args[i] = args[i].replaceAll("\\\\;", ";");
 
 		if (args[0].startsWith("^")) {
+			notReusable();
 			String varname = args[0].substring(1).trim();
 
 			Processor parent = source.start.getParent();
@@ -309,19 +389,26 @@ public class Macro {
 		Processor rover = domain;
 		while (rover != null) {
 			String result = doCommand(rover, args[0], args);
-			if (result != null)
+			if (result != null) {
+				notReusable();
 				return result;
+			}
 
 			rover = rover.getParent();
 		}
 
 		for (int i = 0; targets != null && i < targets.length; i++) {
 			String result = doCommand(targets[i], args[0], args);
-			if (result != null)
+			if (result != null) {
+				notReusable();
 				return result;
+			}
 		}
 
-		return doCommand(this, args[0], args);
+		String result = doCommand(this, args[0], args);
+		if (result == NULLVALUE || !PURE_COMMANDS.contains(args[0]))
+			notReusable();
+		return result;
 	}
 
 	private String doCommand(Object target, String method, String[] args) {
@@ -334,39 +421,62 @@ public class Macro {
 				return null;
 			}
 
-			String part = method.replaceAll("-", "_");
-			for (int i = 0; i < part.length(); i++) {
-				if (!Character.isJavaIdentifierPart(part.charAt(i)))
+			for (int i = 0; i < method.length(); i++) {
+				char c = method.charAt(i);
+				if (c != '-' && !Character.isJavaIdentifierPart(c))
 					return null;
 			}
 
-			String cname = "_" + part;
+			Object command = getCommand(target.getClass(), method);
+			if (command == NOCOMMAND)
+				return null;
+
+			if (command instanceof Exception) {
+				domain.warning("Exception in replace: %s method=%s", command, method);
+				return NULLVALUE;
+			}
+
 			try {
-				Method m = target.getClass().getMethod(cname, new Class[] {
-						String[].class
-				});
-				Object result = m.invoke(target, new Object[] {
-						args
-				});
+				Object result = ((MethodHandle) command).invokeExact(target, args);
 				return result == null ? NULLVALUE : result.toString();
-			} catch (NoSuchMethodException e) {
-				return null;
-			} catch (InvocationTargetException e) {
-				if (e.getCause() instanceof IllegalArgumentException) {
-					domain.error("%s, for cmd: %s, arguments; %s", e.getCause().getMessage(), method,
-							Arrays.toString(args));
-				} else {
-					domain.warning("Exception in replace: %s", e.getCause());
-				}
+			} catch (IllegalArgumentException e) {
+				domain.error("%s, for cmd: %s, arguments; %s", e.getMessage(), method, Arrays.toString(args));
 				return NULLVALUE;
-			} catch (Exception e) {
-				domain.warning("Exception in replace: %s method=%s", e, method);
+			} catch (Throwable e) {
+				domain.warning("Exception in replace: %s", e);
 				return NULLVALUE;
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Answer the method handle for the command with the given name, the
+	 * exception when the method cannot be accessed, or NOCOMMAND when the class
+	 * has no such command. The lookup is done once per class and name since
+	 * most lookups fail and macros are expanded very often.
+	 */
+	private static Object getCommand(Class< ? > type, String method) {
+		ConcurrentMap<String,Object> map = dispatch.get(type);
+		Object command = map.get(method);
+		if (command == null) {
+			String cname = "_" + method.replace('-', '_');
+			try {
+				Method m = type.getMethod(cname, String[].class);
+				MethodHandle mh = MethodHandles.publicLookup().unreflect(m);
+				if (Modifier.isStatic(m.getModifiers()))
+					mh = MethodHandles.dropArguments(mh, 0, Object.class);
+				command = mh.asType(COMMAND);
+			} catch (NoSuchMethodException e) {
+				command = NOCOMMAND;
+			} catch (Exception e) {
+				command = e;
+			}
+			map.putIfAbsent(method, command);
+		}
+		return command;
+	}
+
 	/**
 	 * Return a unique list where the duplicates are removed.
 	 */
@@ -1142,6 +1252,54 @@ public class Macro {
 
 	// Helper class to track expansion of variables
 	// on the stack.
+	/**
+	 * The expansion of a property value together with the keys it has looked
+	 * up and the values it found for them. As long as these values and the
+	 * base directory are the same, expanding the property value again gives the
+	 * same result. An expansion that executed a command that is not a pure
+	 * function of its arguments, e.g. ${now} or ${system}, or that used system
+	 * properties, templates, or wildcards, is not reusable.
+	 */
+	static class Expansion {
+		final String		value;
+		final Processor		source;
+		final File			base;
+		final List<String>	keys		= new ArrayList<String>();
+		final List<String>	values		= new ArrayList<String>();
+		boolean				reusable	= true;
+		String				result;
+
+		Expansion(String value, Processor source, File base) {
+			this.value = value;
+			this.source = source;
+			this.base = base;
+		}
+
+		void depends(String key, String value) {
+			keys.add(key);
+			values.add(value);
+		}
+
+		boolean isValid(Processor domain, String value, Processor source) {
+			if (!reusable || this.source != source || !this.value.equals(value) || !equals(base, domain.getBase()))
+				return false;
+
+			for (int i = 0; i < keys.size(); i++) {
+				String key = keys.get(i);
+				String current = null;
+				for (Processor rover = domain; current == null && rover != null; rover = rover.getParent())
+					current = rover.getProperties().getProperty(key);
+				if (!equals(current, values.get(i)))
+					return false;
+			}
+			return true;
+		}
+
+		private static boolean equals(Object a, Object b) {
+			return a == b || (a != null && a.equals(b));
+		}
+	}
+
 	static class Link {
 		Link		previous;
 		String		key;
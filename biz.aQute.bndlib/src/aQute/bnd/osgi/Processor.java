@@ -32,6 +32,7 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -42,6 +43,7 @@ import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -153,6 +155,12 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	Collection<String>				filter;
 	HashSet<String>					missingCommand;
 	Boolean							strict;
+	volatile Map<String,Macro.Expansion>	expansions;
+	/*
+	 * The -macrocache flag and the change count it was computed for, see
+	 * isMacroCache()
+	 */
+	private volatile long					macroCacheState	= -1L;
 	boolean							fixupMessages;
 
 	public static class FileLine {
@@ -206,6 +214,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		Properties ext = new UTF8Properties(processor.properties);
 		ext.putAll(this.properties);
 		this.properties = ext;
+		changed();
 	}
 
 	public Processor getParent() {
@@ -269,6 +278,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 
 	public SetLocation warning(String string, Object... args) {
 		fixupMessages = false;
+		reported();
 		Processor p = current();
 		String s = formatArrays(string, args);
 		if (!p.warnings.contains(s))
@@ -279,6 +289,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 
 	public SetLocation error(String string, Object... args) {
 		fixupMessages = false;
+		reported();
 		Processor p = current();
 		try {
 			if (p.isFailOk())
@@ -332,6 +343,16 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		return error(format, args);
 	}
 
+	/**
+	 * A problem reported while a property is expanded must be reported again
+	 * the next time, so the expansion is not cached.
+	 */
+	private void reported() {
+		Macro replacer = this.replacer;
+		if (replacer != null)
+			replacer.notReusable();
+	}
+
 	public int printExceptionSummary(Throwable e, PrintStream out) {
 		if (e == null) {
 			return 0;
@@ -992,6 +1013,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	public void setProperties(Properties properties) {
 		doIncludes(getBase(), properties);
 		this.properties.putAll(properties);
+		changed();
 		mergeProperties(Constants.INIT); // execute macros in -init
 		this.properties.remove(Constants.INIT);
 	}
@@ -999,6 +1021,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	public void setProperties(File base, Properties properties) {
 		doIncludes(base, properties);
 		this.properties.putAll(properties);
+		changed();
 	}
 
 	public void addProperties(File file) throws Exception {
@@ -1137,6 +1160,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 
 	public void unsetProperty(String string) {
 		getProperties().remove(string);
+		changed();
 
 	}
 
@@ -1165,6 +1189,39 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		return false;
 	}
 
+	/**
+	 * Counts the changes made to the properties of any processor through its
+	 * methods. Changes made directly to {@link #getProperties()} are noticed
+	 * after the next such change or {@link #forceRefresh()}.
+	 */
+	private static final AtomicLong changes = new AtomicLong();
+
+	private static void changed() {
+		changes.incrementAndGet();
+	}
+
+	/**
+	 * If the macro cache is enabled, expanded property values are kept until
+	 * a property they depend on changes. The flag is computed again after the
+	 * properties of this processor or a parent have changed. The cache is off
+	 * when the sub-bundles are built concurrently, see {@link #PARALLELSUB}.
+	 */
+	boolean isMacroCache() {
+		long stamp = changes.get();
+		long state = macroCacheState;
+		if (state >>> 1 == stamp)
+			return (state & 1) != 0;
+
+		//
+		// Expanding the instruction reads properties, these lookups see
+		// the cache as off until the flag is known
+		//
+		macroCacheState = stamp << 1;
+		boolean macroCache = is(MACROCACHE) && !is(PARALLELSUB);
+		macroCacheState = (stamp << 1) | (macroCache ? 1 : 0);
+		return macroCache;
+	}
+
 	/**
 	 * If strict is true, then extra verification is done.
 	 */
@@ -1179,6 +1236,8 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	 */
 	public void forceRefresh() {
 		included = null;
+		expansions = null;
+		changed();
 		properties.clear();
 		setProperties(propertiesFile, base);
 		propertiesChanged();
@@ -1330,6 +1389,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 
 	private String getLiteralProperty(String key, String deflt, Processor source, boolean inherit) {
 		String value = null;
+		boolean cacheable = false;
 		// Use the key as is first, if found ok
 
 		if (filter != null && filter.contains(key)) {
@@ -1360,6 +1420,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 				else
 					break;
 			}
+			cacheable = value != null && inherit && isMacroCache();
 			//
 			// Check if we can find a replacement through the
 			// replacer, which takes profiles into account
@@ -1368,7 +1429,9 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 			}
 		}
 
-		if (value != null)
+		if (cacheable)
+			return getExpansion(key, value, source);
+		else if (value != null)
 			return getReplacer().process(value, source);
 		else if (deflt != null)
 			return getReplacer().process(deflt, this);
@@ -1376,6 +1439,28 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 			return null;
 	}
 
+	/**
+	 * Answer the expansion of a property value from the macro cache. A cached
+	 * expansion is used as long as the value, and the values of the properties
+	 * it refers to, did not change.
+	 */
+	private String getExpansion(String key, String value, Processor source) {
+		Map<String,Macro.Expansion> expansions = this.expansions;
+		if (expansions == null)
+			expansions = this.expansions = new ConcurrentHashMap<String,Macro.Expansion>();
+
+		Macro.Expansion expansion = expansions.get(key);
+		if (expansion != null && expansion.isValid(this, value, source))
+			return expansion.result;
+
+		expansion = getReplacer().expand(value, source);
+		if (expansion.reusable)
+			expansions.put(key, expansion);
+		else
+			expansions.remove(key);
+		return expansion.result;
+	}
+
 	/**
 	 * Helper to load a properties file from disk.
 	 * 
@@ -1579,6 +1664,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 			}
 		}
 		getProperties().put(key, value);
+		changed();
 	}
 
 	/**
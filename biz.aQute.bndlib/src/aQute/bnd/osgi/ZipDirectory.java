@@ -0,0 +1,507 @@
+package aQute.bnd.osgi;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import aQute.lib.io.IOConstants;
+
+/**
+ * The central directory of a ZIP file, read without
+ * {@link java.util.zip.ZipFile}. The entries are the resources, they only hold
+ * the offsets and sizes of their data, which is inflated from the file when it
+ * is read. This also allows the compressed data of an entry to be copied to
+ * another ZIP file without inflating and deflating it again.
+ * <p>
+ * The data is read through a file channel. bnd rewrites JAR files in place, so
+ * the length and modification time of the file are checked before each read
+ * and a changed file is reported instead of mixing the old directory with the
+ * new data.
+ * <p>
+ * A file that does not change while it is open, e.g. a file in a repository,
+ * is memory mapped instead and not checked. It may still be replaced by another
+ * file, the old content stays readable. On Windows a mapped file cannot be deleted or
+ * replaced until the mapping is garbage collected, so there it is never
+ * mapped.
+ */
+class ZipDirectory implements Closeable {
+	static final Charset	UTF8			= Charset.forName("UTF-8");
+	static final int		LOCSIG			= 0x04034b50;
+	static final int		CENSIG			= 0x02014b50;
+	static final int		ENDSIG			= 0x06054b50;
+	static final int		ZIP64_ENDSIG	= 0x06064b50;
+	static final int		ZIP64_LOCSIG	= 0x07064b50;
+	static final int		LOCHDR			= 30;
+	static final int		CENHDR			= 46;
+	static final int		ENDHDR			= 22;
+	static final long		ZIP64_MAGIC		= 0xFFFFFFFFL;
+	static final boolean	MAP				= File.separatorChar != '\\';
+	static final TimeZone	tz				= TimeZone.getDefault();
+
+	/**
+	 * An entry in the ZIP file, it is also the resource for this entry.
+	 */
+	static class Entry implements Resource {
+		final ZipDirectory	directory;
+		final String		name;
+		final int			flag;
+		final int			method;
+		final long			time;
+		final long			crc;
+		final long			csize;
+		final long			size;
+		final long			header;
+		final byte[]		cextra;
+		long				lastModified	= -11L;
+		String				extra;
+
+		Entry(ZipDirectory directory, String name, int flag, int method, long time, long crc, long csize, long size,
+				long header, byte[] cextra) {
+			this.directory = directory;
+			this.name = name;
+			this.flag = flag;
+			this.method = method;
+			this.time = time;
+			this.crc = crc;
+			this.csize = csize;
+			this.size = size;
+			this.header = header;
+			this.cextra = cextra;
+			if (cextra != null)
+				this.extra = new String(cextra, UTF8);
+		}
+
+		public InputStream openInputStream() throws IOException {
+			return directory.getInputStream(this);
+		}
+
+		public void write(OutputStream out) throws Exception {
+			FileResource.copy(this, out);
+		}
+
+		public long lastModified() {
+			if (lastModified == -11L) {
+				long t = getTime(time, cextra);
+				t += tz.getOffset(t);
+				lastModified = Math.min(t, System.currentTimeMillis() - 1);
+			}
+			return lastModified;
+		}
+
+		public String getExtra() {
+			return extra;
+		}
+
+		public void setExtra(String extra) {
+			this.extra = extra;
+		}
+
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			return ":" + directory.file.getPath() + "(" + name + "):";
+		}
+	}
+
+	final File						file;
+	private final Map<String,Entry>	entries	= new LinkedHashMap<>();
+	private final long				length;
+	private final long				lastModified;
+	private final boolean			immutable;
+	private volatile FileChannel	channel;
+	private volatile ByteBuffer		data;
+
+	/**
+	 * @param file the ZIP file
+	 * @param immutable the file does not change while it is open, it is
+	 *            mapped
+	 */
+	ZipDirectory(File file, boolean immutable) throws IOException {
+		this.file = file;
+		this.immutable = immutable;
+		this.lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		boolean keep = false;
+		try {
+			FileChannel fc = raf.getChannel();
+			length = fc.size();
+			if (immutable && MAP && length <= Integer.MAX_VALUE)
+				data = fc.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			else
+				channel = fc;
+			read(length);
+			keep = channel != null;
+		} catch (RuntimeException | InternalError e) {
+			throw new ZipException("Invalid central directory in " + file + ": " + e);
+		} finally {
+			if (!keep)
+				raf.close();
+		}
+	}
+
+	/**
+	 * Add the entries of a ZIP file as resources to the given jar.
+	 *
+	 * @return the directory, which must be closed when the jar is closed
+	 */
+	static ZipDirectory build(Jar jar, File file, Pattern pattern, boolean immutable) throws IOException {
+		ZipDirectory directory;
+		try {
+			directory = new ZipDirectory(file, immutable);
+		} catch (FileNotFoundException e) {
+			throw new IllegalArgumentException("Problem opening JAR: " + file.getAbsolutePath());
+		}
+		for (Entry entry : directory.entries.values()) {
+			if (pattern != null && !pattern.matcher(entry.name).matches())
+				continue;
+			if (!entry.name.endsWith("/"))
+				jar.putResource(entry.name, entry, true);
+		}
+		return directory;
+	}
+
+	Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Answer the (uncompressed) data of the entry.
+	 */
+	InputStream getInputStream(final Entry entry) throws IOException {
+		if ((entry.flag & 1) != 0)
+			throw new ZipException("Encrypted entries are not supported: " + entry);
+
+		InputStream in = getRawInputStream(entry);
+		switch (entry.method) {
+			case ZipEntry.STORED :
+				return in;
+
+			case ZipEntry.DEFLATED :
+				int size = (int) Math.max(64, Math.min(entry.csize + 1, IOConstants.PAGE_SIZE * 2));
+				return new InflaterInputStream(in, new Inflater(true), size) {
+					private boolean	eof;
+					private boolean	ended;
+
+					@Override
+					protected void fill() throws IOException {
+						if (eof)
+							throw new ZipException("Unexpected end of compressed data " + entry);
+						len = this.in.read(buf, 0, buf.length);
+						if (len == -1) {
+							// the raw inflater may need a dummy byte at the end
+							buf[0] = 0;
+							len = 1;
+							eof = true;
+						}
+						inf.setInput(buf, 0, len);
+					}
+
+					@Override
+					public void close() throws IOException {
+						if (!ended) {
+							ended = true;
+							inf.end();
+						}
+						super.close();
+					}
+				};
+
+			default :
+				in.close();
+				throw new ZipException("Unsupported compression method " + entry.method + " " + entry);
+		}
+	}
+
+	/**
+	 * Copy the data of the entry as stored in the ZIP file, i.e. compressed
+	 * when the entry is compressed.
+	 */
+	void copy(Entry entry, OutputStream out) throws IOException {
+		InputStream in = getRawInputStream(entry);
+		try {
+			byte[] buffer = new byte[IOConstants.PAGE_SIZE * 16];
+			int size;
+			while ((size = in.read(buffer)) > 0)
+				out.write(buffer, 0, size);
+		} finally {
+			in.close();
+		}
+	}
+
+	public void close() throws IOException {
+		data = null;
+		FileChannel c = channel;
+		channel = null;
+		if (c != null)
+			c.close();
+	}
+
+	private InputStream getRawInputStream(Entry entry) throws IOException {
+		check();
+		ByteBuffer header = region(entry.header, LOCHDR);
+		if (header.getInt(0) != LOCSIG)
+			throw new ZipException("Invalid local header " + entry);
+		long position = entry.header + LOCHDR + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+		return new RegionInputStream(position, entry.csize);
+	}
+
+	/**
+	 * Reads a region of the file, from the mapped buffer or through the
+	 * channel.
+	 */
+	private class RegionInputStream extends InputStream {
+		private long	position;
+		private long	remaining;
+
+		RegionInputStream(long position, long length) {
+			this.position = position;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0)
+				return -1;
+			int size = (int) Math.min(len, remaining);
+			check();
+			try {
+				region(position, size).get(b, off, size);
+			} catch (InternalError e) {
+				// the mapped file was truncated underneath us
+				throw new ZipException("File changed while reading " + file + ": " + e);
+			}
+			position += size;
+			remaining -= size;
+			return size;
+		}
+
+		@Override
+		public long skip(long n) {
+			long size = Math.max(0, Math.min(n, remaining));
+			position += size;
+			remaining -= size;
+			return size;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, remaining);
+		}
+	}
+
+	/**
+	 * The directory was read from the file as it was when it was opened, fail
+	 * when a file that is not immutable has been changed since.
+	 */
+	private void check() throws IOException {
+		if (!immutable && (file.length() != length || file.lastModified() != lastModified))
+			throw new ZipException("File changed since it was opened " + file);
+	}
+
+	/**
+	 * Answer a little endian buffer with the given region of the file.
+	 */
+	private ByteBuffer region(long position, int length) throws IOException {
+		if (position < 0 || length < 0)
+			throw new ZipException("Invalid region in " + file);
+
+		ByteBuffer data = this.data;
+		if (data != null) {
+			if (position + length > data.capacity())
+				throw new ZipException("Unexpected end of file " + file);
+			ByteBuffer region = data.duplicate();
+			region.position((int) position);
+			region.limit((int) position + length);
+			return region.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		FileChannel channel = this.channel;
+		if (channel == null)
+			throw new IOException("Closed " + file);
+
+		ByteBuffer region = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (region.hasRemaining()) {
+			if (channel.read(region, position + region.position()) < 0)
+				throw new ZipException("Unexpected end of file " + file);
+		}
+		region.flip();
+		return region;
+	}
+
+	private void read(long length) throws IOException {
+		int tail = (int) Math.min(length, ENDHDR + 0xFFFF);
+		if (tail < ENDHDR)
+			throw new ZipException("Not a ZIP file");
+		ByteBuffer buffer = region(length - tail, tail);
+
+		int end = -1;
+		for (int i = tail - ENDHDR; i >= 0; i--) {
+			if (buffer.getInt(i) == ENDSIG) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0)
+			throw new ZipException("No end of central directory found");
+
+		long endpos = length - tail + end;
+		long count = buffer.getShort(end + 10) & 0xFFFF;
+		long cdsize = buffer.getInt(end + 12) & ZIP64_MAGIC;
+		long cdoffset = buffer.getInt(end + 16) & ZIP64_MAGIC;
+
+		//
+		// Data can be prepended to a ZIP file, e.g. a launch script. The
+		// offsets are then relative to the start of the ZIP data.
+		//
+		long delta = endpos - cdsize - cdoffset;
+
+		long locator = endpos - 20;
+		if (locator >= 0 && (count == 0xFFFF || cdsize == ZIP64_MAGIC || cdoffset == ZIP64_MAGIC)) {
+			ByteBuffer loc = region(locator, 20);
+			if (loc.getInt(0) == ZIP64_LOCSIG) {
+				ByteBuffer end64 = region(loc.getLong(8), 56);
+				if (end64.getInt(0) != ZIP64_ENDSIG)
+					throw new ZipException("Invalid zip64 end of central directory");
+				count = end64.getLong(32);
+				cdsize = end64.getLong(40);
+				cdoffset = end64.getLong(48);
+				delta = 0;
+			}
+		}
+
+		if (cdsize > Integer.MAX_VALUE || delta < 0)
+			throw new ZipException("Invalid central directory");
+
+		ByteBuffer cd = region(cdoffset + delta, (int) cdsize);
+		int n = 0;
+		for (long i = 0; i < count; i++) {
+			if (cd.getInt(n) != CENSIG)
+				throw new ZipException("Invalid central directory header");
+			int flag = cd.getShort(n + 8) & 0xFFFF;
+			int method = cd.getShort(n + 10) & 0xFFFF;
+			long time = cd.getInt(n + 12) & ZIP64_MAGIC;
+			long crc = cd.getInt(n + 16) & ZIP64_MAGIC;
+			long csize = cd.getInt(n + 20) & ZIP64_MAGIC;
+			long size = cd.getInt(n + 24) & ZIP64_MAGIC;
+			int nlen = cd.getShort(n + 28) & 0xFFFF;
+			int elen = cd.getShort(n + 30) & 0xFFFF;
+			int clen = cd.getShort(n + 32) & 0xFFFF;
+			long header = cd.getInt(n + 42) & ZIP64_MAGIC;
+
+			byte[] bytes = new byte[nlen];
+			cd.position(n + CENHDR);
+			cd.get(bytes);
+			String name = new String(bytes, UTF8);
+
+			byte[] extra = null;
+			if (elen > 0) {
+				extra = new byte[elen];
+				cd.get(extra);
+			}
+
+			if (size == ZIP64_MAGIC || csize == ZIP64_MAGIC || header == ZIP64_MAGIC) {
+				int e = 0;
+				while (e + 4 <= elen) {
+					int tag = get16(extra, e);
+					int sz = get16(extra, e + 2);
+					if (tag == 0x0001) {
+						int off = e + 4;
+						if (size == ZIP64_MAGIC) {
+							size = get64(extra, off);
+							off += 8;
+						}
+						if (csize == ZIP64_MAGIC) {
+							csize = get64(extra, off);
+							off += 8;
+						}
+						if (header == ZIP64_MAGIC) {
+							header = get64(extra, off);
+						}
+						break;
+					}
+					e += 4 + sz;
+				}
+			}
+			//
+			// Reject entries outside the file here so that a malformed
+			// directory falls back to java.util.zip instead of failing on read
+			//
+			if (header + delta < 0 || header + delta + LOCHDR > length || csize < 0 || csize > length)
+				throw new ZipException("Invalid central directory entry " + name);
+
+			//
+			// Like java.util.zip, the last of duplicate entries wins
+			//
+			entries.put(name, new Entry(this, name, flag, method, time, crc, csize, size, header + delta, extra));
+			n += CENHDR + nlen + elen + clen;
+		}
+	}
+
+	/**
+	 * Convert the time of an entry like {@link ZipEntry#getTime()} does. An
+	 * extended timestamp or NTFS time in the extra field takes precedence over
+	 * the DOS time.
+	 */
+	static long getTime(long dostime, byte[] extra) {
+		if (extra != null) {
+			for (int e = 0; e + 4 <= extra.length;) {
+				int tag = get16(extra, e);
+				int sz = get16(extra, e + 2);
+				int off = e + 4;
+				if (off + sz > extra.length)
+					break;
+				if (tag == 0x5455 && sz >= 5 && (extra[off] & 1) != 0)
+					return ((int) get32(extra, off + 1)) * 1000L;
+				if (tag == 0x000A && sz >= 32 && get16(extra, off + 4) == 0x0001 && get16(extra, off + 6) >= 24) {
+					// 100 ns intervals since 1601-01-01
+					return get64(extra, off + 8) / 10000L - 11644473600000L;
+				}
+				e = off + sz;
+			}
+		}
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set((int) ((dostime >> 25) & 0x7F) + 1980, (int) ((dostime >> 21) & 0x0F) - 1,
+				(int) ((dostime >> 16) & 0x1F), (int) ((dostime >> 11) & 0x1F), (int) ((dostime >> 5) & 0x3F),
+				(int) ((dostime << 1) & 0x3E));
+		return calendar.getTimeInMillis();
+	}
+
+	static int get16(byte[] b, int off) {
+		return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+	}
+
+	static long get32(byte[] b, int off) {
+		return (get16(b, off) | ((long) get16(b, off + 2) << 16)) & 0xFFFFFFFFL;
+	}
+
+	static long get64(byte[] b, int off) {
+		return get32(b, off) | (get32(b, off + 4) << 32);
+	}
+}
@@ -96,4 +96,19 @@ public class ZipResource implements Resource {
 	public long size() {
 		return entry.getSize();
 	}
+
+	/**
+	 * Answer the CRC-32 of the content of a resource as recorded in the
+	 * directory of its zip file.
+	 *
+	 * @return the CRC or -1 if the resource is not a zip entry or its CRC is
+	 *         not known
+	 */
+	public static long getCrc(Resource resource) {
+		if (resource instanceof ZipDirectory.Entry)
+			return ((ZipDirectory.Entry) resource).crc;
+		if (resource instanceof ZipResource)
+			return ((ZipResource) resource).entry.getCrc();
+		return -1;
+	}
 }
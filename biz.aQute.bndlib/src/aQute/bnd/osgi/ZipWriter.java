@@ -0,0 +1,432 @@
+package aQute.bnd.osgi;
+
+import static aQute.bnd.osgi.ZipDirectory.CENSIG;
+import static aQute.bnd.osgi.ZipDirectory.ENDSIG;
+import static aQute.bnd.osgi.ZipDirectory.LOCSIG;
+import static aQute.bnd.osgi.ZipDirectory.UTF8;
+import static aQute.bnd.osgi.ZipDirectory.ZIP64_ENDSIG;
+import static aQute.bnd.osgi.ZipDirectory.ZIP64_LOCSIG;
+import static aQute.bnd.osgi.ZipDirectory.ZIP64_MAGIC;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import aQute.lib.io.IO;
+import aQute.lib.io.IOConstants;
+
+/**
+ * Writes a ZIP stream like {@link java.util.zip.ZipOutputStream} does. In
+ * addition, the compressed data of an entry in another ZIP file can be copied
+ * as is, together with its CRC and sizes. This saves inflating and deflating
+ * resources that come unchanged from an input JAR.
+ */
+class ZipWriter extends OutputStream {
+	private static final int	EXTSIG			= 0x08074b50;
+	private static final int	EFS				= 0x800;
+	private static final int	DATADESCRIPTOR	= 0x8;
+	private static final int	JAR_MAGIC		= 0xCAFE;
+
+	static class Entry {
+		byte[]	name;
+		byte[]	extra;
+		int		flag;
+		int		method;
+		long	time;
+		long	crc;
+		long	csize;
+		long	size;
+		long	offset;
+	}
+
+	private final OutputStream				out;
+	private final boolean					jar;
+	private final List<Entry>				entries		= new ArrayList<>();
+	private final Set<String>				names		= new HashSet<>();
+	private final Map<String,ZipDirectory>	sources		= new HashMap<>();
+	private final Deflater					deflater	= new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final CRC32						crc			= new CRC32();
+	private final byte[]					buffer		= new byte[IOConstants.PAGE_SIZE];
+	private final byte[]					one			= new byte[1];
+	private final Calendar					calendar	= Calendar.getInstance();
+	private Entry							current;
+	private long							written;
+	private long							count;
+	private boolean							finished;
+
+	/**
+	 * @param out the output stream
+	 * @param jar if true, the first entry is marked as a JAR like the
+	 *            {@link java.util.jar.JarOutputStream} does
+	 */
+	ZipWriter(OutputStream out, boolean jar) {
+		this.out = new BufferedOutputStream(out, IOConstants.PAGE_SIZE * 16);
+		this.jar = jar;
+	}
+
+	/**
+	 * Start a new entry, its data is written to this stream. Unless the method
+	 * of the entry is STORED, the data is deflated.
+	 */
+	void putNextEntry(ZipEntry ze) throws IOException {
+		Entry e = createEntry(ze);
+		if (e.method == ZipEntry.STORED) {
+			if (ze.getSize() < 0 || ze.getCrc() < 0)
+				throw new ZipException("STORED entry requires size and crc: " + ze.getName());
+			e.size = e.csize = ze.getSize();
+			e.crc = ze.getCrc();
+		} else
+			e.flag |= DATADESCRIPTOR;
+		writeLocalHeader(e);
+		current = e;
+	}
+
+	/**
+	 * Add an entry with the data of an entry in a ZIP file. If the source
+	 * entry is deflated, the compressed data is copied as is. Otherwise false is
+	 * returned and nothing is written, the caller must then write the data
+	 * through {@link #putNextEntry(ZipEntry)}.
+	 */
+	boolean putRawEntry(ZipEntry ze, ZipFile zip, ZipEntry source) throws IOException {
+		if (source.getMethod() != ZipEntry.DEFLATED || source.getCompressedSize() < 0
+				|| source.getCompressedSize() >= ZIP64_MAGIC || source.getSize() >= ZIP64_MAGIC)
+			return false;
+
+		ZipDirectory directory = getSource(zip);
+		if (directory == null)
+			return false;
+
+		ZipDirectory.Entry de = directory.getEntry(source.getName());
+		if (de == null || de.crc != source.getCrc() || de.csize != source.getCompressedSize()
+				|| de.size != source.getSize())
+			return false;
+
+		return putRawEntry(ze, de);
+	}
+
+	/**
+	 * Add an entry with the data of an entry in a ZIP directory. If the source
+	 * entry is deflated, the compressed data is copied as is. Otherwise false is
+	 * returned and nothing is written.
+	 */
+	boolean putRawEntry(ZipEntry ze, ZipDirectory.Entry source) throws IOException {
+		if (source.method != ZipEntry.DEFLATED || (source.flag & 1) != 0 || source.csize >= ZIP64_MAGIC
+				|| source.size >= ZIP64_MAGIC)
+			return false;
+
+		Entry e = createEntry(ze);
+		e.method = ZipEntry.DEFLATED;
+		e.crc = source.crc;
+		e.csize = source.csize;
+		e.size = source.size;
+		writeLocalHeader(e);
+		source.directory.copy(source, new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				one[0] = (byte) b;
+				write(one, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				ZipWriter.this.out.write(b, off, len);
+				written += len;
+			}
+		});
+		return true;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		one[0] = (byte) b;
+		write(one, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (current == null)
+			throw new ZipException("no current ZIP entry");
+		if (len == 0)
+			return;
+
+		if (current.method == ZipEntry.STORED) {
+			writeBytes(b, off, len);
+		} else {
+			deflater.setInput(b, off, len);
+			while (!deflater.needsInput())
+				deflate();
+		}
+		crc.update(b, off, len);
+		count += len;
+	}
+
+	void closeEntry() throws IOException {
+		Entry e = current;
+		if (e == null)
+			return;
+		current = null;
+
+		if (e.method == ZipEntry.STORED) {
+			if (e.size != count)
+				throw new ZipException("invalid entry size for " + new String(e.name, UTF8));
+			if (e.crc != crc.getValue())
+				throw new ZipException("invalid entry crc-32 for " + new String(e.name, UTF8));
+		} else {
+			deflater.finish();
+			while (!deflater.finished())
+				deflate();
+			e.size = deflater.getBytesRead();
+			e.csize = deflater.getBytesWritten();
+			e.crc = crc.getValue();
+			writeInt(EXTSIG);
+			writeInt(e.crc);
+			if (e.size >= ZIP64_MAGIC || e.csize >= ZIP64_MAGIC) {
+				writeLong(e.csize);
+				writeLong(e.size);
+			} else {
+				writeInt(e.csize);
+				writeInt(e.size);
+			}
+		}
+		deflater.reset();
+		crc.reset();
+		count = 0;
+	}
+
+	/**
+	 * Write the central directory. The underlying stream is flushed but not
+	 * closed.
+	 */
+	void finish() throws IOException {
+		if (finished)
+			return;
+		closeEntry();
+		finished = true;
+
+		long cdoffset = written;
+		for (Entry e : entries)
+			writeCentralHeader(e);
+		long cdsize = written - cdoffset;
+		long count = entries.size();
+
+		if (count >= 0xFFFF || cdoffset >= ZIP64_MAGIC || cdsize >= ZIP64_MAGIC) {
+			long end64 = written;
+			writeInt(ZIP64_ENDSIG);
+			writeLong(44);
+			writeShort(45);
+			writeShort(45);
+			writeInt(0);
+			writeInt(0);
+			writeLong(count);
+			writeLong(count);
+			writeLong(cdsize);
+			writeLong(cdoffset);
+
+			writeInt(ZIP64_LOCSIG);
+			writeInt(0);
+			writeLong(end64);
+			writeInt(1);
+		}
+		writeInt(ENDSIG);
+		writeShort(0);
+		writeShort(0);
+		writeShort((int) Math.min(count, 0xFFFF));
+		writeShort((int) Math.min(count, 0xFFFF));
+		writeInt(Math.min(cdsize, ZIP64_MAGIC));
+		writeInt(Math.min(cdoffset, ZIP64_MAGIC));
+		writeShort(0);
+		out.flush();
+	}
+
+	/**
+	 * Close the ZIP files that data was copied from and release the deflater.
+	 * The underlying stream is not closed, the writer can no longer be used.
+	 */
+	void release() {
+		for (ZipDirectory directory : sources.values()) {
+			IO.close(directory);
+		}
+		sources.clear();
+		deflater.end();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			release();
+			out.close();
+		}
+	}
+
+	private ZipDirectory getSource(ZipFile zip) {
+		String path = zip.getName();
+		if (sources.containsKey(path))
+			return sources.get(path);
+
+		ZipDirectory directory = null;
+		try {
+			directory = new ZipDirectory(new File(path), false);
+		} catch (IOException e) {
+			// ignore, data will be inflated and deflated
+		}
+		sources.put(path, directory);
+		return directory;
+	}
+
+	private Entry createEntry(ZipEntry ze) throws IOException {
+		if (finished)
+			throw new ZipException("ZIP stream already finished");
+		closeEntry();
+
+		String name = ze.getName();
+		if (!names.add(name))
+			throw new ZipException("duplicate entry: " + name);
+
+		Entry e = new Entry();
+		e.name = name.getBytes(UTF8);
+		e.method = ze.getMethod() == -1 ? ZipEntry.DEFLATED : ze.getMethod();
+		e.flag = EFS;
+		long time = ze.getTime();
+		e.time = dosTime(time == -1 ? System.currentTimeMillis() : time);
+
+		byte[] extra = ze.getExtra();
+		if (jar && entries.isEmpty() && !hasJarMagic(extra)) {
+			byte[] magic = new byte[(extra == null ? 0 : extra.length) + 4];
+			magic[0] = (byte) JAR_MAGIC;
+			magic[1] = (byte) (JAR_MAGIC >> 8);
+			if (extra != null)
+				System.arraycopy(extra, 0, magic, 4, extra.length);
+			extra = magic;
+		}
+		e.extra = extra == null ? new byte[0] : extra;
+		if (e.name.length > 0xFFFF || e.extra.length > 0xFFFF)
+			throw new ZipException("name or extra field too long: " + name);
+
+		e.offset = written;
+		entries.add(e);
+		return e;
+	}
+
+	private static boolean hasJarMagic(byte[] extra) {
+		if (extra == null)
+			return false;
+		for (int i = 0; i + 4 <= extra.length; i += 4 + ZipDirectory.get16(extra, i + 2)) {
+			if (ZipDirectory.get16(extra, i) == JAR_MAGIC)
+				return true;
+		}
+		return false;
+	}
+
+	private void writeLocalHeader(Entry e) throws IOException {
+		boolean descriptor = (e.flag & DATADESCRIPTOR) != 0;
+		writeInt(LOCSIG);
+		writeShort(e.method == ZipEntry.STORED ? 10 : 20);
+		writeShort(e.flag);
+		writeShort(e.method);
+		writeInt(e.time);
+		writeInt(descriptor ? 0 : e.crc);
+		writeInt(descriptor ? 0 : e.csize);
+		writeInt(descriptor ? 0 : e.size);
+		writeShort(e.name.length);
+		writeShort(e.extra.length);
+		writeBytes(e.name, 0, e.name.length);
+		writeBytes(e.extra, 0, e.extra.length);
+	}
+
+	private void writeCentralHeader(Entry e) throws IOException {
+		int zip64 = 0;
+		if (e.size >= ZIP64_MAGIC)
+			zip64 += 8;
+		if (e.csize >= ZIP64_MAGIC)
+			zip64 += 8;
+		if (e.offset >= ZIP64_MAGIC)
+			zip64 += 8;
+
+		int version = zip64 != 0 ? 45 : e.method == ZipEntry.STORED ? 10 : 20;
+		writeInt(CENSIG);
+		writeShort(version);
+		writeShort(version);
+		writeShort(e.flag);
+		writeShort(e.method);
+		writeInt(e.time);
+		writeInt(e.crc);
+		writeInt(Math.min(e.csize, ZIP64_MAGIC));
+		writeInt(Math.min(e.size, ZIP64_MAGIC));
+		writeShort(e.name.length);
+		writeShort(e.extra.length + (zip64 == 0 ? 0 : zip64 + 4));
+		writeShort(0);
+		writeShort(0);
+		writeShort(0);
+		writeInt(0);
+		writeInt(Math.min(e.offset, ZIP64_MAGIC));
+		writeBytes(e.name, 0, e.name.length);
+		if (zip64 != 0) {
+			writeShort(0x0001);
+			writeShort(zip64);
+			if (e.size >= ZIP64_MAGIC)
+				writeLong(e.size);
+			if (e.csize >= ZIP64_MAGIC)
+				writeLong(e.csize);
+			if (e.offset >= ZIP64_MAGIC)
+				writeLong(e.offset);
+		}
+		writeBytes(e.extra, 0, e.extra.length);
+	}
+
+	private void deflate() throws IOException {
+		int size = deflater.deflate(buffer, 0, buffer.length);
+		if (size > 0)
+			writeBytes(buffer, 0, size);
+	}
+
+	private long dosTime(long time) {
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980)
+			return (1 << 21) | (1 << 16);
+		return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+				| calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+				| calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	private void writeShort(int v) throws IOException {
+		out.write(v & 0xFF);
+		out.write((v >>> 8) & 0xFF);
+		written += 2;
+	}
+
+	private void writeInt(long v) throws IOException {
+		writeShort((int) (v & 0xFFFF));
+		writeShort((int) ((v >>> 16) & 0xFFFF));
+	}
+
+	private void writeLong(long v) throws IOException {
+		writeInt(v & 0xFFFFFFFFL);
+		writeInt(v >>> 32);
+	}
+
+	private void writeBytes(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		written += len;
+	}
+}
@@ -0,0 +1,136 @@
+package aQute.bnd.osgi.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Constants;
+import org.osgi.namespace.service.ServiceNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.osgi.resource.ResourceUtils;
+
+/**
+ * An index of the capabilities of a set of resources. Capabilities are
+ * bucketed by namespace and by the value of the primary attribute of their
+ * namespace, for most namespaces the attribute with the name of the namespace
+ * and for the service namespace the objectClass. When the filter of a
+ * requirement demands a specific value for the primary attribute only the
+ * capabilities in that bucket need to be matched against the full filter.
+ * <p>
+ * The order of the returned capabilities is the order in which they were
+ * added. The index is not synchronized, it can be shared between threads
+ * after it has been filled.
+ */
+class CapabilityIndex {
+
+	private final Map<String,Bucket> namespaces = new HashMap<>();
+
+	static class Bucket {
+		final String						primary;
+		final List<Capability>				all				= new ArrayList<>();
+		final Map<String,List<Capability>>	byPrimary		= new HashMap<>();
+		boolean								unindexable;
+
+		Bucket(String namespace) {
+			this.primary = ServiceNamespace.SERVICE_NAMESPACE.equals(namespace) ? Constants.OBJECTCLASS : namespace;
+		}
+
+		void add(Capability capability) {
+			all.add(capability);
+			Object value = capability.getAttributes().get(primary);
+			if (value == null)
+				return;
+
+			if (value instanceof String) {
+				index((String) value, capability);
+			} else if (value instanceof Collection) {
+				for (Object v : (Collection< ? >) value) {
+					if (v instanceof String)
+						index((String) v, capability);
+					else
+						unindexable = true;
+				}
+			} else
+				unindexable = true;
+		}
+
+		private void index(String value, Capability capability) {
+			List<Capability> list = byPrimary.get(value);
+			if (list == null) {
+				list = new ArrayList<>(1);
+				byPrimary.put(value, list);
+			} else if (list.get(list.size() - 1) == capability)
+				return;
+			list.add(capability);
+		}
+
+		/**
+		 * Answer the capabilities that can possibly match the given value of
+		 * the primary attribute. If some capabilities have a primary attribute
+		 * we cannot index, e.g. a Version, we have to look at all.
+		 */
+		List<Capability> candidates(String value) {
+			if (value == null || unindexable)
+				return all;
+
+			List<Capability> list = byPrimary.get(value);
+			if (list == null)
+				return Collections.emptyList();
+			return list;
+		}
+	}
+
+	void add(Resource resource) {
+		for (Capability capability : resource.getCapabilities(null)) {
+			String namespace = capability.getNamespace();
+			Bucket bucket = namespaces.get(namespace);
+			if (bucket == null) {
+				bucket = new Bucket(namespace);
+				namespaces.put(namespace, bucket);
+			}
+			bucket.add(capability);
+		}
+	}
+
+	void clear() {
+		namespaces.clear();
+	}
+
+	List<Capability> findProvider(Requirement requirement) {
+		List<Capability> result = new ArrayList<Capability>();
+		Bucket bucket = namespaces.get(requirement.getNamespace());
+		if (bucket == null)
+			return result;
+
+		String filter = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+		String value = filter == null ? null : getEqualityTerm(filter, bucket.primary);
+
+		for (Capability capability : bucket.candidates(value)) {
+			if (ResourceUtils.matches(requirement, capability)) {
+				result.add(capability);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find a value the given attribute must be equal to for the filter to
+	 * match. This is only the case for an equality at the top of the filter or
+	 * in a top level and. The filter is the shared compiled filter that is
+	 * also used to match the candidates, so it is only parsed once.
+	 */
+	static String getEqualityTerm(String filter, String key) {
+		try {
+			return ResourceUtils.getFilter(filter).getEquality(key);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+}
@@ -12,10 +12,13 @@ import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 
 import aQute.bnd.osgi.resource.ResourceUtils;
+import aQute.bnd.service.repository.RepositoryDigest;
 import aQute.lib.collections.MultiMap;
 
-public class ResourcesRepository extends BaseRepository {
-	final Set<Resource> resources = new LinkedHashSet<>();
+public class ResourcesRepository extends BaseRepository implements RepositoryDigest {
+	final Set<Resource>				resources	= new LinkedHashSet<>();
+	private final CapabilityIndex	index		= new CapabilityIndex();
+	private volatile byte[]			digest;
 
 	public ResourcesRepository(Resource resource) {
 		add(resource);
@@ -43,32 +46,41 @@ public class ResourcesRepository extends BaseRepository {
 	}
 
 	public List<Capability> findProvider(Requirement requirement) {
-		List<Capability> result = new ArrayList<Capability>();
-		String namespace = requirement.getNamespace();
-		for (Resource resource : resources) {
-			for (Capability capability : resource.getCapabilities(namespace)) {
-				if (ResourceUtils.matches(requirement, capability)) {
-					result.add(capability);
-				}
-			}
-		}
-		return result;
+		return index.findProvider(requirement);
 	}
 
 	public void add(Resource resource) {
-		this.resources.add(resource);
+		if (this.resources.add(resource)) {
+			index.add(resource);
+			digest = null;
+		}
 	}
 
 	public void addAll(Collection< ? extends Resource> resources) {
-		this.resources.addAll(resources);
+		for (Resource resource : resources)
+			add(resource);
 	}
 
 	protected void set(Collection< ? extends Resource> resources) {
 		this.resources.clear();
-		this.resources.addAll(resources);
+		this.index.clear();
+		this.digest = null;
+		addAll(resources);
 	}
 
 	public List<Resource> getResources() {
 		return new ArrayList<>(resources);
 	}
+
+	/**
+	 * The digest of the content of the resources, calculated when the
+	 * resources changed.
+	 */
+	@Override
+	public byte[] getDigest() {
+		byte[] digest = this.digest;
+		if (digest == null)
+			this.digest = digest = ResourceUtils.getDigest(resources);
+		return digest;
+	}
 }
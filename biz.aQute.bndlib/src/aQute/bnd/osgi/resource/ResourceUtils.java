@@ -8,6 +8,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -17,6 +18,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.namespace.BundleNamespace;
 import org.osgi.framework.namespace.ExecutionEnvironmentNamespace;
@@ -40,10 +43,15 @@ import aQute.bnd.osgi.Processor;
 import aQute.bnd.version.Version;
 import aQute.lib.converter.Converter;
 import aQute.lib.converter.Converter.Hook;
+import aQute.lib.exceptions.Exceptions;
 import aQute.lib.filter.Filter;
 import aQute.lib.strings.Strings;
+import aQute.libg.cryptography.Digester;
+import aQute.libg.cryptography.SHA1;
 
 public class ResourceUtils {
+	private static final int							FILTER_CACHE_SIZE			= 10000;
+	private static final ConcurrentMap<String,Filter>	filterCache					= new ConcurrentHashMap<String,Filter>();
 
 	/**
 	 * A comparator that compares the identity versions
@@ -223,6 +231,36 @@ public class ResourceUtils {
 		return v.toString();
 	}
 
+	/**
+	 * Return a SHA-1 for a collection of resources. It is the SHA-1 of the
+	 * sorted content hashes and urls of the resources, a resource without a
+	 * content capability contributes its identity and version instead.
+	 */
+	public static byte[] getDigest(Collection< ? extends Resource> resources) {
+		TreeSet<String> contents = new TreeSet<>();
+		for (Resource resource : resources) {
+			ContentCapability content = getContentCapability(resource);
+			if (content != null && content.osgi_content() != null) {
+				contents.add(content.osgi_content() + ";"
+						+ content.getAttributes().get(ContentNamespace.CAPABILITY_URL_ATTRIBUTE));
+				continue;
+			}
+			IdentityCapability identity = getIdentityCapability(resource);
+			contents.add(identity == null ? resource.toString() : identity.osgi_identity() + ";" + identity.version());
+		}
+
+		try {
+			Digester<SHA1> digester = SHA1.getDigester();
+			for (String content : contents) {
+				digester.write(content.getBytes(StandardCharsets.UTF_8));
+				digester.write('\n');
+			}
+			return digester.digest().digest();
+		} catch (Exception e) {
+			throw Exceptions.duck(e);
+		}
+	}
+
 	public static BundleCap getBundleCapability(Resource resource) {
 		List<Capability> caps = resource.getCapabilities(BundleNamespace.BUNDLE_NAMESPACE);
 		if (caps == null || caps.isEmpty())
@@ -436,13 +474,35 @@ public class ResourceUtils {
 			return true;
 
 		try {
-			Filter f = new Filter(filter);
+			Filter f = getFilter(filter);
 			return f.matchMap(c.getAttributes());
 		} catch (Exception e) {
 			return false;
 		}
 	}
 
+	/**
+	 * Answer a compiled filter for the given filter string. Filters are shared
+	 * between all callers since matching requirements against capabilities is
+	 * done very often during a resolve. The cache is bounded, when it is full
+	 * it is cleared.
+	 * 
+	 * @param filter the filter string
+	 * @return a (shared) filter
+	 */
+	public static Filter getFilter(String filter) {
+		Filter f = filterCache.get(filter);
+		if (f == null) {
+			if (filterCache.size() >= FILTER_CACHE_SIZE)
+				filterCache.clear();
+			f = new Filter(filter);
+			Filter previous = filterCache.putIfAbsent(filter, f);
+			if (previous != null)
+				f = previous;
+		}
+		return f;
+	}
+
 	public static String getEffective(Map<String,String> directives) {
 		String effective = directives.get(Namespace.CAPABILITY_EFFECTIVE_DIRECTIVE);
 		if (effective == null)
@@ -32,6 +32,7 @@ import java.security.PermissionCollection;
 import java.security.Policy;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -40,11 +41,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.SortedMap;
 import java.util.StringTokenizer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.Vector;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.Manifest;
@@ -62,6 +68,7 @@ import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.launch.Framework;
 import org.osgi.framework.launch.FrameworkFactory;
+import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.FrameworkWiring;
 import org.osgi.service.permissionadmin.PermissionInfo;
@@ -70,6 +77,7 @@ import aQute.launcher.agent.LauncherAgent;
 import aQute.launcher.constants.LauncherConstants;
 import aQute.launcher.minifw.MiniFramework;
 import aQute.lib.strings.Strings;
+import aQute.libg.cryptography.SHA1;
 
 /**
  * This is the primary bnd launcher. It implements a launcher that runs on Java
@@ -80,10 +88,12 @@ public class Launcher implements ServiceListener {
 	// Use our own constant for this rather than depend on OSGi core 4.3
 	private static final String FRAMEWORK_SYSTEM_CAPABILITIES_EXTRA = "org.osgi.framework.system.capabilities.extra";
 
+	// Interval for checking the properties file for changes
+	private static final long	WATCH_INTERVAL	= 100;
+
 	private PrintStream					out;
 	LauncherConstants					parms;
 	Framework							systemBundle;
-	volatile boolean					inrefresh;
 	private final Properties			properties;
 	private boolean						security;
 	private SimplePermissionPolicy		policy;
@@ -93,8 +103,13 @@ public class Launcher implements ServiceListener {
 	private final Map<File,Bundle>		installedBundles	= new LinkedHashMap<File,Bundle>();
 	private File						home				= new File(System.getProperty("user.home"));
 	private File						bnd					= new File(home, "bnd");
+	private final Map<File,String>		digests				= new HashMap<File,String>();
 	private List<Bundle>				wantsToBeStarted	= new ArrayList<Bundle>();
 	AtomicBoolean						active				= new AtomicBoolean();
+	private final CountDownLatch		activated			= new CountDownLatch(1);
+	private final Object				updateLock			= new Object();
+	private final List<Timing>			timings				= new Vector<Timing>();
+	private ExecutorService				executor;
 
 	private AtomicReference<DatagramSocket> commsSocket = new AtomicReference<DatagramSocket>();
 
@@ -219,26 +234,65 @@ public class Launcher implements ServiceListener {
 				parms.timeout);
 
 		if (propertiesFile != null && parms.embedded == false) {
-			TimerTask watchdog = new TimerTask() {
-				long begin = propertiesFile.lastModified();
-
+			Thread watcher = new Thread("Launcher properties watcher") {
+				@Override
 				public void run() {
-					long now = propertiesFile.lastModified();
-					if (begin < now) {
-						try {
-							FileInputStream in = new FileInputStream(propertiesFile);
-							Properties properties = new Properties();
-							load(in, properties);
-							parms = new LauncherConstants(properties);
-							update(now);
-						} catch (Exception e) {
-							error("Error in updating the framework from the properties: %s", e);
-						}
-						begin = now;
-					}
+					watch(propertiesFile);
 				}
 			};
-			new Timer(true).scheduleAtFixedRate(watchdog, 5000, 1000);
+			watcher.setDaemon(true);
+			watcher.start();
+		}
+	}
+
+	/**
+	 * Update the framework when the content of the properties file changes.
+	 * Only the modification time and length of the file are checked until
+	 * they change, then the digest of the file tells if the content really
+	 * changed.
+	 */
+	void watch(File propertiesFile) {
+		long lastModified = propertiesFile.lastModified();
+		long length = propertiesFile.length();
+		String digest = digest(propertiesFile);
+		try {
+			activated.await();
+			while (true) {
+				Thread.sleep(WATCH_INTERVAL);
+
+				long now = propertiesFile.lastModified();
+				long size = propertiesFile.length();
+				if (now == lastModified && size == length)
+					continue;
+
+				lastModified = now;
+				length = size;
+				String current = digest(propertiesFile);
+				if (current != null && current.equals(digest))
+					continue;
+
+				digest = current;
+				try {
+					FileInputStream in = new FileInputStream(propertiesFile);
+					Properties properties = new Properties();
+					load(in, properties);
+					parms = new LauncherConstants(properties);
+					update(now);
+				} catch (Exception e) {
+					error("Error in updating the framework from the properties: %s", e);
+				}
+			}
+		} catch (InterruptedException e) {
+			trace("stopped watching %s", propertiesFile);
+		}
+	}
+
+	private String digest(File file) {
+		try {
+			return SHA1.digest(file).asHex();
+		} catch (Exception e) {
+			trace("cannot digest %s: %s", file, e);
+			return null;
 		}
 	}
 
@@ -380,6 +434,7 @@ public class Launcher implements ServiceListener {
 		}
 
 		update(System.currentTimeMillis() + 100);
+		activated.countDown();
 
 		if (parms.trace) {
 			report(out);
@@ -416,11 +471,35 @@ public class Launcher implements ServiceListener {
 	/**
 	 * Ensure that all the bundles in the parameters are actually started. We
 	 * can start in embedded mode (bundles are inside our main jar) or in file
-	 * system mode.
+	 * system mode. Updates from the properties watcher and from activation are
+	 * serialized.
 	 * 
-	 * @param begin
+	 * @param before
 	 */
 	void update(long before) throws Exception {
+		synchronized (updateLock) {
+			int threads = parms.parallel < 0 ? Runtime.getRuntime().availableProcessors() : parms.parallel;
+			if (threads > 1 && !parms.embedded)
+				executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Launcher install/start");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			try {
+				update0(before);
+			} finally {
+				if (executor != null) {
+					executor.shutdown();
+					executor = null;
+				}
+				report();
+			}
+		}
+	}
+
+	private void update0(long before) throws Exception {
 
 		trace("Updating framework with %s", parms.runbundles);
 		List<Bundle> tobestarted = new ArrayList<Bundle>();
@@ -431,15 +510,15 @@ public class Launcher implements ServiceListener {
 
 		FrameworkWiring fwkWiring = systemBundle.adapt(FrameworkWiring.class);
 		if (fwkWiring != null) {
-			inrefresh = true;
-			fwkWiring.refreshBundles(null);
+			final CountDownLatch refreshed = new CountDownLatch(1);
+			fwkWiring.refreshBundles(null, new FrameworkListener() {
+				public void frameworkEvent(FrameworkEvent event) {
+					trace("refresh ended %s", event);
+					refreshed.countDown();
+				}
+			});
 			trace("Waiting for refresh to finish");
-
-			// Will be reset by the Framework listener we added
-			// when we created the framework.
-			while (inrefresh)
-				Thread.sleep(100);
-
+			refreshed.await();
 		} else
 			trace("cannot refresh the bundles because there is no FrameworkWiring");
 
@@ -476,24 +555,143 @@ public class Launcher implements ServiceListener {
 		// Add all bundles that we've tried to start but failed
 		all.addAll(wantsToBeStarted);
 
+		if (executor == null) {
+			for (Bundle b : tobestarted)
+				start(b);
+		} else
+			startByLevel(tobestarted);
+	}
+
+	/**
+	 * Start the bundles per start level. In a level the bundles with a lazy
+	 * activation policy are started first since this only marks them, then
+	 * the other bundles are started concurrently. A level is started
+	 * completely before the next level.
+	 */
+	private void startByLevel(List<Bundle> tobestarted) throws InterruptedException {
+		SortedMap<Integer,List<Bundle>> levels = new TreeMap<Integer,List<Bundle>>();
 		for (Bundle b : tobestarted) {
-			try {
-				trace("starting %s", b.getSymbolicName());
-				if (!isFragment(b))
-					b.start(Bundle.START_ACTIVATION_POLICY);
-				trace("started  %s", b.getSymbolicName());
-			} catch (BundleException e) {
+			if (isFragment(b))
+				continue;
+
+			BundleStartLevel bsl = b.adapt(BundleStartLevel.class);
+			int level = bsl == null ? 0 : bsl.getStartLevel();
+			List<Bundle> bundles = levels.get(level);
+			if (bundles == null)
+				levels.put(level, bundles = new ArrayList<Bundle>());
+			bundles.add(b);
+		}
+
+		for (Entry<Integer,List<Bundle>> level : levels.entrySet()) {
+			trace("starting level %s: %s", level.getKey(), level.getValue());
+			List<Runnable> starts = new ArrayList<Runnable>();
+			for (final Bundle b : level.getValue()) {
+				if (isLazy(b))
+					start(b);
+				else
+					starts.add(new Runnable() {
+						public void run() {
+							start(b);
+						}
+					});
+			}
+			execute(starts);
+		}
+	}
+
+	private void start(Bundle b) {
+		try {
+			trace("starting %s", b.getSymbolicName());
+			if (!isFragment(b)) {
+				long begin = System.nanoTime();
+				b.start(Bundle.START_ACTIVATION_POLICY);
+				timings.add(new Timing("start", b, begin));
+			}
+			trace("started  %s", b.getSymbolicName());
+		} catch (BundleException e) {
+			synchronized (wantsToBeStarted) {
 				wantsToBeStarted.add(b);
-				error("Failed to start bundle %s-%s, exception %s", b.getSymbolicName(), b.getVersion(), e);
 			}
+			error("Failed to start bundle %s-%s, exception %s", b.getSymbolicName(), b.getVersion(), e);
+		}
+	}
+
+	private boolean isLazy(Bundle b) {
+		String policy = b.getHeaders().get(Constants.BUNDLE_ACTIVATIONPOLICY);
+		return policy != null && policy.trim().startsWith(Constants.ACTIVATION_LAZY);
+	}
+
+	/**
+	 * Run the tasks. In parallel mode the tasks run concurrently and this
+	 * method returns when they are all done.
+	 */
+	private void execute(List<Runnable> tasks) throws InterruptedException {
+		if (executor == null || tasks.size() < 2) {
+			for (Runnable task : tasks)
+				task.run();
+			return;
+		}
+
+		final CountDownLatch done = new CountDownLatch(tasks.size());
+		for (final Runnable task : tasks) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		done.await();
+	}
+
+	/**
+	 * The time it took to install or start a bundle
+	 */
+	static class Timing implements Comparable<Timing> {
+		final String	action;
+		final Bundle	bundle;
+		final long		millis;
+
+		Timing(String action, Bundle bundle, long begin) {
+			this.action = action;
+			this.bundle = bundle;
+			this.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+		}
+
+		public int compareTo(Timing o) {
+			return millis < o.millis ? 1 : millis > o.millis ? -1 : 0;
 		}
 
+		@Override
+		public String toString() {
+			return action + " " + bundle.getSymbolicName() + "-" + bundle.getVersion() + " " + millis + " ms";
+		}
+	}
+
+	/**
+	 * Trace the install and start times of the bundles of the last update,
+	 * the slowest first.
+	 */
+	private void report() {
+		List<Timing> sorted = new ArrayList<Timing>(timings);
+		timings.clear();
+		if (!parms.trace || sorted.isEmpty())
+			return;
+
+		for (Timing timing : sorted)
+			trace("%s", timing);
+
+		Collections.sort(sorted);
+		trace("slowest: %s", sorted.subList(0, Math.min(10, sorted.size())));
 	}
 
 	/**
 	 * @param tobestarted
 	 */
-	void synchronizeFiles(List<Bundle> tobestarted, long before) {
+	void synchronizeFiles(List<Bundle> tobestarted, long before) throws InterruptedException {
 		// Turn the bundle location paths into files
 		List<File> desired = new ArrayList<File>();
 
@@ -522,22 +720,53 @@ public class Launcher implements ServiceListener {
 				trace("uninstalling %s", f);
 				installedBundles.get(f).uninstall();
 				installedBundles.remove(f);
+				digests.remove(f);
 			} catch (Exception e) {
 				error("Failed to uninstall bundle %s, exception %s", f, e);
 			}
 
-		for (File f : tobeinstalled)
-			try {
-				trace("installing %s", f);
-				if (f.exists()) {
-					Bundle b = install(f);
-					installedBundles.put(f, b);
-					tobestarted.add(b);
-				} else
-					error("should installing %s but file does not exist", f);
-			} catch (Exception e) {
-				error("Failed to uninstall bundle %s, exception %s", f, e);
+		final List<File> installable = new ArrayList<File>();
+		for (File f : tobeinstalled) {
+			if (f.exists())
+				installable.add(f);
+			else
+				error("should installing %s but file does not exist", f);
+		}
+
+		//
+		// The bundles are installed in parallel mode concurrently, the
+		// results are kept in the order of the run bundles
+		//
+		final Bundle[] bundles = new Bundle[installable.size()];
+		final String[] sums = new String[installable.size()];
+		List<Runnable> installs = new ArrayList<Runnable>();
+		for (int i = 0; i < bundles.length; i++) {
+			final int n = i;
+			installs.add(new Runnable() {
+				public void run() {
+					File f = installable.get(n);
+					try {
+						trace("installing %s", f);
+						long begin = System.nanoTime();
+						bundles[n] = install(f);
+						timings.add(new Timing("install", bundles[n], begin));
+						sums[n] = digest(f);
+					} catch (Exception e) {
+						error("Failed to install bundle %s, exception %s", f, e);
+					}
+				}
+			});
+		}
+		execute(installs);
+
+		for (int i = 0; i < bundles.length; i++) {
+			if (bundles[i] != null) {
+				File f = installable.get(i);
+				installedBundles.put(f, bundles[i]);
+				digests.put(f, sums[i]);
+				tobestarted.add(bundles[i]);
 			}
+		}
 
 		for (File f : tobeupdated)
 			try {
@@ -552,12 +781,22 @@ public class Launcher implements ServiceListener {
 					//
 					if (f.lastModified() <= before) {
 						if (b.getLastModified() < f.lastModified()) {
-							trace("updating %s", f);
-							if (b.getState() == Bundle.ACTIVE) {
-								tobestarted.add(b);
-								b.stop();
+							//
+							// A bundle that was written again with the same
+							// content is not updated
+							//
+							String digest = digest(f);
+							if (digest != null && digest.equals(digests.get(f))) {
+								trace("bundle is still current according to its digest %s", f);
+							} else {
+								trace("updating %s", f);
+								if (b.getState() == Bundle.ACTIVE) {
+									tobestarted.add(b);
+									b.stop();
+								}
+								b.update();
+								digests.put(f, digest);
 							}
-							b.update();
 						} else
 							trace("bundle is still current according to timestamp %s", f);
 					}
@@ -872,11 +1111,7 @@ public class Launcher implements ServiceListener {
 					switch (event.getType()) {
 						case FrameworkEvent.ERROR :
 						case FrameworkEvent.WAIT_TIMEDOUT :
-							trace("Refresh will end due to error or timeout %s", event.toString());
-
-						case FrameworkEvent.PACKAGES_REFRESHED :
-							inrefresh = false;
-							trace("refresh ended");
+							trace("framework error or timeout %s", event.toString());
 							break;
 					}
 				}
@@ -46,6 +46,7 @@ public class LauncherConstants {
 	final static String			LAUNCH_NAME					= "launch.name";
 	final static String			LAUNCH_NOREFERENCES			= "launch.noreferences";
 	final static String			LAUNCH_NOTIFICATION_PORT	= "launch.notificationPort";
+	final static String			LAUNCH_PARALLEL				= "launch.parallel";
 	/**
 	 * The command line arguments of the launcher. Launcher are not supposed to
 	 * eat any arguments, they should use -D VM arguments so that applications
@@ -67,6 +68,11 @@ public class LauncherConstants {
 	public boolean				embedded					= false;
 	public String				name;
 	public int					notificationPort			= -1;
+	/**
+	 * The number of threads used to install and start the bundles, 0 installs
+	 * and starts them one by one, -1 uses a thread per processor.
+	 */
+	public int					parallel					= 0;
 
 	/**
 	 * Translate a constants to properties.
@@ -91,6 +97,7 @@ public class LauncherConstants {
 			p.setProperty(LAUNCH_NAME, name);
 
 		p.setProperty(LAUNCH_NOTIFICATION_PORT, String.valueOf(notificationPort));
+		p.setProperty(LAUNCH_PARALLEL, String.valueOf(parallel));
 
 		for (Map.Entry<String,String> entry : runProperties.entrySet()) {
 			if (entry.getValue() == null) {
@@ -131,6 +138,7 @@ public class LauncherConstants {
 		embedded = s != null && Boolean.parseBoolean(s);
 		name = p.getProperty(LAUNCH_NAME);
 		notificationPort = Integer.valueOf(p.getProperty(LAUNCH_NOTIFICATION_PORT, "-1"));
+		parallel = Integer.valueOf(p.getProperty(LAUNCH_PARALLEL, "0"));
 		@SuppressWarnings({
 				"unchecked", "rawtypes"
 		})
@@ -156,6 +156,7 @@ public class ProjectLauncherImpl extends ProjectLauncher {
 		lc.services = super.getRunFramework() == SERVICES ? true : false;
 		lc.activators.addAll(getActivators());
 		lc.name = getProject().getName();
+		lc.parallel = getParallel();
 
 		if (!exported && !getNotificationListeners().isEmpty()) {
 			if (listenerComms == null) {
@@ -208,6 +209,21 @@ public class ProjectLauncherImpl extends ProjectLauncher {
 
 	}
 
+	/**
+	 * The -runparallel instruction can be a number of threads or true to use
+	 * a thread per processor.
+	 */
+	private int getParallel() {
+		String parallel = project.getProperty(Constants.RUNPARALLEL);
+		if (parallel == null)
+			return 0;
+		try {
+			return Math.max(Integer.parseInt(parallel.trim()), 0);
+		} catch (NumberFormatException e) {
+			return Processor.isTrue(parallel) ? -1 : 0;
+		}
+	}
+
 	/**
 	 * Create a standalone executable. All entries on the runpath are rolled out
 	 * into the JAR and the runbundles are copied to a directory in the jar. The
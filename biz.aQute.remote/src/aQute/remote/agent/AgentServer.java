@@ -98,7 +98,9 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 	private Supervisor										remote;
 	private BundleContext									context;
 	private final ShaCache									cache;
+	private final File										chunks;
 	private ShaSource										source;
+	private ShaSource										chunkSource;
 	private final Map<String,String>						installed			= new HashMap<String,String>();
 	volatile boolean										quit;
 	private static Map<String,AgentDispatcher>				instances			= new HashMap<String,AgentDispatcher>();
@@ -120,6 +122,7 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 			this.context.addFrameworkListener(this);
 
 		this.cache = new ShaCache(cache);
+		this.chunks = new File(cache, "chunks");
 	}
 
 	/**
@@ -136,7 +139,7 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 
 	@Override
 	public BundleDTO install(String location, String sha) throws Exception {
-		InputStream in = cache.getStream(sha, source);
+		InputStream in = cache.getStream(sha, getSources());
 		if (in == null)
 			return null;
 
@@ -264,7 +267,7 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 			String sha = bundles.get(location);
 
 			try {
-				InputStream in = cache.getStream(sha, source);
+				InputStream in = cache.getStream(sha, getSources());
 				if (in == null) {
 					out.format("Could not find file with sha %s for bundle %s", sha, location);
 					continue;
@@ -285,7 +288,7 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 			String sha = e.getValue();
 
 			try {
-				InputStream in = cache.getStream(sha, source);
+				InputStream in = cache.getStream(sha, getSources());
 				if (in == null) {
 					out.format("Cannot find file for sha %s to update %s", sha, location);
 					continue;
@@ -328,7 +331,7 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 	}
 
 	public String update(long id, String sha) throws Exception {
-		InputStream in = cache.getStream(sha, source);
+		InputStream in = cache.getStream(sha, getSources());
 		if (in == null)
 			return null;
 
@@ -565,7 +568,21 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 				return new ByteArrayInputStream(data);
 			}
 		};
+		this.chunkSource = null;
+	}
 
+	/*
+	 * Chunks are only requested from a supervisor that announced them when the
+	 * link was set up, an older supervisor would never answer the request
+	 */
+	private synchronized ShaSource[] getSources() {
+		if (chunkSource == null && link != null && link.isRemoteMethod("getChunks"))
+			chunkSource = new ChunkSource(remote, chunks);
+		return chunkSource == null ? new ShaSource[] {
+				source
+		} : new ShaSource[] {
+				chunkSource, source
+		};
 	}
 
 	@Override
@@ -0,0 +1,119 @@
+package aQute.remote.agent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA1;
+import aQute.libg.shacache.ShaSource;
+import aQute.remote.api.Supervisor;
+
+/**
+ * A source for the SHA cache that assembles a file from its chunks. The
+ * chunks are kept in a directory, only the chunks that are not there yet are
+ * retrieved from the supervisor. Since the chunk boundaries depend on the
+ * content, an update of a slightly changed bundle only transfers the chunks
+ * around the changes.
+ * <p>
+ * This source is only used when the supervisor announced the chunk methods
+ * when the link was set up. If the supervisor cannot provide the chunks of a
+ * file this source returns null and the cache falls back to retrieving the
+ * whole file.
+ */
+class ChunkSource implements ShaSource {
+	private static final Pattern	SHA_P	= Pattern.compile("[A-F0-9]{40,40}", Pattern.CASE_INSENSITIVE);
+
+	// The number of chunks requested in one call
+	private static final int		BATCH	= 128;
+
+	private final Supervisor		remote;
+	private final File				dir;
+
+	ChunkSource(Supervisor remote, File dir) {
+		this.remote = remote;
+		this.dir = dir;
+	}
+
+	@Override
+	public boolean isFast() {
+		return false;
+	}
+
+	@Override
+	public InputStream get(String sha) throws Exception {
+		List<String> chunks;
+		try {
+			chunks = remote.getChunks(sha);
+		} catch (Exception e) {
+			return null;
+		}
+		if (chunks == null || chunks.isEmpty())
+			return null;
+
+		Set<String> missing = new LinkedHashSet<String>();
+		for (String chunk : chunks) {
+			if (!SHA_P.matcher(chunk).matches())
+				throw new IllegalArgumentException("Not a SHA " + chunk);
+			if (!getFile(chunk).isFile())
+				missing.add(chunk);
+		}
+
+		List<String> batch = new ArrayList<String>();
+		for (String chunk : missing) {
+			batch.add(chunk);
+			if (batch.size() == BATCH) {
+				fetch(sha, batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty())
+			fetch(sha, batch);
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		for (String chunk : chunks) {
+			File f = getFile(chunk);
+			if (!f.isFile())
+				return null;
+			IO.copy(f, bout);
+		}
+		return new ByteArrayInputStream(bout.toByteArray());
+	}
+
+	private void fetch(String sha, List<String> batch) throws Exception {
+		byte[] data = remote.getChunkData(sha, batch);
+		if (data == null)
+			return;
+
+		dir.mkdirs();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		for (String chunk : batch) {
+			byte[] content = new byte[in.readInt()];
+			in.readFully(content);
+
+			//
+			// Only keep chunks that have the expected SHA, a chunk
+			// is never written partially
+			//
+
+			if (!SHA1.digest(content).asHex().equalsIgnoreCase(chunk))
+				continue;
+
+			File tmp = IO.createTempFile(dir, chunk.toLowerCase(), ".chunk");
+			IO.copy(content, tmp);
+			if (!tmp.renameTo(getFile(chunk)))
+				IO.delete(tmp);
+		}
+	}
+
+	private File getFile(String chunk) {
+		return new File(dir, chunk.toUpperCase());
+	}
+}
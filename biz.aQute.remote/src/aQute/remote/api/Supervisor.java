@@ -1,5 +1,7 @@
 package aQute.remote.api;
 
+import java.util.List;
+
 /**
  * A Supervisor handles the initiating side of a session with a remote agent.
  * The methods defined in this interface are intended to be called by the remote
@@ -41,4 +43,29 @@ public interface Supervisor {
 	 * @return the contents of that file or null if no such file exists.
 	 */
 	byte[] getFile(String sha) throws Exception;
+
+	/**
+	 * Return the chunks of the file that has the given SHA-1. The file is split
+	 * at boundaries that depend on its content, a changed file therefore mostly
+	 * consists of chunks the agent already has. The agent calls this method to
+	 * find out which chunks it is missing and then retrieves those with
+	 * {@link #getChunkData(String, List)}.
+	 * 
+	 * @param sha the SHA-1 of the file
+	 * @return the SHA-1s of the chunks in the order of the file or null if no
+	 *         such file exists.
+	 */
+	List<String> getChunks(String sha) throws Exception;
+
+	/**
+	 * Return the contents of chunks of the file that has the given SHA-1. Each
+	 * chunk is preceded by its length as a 4 byte big endian integer.
+	 * 
+	 * @param sha the SHA-1 of the file
+	 * @param chunks the SHA-1s of the chunks as returned from
+	 *            {@link #getChunks(String)}
+	 * @return the contents of the chunks in the given order or null if no such
+	 *         file exists.
+	 */
+	byte[] getChunkData(String sha, List<String> chunks) throws Exception;
 }
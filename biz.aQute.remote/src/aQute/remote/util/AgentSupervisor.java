@@ -1,11 +1,15 @@
 package aQute.remote.util;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -16,6 +20,7 @@ import aQute.bnd.util.dto.DTO;
 import aQute.lib.collections.MultiMap;
 import aQute.lib.io.IO;
 import aQute.libg.cryptography.SHA1;
+import aQute.remote.util.Chunker.Chunk;
 
 /**
  * This is a base class that provides the basic functionality of a supervisor.
@@ -28,6 +33,15 @@ import aQute.libg.cryptography.SHA1;
 public class AgentSupervisor<Supervisor, Agent> {
 	private static final Map<File,Info>				fileInfo	= new ConcurrentHashMap<File,AgentSupervisor.Info>();
 	private static final MultiMap<String,String>	shaInfo		= new MultiMap<String,String>();
+	private static final Map<String,List<Chunk>>	chunkInfo	= new LinkedHashMap<String,List<Chunk>>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,List<Chunk>> eldest) {
+			return size() > 64;
+		}
+	};
 	private static byte[]							EMPTY		= new byte[0];
 	private Agent									agent;
 	private CountDownLatch							latch		= new CountDownLatch(1);
@@ -72,6 +86,55 @@ public class AgentSupervisor<Supervisor, Agent> {
 		return EMPTY;
 	}
 
+	public List<String> getChunks(String sha) throws Exception {
+		byte[] data = getFile(sha);
+		if (data.length == 0)
+			return null;
+
+		List<String> result = new ArrayList<String>();
+		for (Chunk chunk : getChunkList(sha, data))
+			result.add(chunk.sha);
+		return result;
+	}
+
+	public byte[] getChunkData(String sha, List<String> chunks) throws Exception {
+		byte[] data = getFile(sha);
+		if (data.length == 0)
+			return null;
+
+		Map<String,Chunk> index = new HashMap<String,Chunk>();
+		for (Chunk chunk : getChunkList(sha, data))
+			index.put(chunk.sha, chunk);
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(bout);
+		for (String chunkSha : chunks) {
+			Chunk chunk = index.get(chunkSha);
+			if (chunk == null)
+				throw new IllegalArgumentException("No chunk " + chunkSha + " in file " + sha);
+			dout.writeInt(chunk.length);
+			dout.write(data, chunk.offset, chunk.length);
+		}
+		dout.flush();
+		return bout.toByteArray();
+	}
+
+	/*
+	 * The content of a SHA never changes so its chunks can be cached
+	 */
+	private List<Chunk> getChunkList(String sha, byte[] data) throws Exception {
+		synchronized (chunkInfo) {
+			List<Chunk> chunks = chunkInfo.get(sha);
+			if (chunks != null)
+				return chunks;
+		}
+		List<Chunk> chunks = Chunker.chunk(data);
+		synchronized (chunkInfo) {
+			chunkInfo.put(sha, chunks);
+		}
+		return chunks;
+	}
+
 	public void setAgent(Link<Supervisor,Agent> link) {
 		this.agent = link.getRemote();
 		this.link = link;
@@ -0,0 +1,82 @@
+package aQute.remote.util;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import aQute.lib.hex.Hex;
+
+/**
+ * Splits content in chunks with boundaries that depend on the content, not on
+ * the position. A change in a file therefore only changes the chunks around
+ * the change, the other chunks keep their SHA-1 and do not have to be
+ * transferred again.
+ * <p>
+ * A boundary is placed where a rolling gear hash over the last 32 bytes has
+ * its top bits cleared, this gives chunks of 8k on average. Chunks are at
+ * least 2k and at most 64k.
+ */
+class Chunker {
+	static final int			MIN		= 2 * 1024;
+	static final int			MAX		= 64 * 1024;
+	private static final int	MASK	= -1 << (32 - 13);
+	private static final int[]	GEAR	= new int[256];
+
+	static {
+		// Must be the same in every VM, the seed is fixed
+		Random random = new Random(0x6bd0c4a5L);
+		for (int i = 0; i < GEAR.length; i++)
+			GEAR[i] = random.nextInt();
+	}
+
+	static class Chunk {
+		final String	sha;
+		final int		offset;
+		final int		length;
+
+		Chunk(String sha, int offset, int length) {
+			this.sha = sha;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Split the data in chunks
+	 *
+	 * @param data the content
+	 * @return the chunks in the order of the content
+	 */
+	static List<Chunk> chunk(byte[] data) throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		int start = 0;
+		while (start < data.length) {
+			int end = boundary(data, start);
+			md.update(data, start, end - start);
+			chunks.add(new Chunk(Hex.toHexString(md.digest()), start, end - start));
+			start = end;
+		}
+		return chunks;
+	}
+
+	private static int boundary(byte[] data, int start) {
+		int limit = Math.min(data.length, start + MAX);
+		int i = start + MIN;
+		if (i >= limit)
+			return limit;
+
+		int hash = 0;
+		for (int j = i - 32; j < i; j++)
+			hash = (hash << 1) + GEAR[data[j] & 0xFF];
+
+		for (; i < limit; i++) {
+			hash = (hash << 1) + GEAR[data[i] & 0xFF];
+			if ((hash & MASK) == 0)
+				return i + 1;
+		}
+		return limit;
+	}
+}
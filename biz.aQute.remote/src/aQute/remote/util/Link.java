@@ -15,7 +15,11 @@ import java.lang.reflect.Type;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -35,6 +39,11 @@ import aQute.lib.json.JSONCodec;
  */
 public class Link<L, R> extends Thread implements Closeable {
 	private static final String[]		EMPTY		= new String[] {};
+	/*
+	 * Announces the methods of the local object when the link is set up. The
+	 * name is not a valid method name so an older peer ignores it.
+	 */
+	private static final String			METHODS		= "#methods";
 	static JSONCodec					codec		= new JSONCodec();
 
 	final DataInputStream				in;
@@ -43,6 +52,8 @@ public class Link<L, R> extends Thread implements Closeable {
 	final AtomicInteger					id			= new AtomicInteger(10000);
 	final ConcurrentMap<Integer,Result>	promises	= new ConcurrentHashMap<Integer,Result>();
 	final AtomicBoolean					quit		= new AtomicBoolean(false);
+	final AtomicBoolean					announced	= new AtomicBoolean(false);
+	volatile Set<String>				remoteMethods;
 	volatile boolean					transfer	= false;
 	private ThreadLocal<Integer>		msgid		= new ThreadLocal<Integer>();
 
@@ -78,10 +89,40 @@ public class Link<L, R> extends Thread implements Closeable {
 		if (isAlive())
 			throw new IllegalStateException("Already running");
 
+		announce();
 		if (in != null)
 			start();
 	}
 
+	/**
+	 * Answer if the remote side announced a method with the given name when
+	 * the link was set up. A peer that announced nothing, like an older
+	 * version, has no optional methods. The announcement is read before any
+	 * later command of the peer is executed.
+	 */
+	public boolean isRemoteMethod(String name) {
+		Set<String> methods = remoteMethods;
+		return methods != null && methods.contains(name);
+	}
+
+	private void announce() {
+		if (announced.getAndSet(true))
+			return;
+
+		Set<String> names = new TreeSet<String>();
+		for (Method m : local.getClass().getMethods()) {
+			if (m.getDeclaringClass() != Link.class && m.getDeclaringClass() != Object.class)
+				names.add(m.getName());
+		}
+		try {
+			sendCommand(id.getAndIncrement(), METHODS, new Object[] {
+					names
+			});
+		} catch (Exception e) {
+			terminate(e);
+		}
+	}
+
 	public void close() throws IOException {
 		if (quit.getAndSet(true) == true)
 			return; // already closed
@@ -151,6 +192,7 @@ public class Link<L, R> extends Thread implements Closeable {
 	}
 
 	public void run() {
+		announce();
 		while (!isInterrupted() && !transfer && !quit.get())
 			try {
 				final String cmd = in.readUTF();
@@ -166,6 +208,12 @@ public class Link<L, R> extends Thread implements Closeable {
 					args.add(data);
 				}
 
+				if (METHODS.equals(cmd)) {
+					remoteMethods = new HashSet<String>(
+							Arrays.asList(codec.dec().from(args.get(0)).get(String[].class)));
+					continue;
+				}
+
 				Runnable r = new Runnable() {
 					public void run() {
 						try {
@@ -214,9 +262,13 @@ public class Link<L, R> extends Thread implements Closeable {
 	int send(int msgId, Method m, Object args[]) throws Exception {
 		if (m != null)
 			promises.put(msgId, new Result());
+		return sendCommand(msgId, m != null ? m.getName() : "", args);
+	}
+
+	private int sendCommand(int msgId, String cmd, Object args[]) throws Exception {
 		trace("send");
 		synchronized (out) {
-			out.writeUTF(m != null ? m.getName() : "");
+			out.writeUTF(cmd);
 			out.writeInt(msgId);
 			if (args == null)
 				args = EMPTY;
@@ -318,6 +370,14 @@ public class Link<L, R> extends Thread implements Closeable {
 
 			Method m = getMethod(cmd, args.size());
 			if (m == null) {
+				// Let the caller fail instead of waiting for a result
+				try {
+					send(-id, null, new Object[] {
+							"No such method " + cmd + " with " + args.size() + " arguments"
+					});
+				} catch (Exception e) {
+					terminate(e);
+				}
 				return;
 			}
 
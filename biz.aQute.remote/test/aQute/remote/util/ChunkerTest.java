@@ -0,0 +1,64 @@
+package aQute.remote.util;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import aQute.remote.util.Chunker.Chunk;
+import junit.framework.TestCase;
+
+public class ChunkerTest extends TestCase {
+
+	public void testChunksCoverContent() throws Exception {
+		byte[] data = random(1000000, 1);
+		List<Chunk> chunks = Chunker.chunk(data);
+
+		int offset = 0;
+		for (int i = 0; i < chunks.size(); i++) {
+			Chunk chunk = chunks.get(i);
+			assertEquals(offset, chunk.offset);
+			assertTrue(chunk.length <= Chunker.MAX);
+			if (i < chunks.size() - 1)
+				assertTrue(chunk.length >= Chunker.MIN);
+			offset += chunk.length;
+		}
+		assertEquals(data.length, offset);
+		assertTrue(chunks.size() > 30);
+	}
+
+	public void testSmallAndEmpty() throws Exception {
+		assertEquals(0, Chunker.chunk(new byte[0]).size());
+
+		List<Chunk> chunks = Chunker.chunk(random(100, 2));
+		assertEquals(1, chunks.size());
+		assertEquals(100, chunks.get(0).length);
+	}
+
+	/*
+	 * Inserting a few bytes must only change the chunks around the insertion
+	 */
+	public void testInsertChangesFewChunks() throws Exception {
+		byte[] data = random(1000000, 3);
+		byte[] changed = new byte[data.length + 10];
+		System.arraycopy(data, 0, changed, 0, 500000);
+		System.arraycopy(data, 500000, changed, 500010, data.length - 500000);
+
+		Set<String> before = new HashSet<String>();
+		for (Chunk chunk : Chunker.chunk(data))
+			before.add(chunk.sha);
+
+		int missing = 0;
+		for (Chunk chunk : Chunker.chunk(changed))
+			if (!before.contains(chunk.sha))
+				missing++;
+
+		assertTrue("missing " + missing, missing > 0 && missing <= 2);
+	}
+
+	private byte[] random(int size, long seed) {
+		byte[] data = new byte[size];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+}
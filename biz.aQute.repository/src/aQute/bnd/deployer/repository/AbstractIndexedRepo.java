@@ -49,6 +49,7 @@ import aQute.bnd.deployer.repository.providers.R5RepoContentProvider;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.repository.BaseRepository;
 import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceUtils;
 import aQute.bnd.service.IndexProvider;
 import aQute.bnd.service.Plugin;
 import aQute.bnd.service.Refreshable;
@@ -59,6 +60,7 @@ import aQute.bnd.service.ResolutionPhase;
 import aQute.bnd.service.ResourceHandle;
 import aQute.bnd.service.ResourceHandle.Location;
 import aQute.bnd.service.Strategy;
+import aQute.bnd.service.repository.RepositoryDigest;
 import aQute.bnd.service.url.URLConnector;
 import aQute.bnd.version.Version;
 import aQute.bnd.version.VersionRange;
@@ -79,7 +81,8 @@ import aQute.service.reporter.Reporter;
  */
 @SuppressWarnings("synthetic-access")
 public abstract class AbstractIndexedRepo extends BaseRepository
-		implements RegistryPlugin, Plugin, RemoteRepositoryPlugin, IndexProvider, Repository, Refreshable {
+		implements RegistryPlugin, Plugin, RemoteRepositoryPlugin, IndexProvider, Repository, Refreshable,
+		RepositoryDigest {
 
 	private static final String								SHA_256							= "SHA-256";
 
@@ -123,6 +126,8 @@ public abstract class AbstractIndexedRepo extends BaseRepository
 
 	private final CapabilityIndex							capabilityIndex					= new CapabilityIndex();
 	private final VersionedResourceIndex					identityMap						= new VersionedResourceIndex();
+	private final List<Resource>							resources						= new ArrayList<Resource>();
+	private byte[]											digest;
 	private int												cacheTimeoutSeconds				= DEFAULT_CACHE_TIMEOUT;
 	private boolean											online							= true;
 
@@ -140,6 +145,8 @@ public abstract class AbstractIndexedRepo extends BaseRepository
 	private synchronized void clear() {
 		identityMap.clear();
 		capabilityIndex.clear();
+		resources.clear();
+		digest = null;
 	}
 
 	/**
@@ -209,6 +216,7 @@ public abstract class AbstractIndexedRepo extends BaseRepository
 				public void processResource(Resource resource) {
 					identityMap.put(resource);
 					capabilityIndex.addResource(resource);
+					resources.add(resource);
 				}
 
 				public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
@@ -647,6 +655,21 @@ public abstract class AbstractIndexedRepo extends BaseRepository
 			System.err.println(Strings.format(format, args));
 	}
 
+	/**
+	 * The digest of the resources in the indexes, it changes when a reset or
+	 * refresh reads different content.
+	 */
+	public synchronized byte[] getDigest() {
+		try {
+			init();
+		} catch (Exception e) {
+			return null;
+		}
+		if (digest == null)
+			digest = ResourceUtils.getDigest(resources);
+		return digest;
+	}
+
 	public boolean refresh() throws Exception {
 		initialised = false;
 		init(true);
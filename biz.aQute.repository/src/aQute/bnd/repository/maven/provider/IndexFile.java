@@ -3,13 +3,17 @@ package aQute.bnd.repository.maven.provider;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -19,6 +23,9 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
 
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
@@ -30,12 +37,12 @@ import org.osgi.util.promise.Promises;
 
 import aQute.bnd.header.Attrs;
 import aQute.bnd.osgi.Domain;
+import aQute.bnd.osgi.repository.ResourcesRepository;
 import aQute.bnd.osgi.resource.ResourceBuilder;
 import aQute.bnd.osgi.resource.ResourceUtils;
 import aQute.bnd.service.repository.Phase;
 import aQute.bnd.service.repository.SearchableRepository.ResourceDescriptor;
 import aQute.bnd.version.Version;
-import aQute.lib.collections.MultiMap;
 import aQute.lib.io.IO;
 import aQute.lib.json.JSONCodec;
 import aQute.lib.strings.Strings;
@@ -79,7 +86,7 @@ class IndexFile {
 		}
 	}
 
-	private final ConcurrentMap<Archive,Promise<File>>		promises	= new ConcurrentHashMap<>();
+	private final ConcurrentMap<Archive,Promise< ? >>		promises	= new ConcurrentHashMap<>();
 	final ConcurrentMap<Archive,BundleDescriptor>		descriptors	= new ConcurrentHashMap<>();
 	final File											indexFile;
 	final File											cacheDir;
@@ -87,6 +94,10 @@ class IndexFile {
 	private final Reporter									reporter;
 	private long									lastModified;
 	private AtomicBoolean							refresh		= new AtomicBoolean();
+	private ResourcesRepository						index;
+	private int										indexGeneration;
+	private final AtomicInteger						generation	= new AtomicInteger();
+	private volatile Lookup							lookup;
 
 	IndexFile(Reporter reporter, File file, IMavenRepo repo) throws Exception {
 		this.reporter = reporter;
@@ -100,25 +111,25 @@ class IndexFile {
 		sync();
 	}
 
+	/*
+	 * Wait until the pending downloads are resolved and their failures are
+	 * reported. A promise is only removed after it is resolved so that
+	 * concurrent callers all wait for it.
+	 */
 	private void sync() throws Exception {
-		List<Promise<Void>> sync = new ArrayList<>(promises.size());
-		for (Iterator<Entry<Archive,Promise<File>>> i = promises.entrySet().iterator(); i.hasNext();) {
-			Entry<Archive,Promise<File>> entry = i.next();
-			final Archive archive = entry.getKey();
-			Promise<File> promise = entry.getValue();
-			i.remove();
-			sync.add(promise.<Void> then(null, new Failure() {
-				@Override
-				public void fail(Promise< ? > resolved) throws Exception {
-					reporter.exception(resolved.getFailure(), "Failed to sync %s", archive);
-				}
-			}));
+		if (promises.isEmpty())
+			return;
+
+		for (Entry<Archive,Promise< ? >> entry : promises.entrySet()) {
+			Promise< ? > promise = entry.getValue();
+			promise.getFailure(); // block until the promise is resolved
+			promises.remove(entry.getKey(), promise);
 		}
-		Promises.all(sync).getFailure(); // block until all promises resolved
 	}
 
 	BundleDescriptor add(Archive archive) throws Exception {
 		BundleDescriptor old = descriptors.putIfAbsent(archive, createInitialDescriptor(archive));
+		changed();
 		BundleDescriptor descriptor = descriptors.get(archive);
 		updateDescriptor(descriptor, repo.get(archive).getValue());
 		if (old == null || !Arrays.equals(descriptor.id, old.id)) {
@@ -131,6 +142,7 @@ class IndexFile {
 	BundleDescriptor remove(Archive archive) throws Exception {
 		BundleDescriptor descriptor = descriptors.remove(archive);
 		if (descriptor != null) {
+			changed();
 			saveIndexFile();
 		}
 		return descriptor;
@@ -141,57 +153,114 @@ class IndexFile {
 			if (isBsn(bsn, bd.next()))
 				bd.remove();
 		}
+		changed();
 		saveIndexFile();
 	}
 
 	Collection<String> list() {
-		Set<String> result = new HashSet<>();
-		for (BundleDescriptor descriptor : descriptors.values()) {
-			result.add(descriptor.bsn);
-		}
-		return result;
+		return Collections.unmodifiableSet(getLookup().bsns);
 	}
 
 	Collection<Version> list(String bsn) {
-
-		Set<Version> result = new HashSet<>();
-		for (BundleDescriptor descriptor : descriptors.values()) {
-			if (isBsn(bsn, descriptor)) {
-				result.add(descriptor.version);
-			}
-		}
-		return result;
+		Map<Version,BundleDescriptor> versions = getLookup().versions.get(bsn);
+		if (versions == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(versions.keySet());
 	}
 
 	boolean isBsn(String bsn, BundleDescriptor descriptor) {
 		return bsn.equals(descriptor.bsn) || bsn.equals(descriptor.archive.getWithoutVersion());
 	}
 
-	public synchronized BundleDescriptor getDescriptor(String bsn, Version version) throws Exception {
+	public BundleDescriptor getDescriptor(String bsn, Version version) throws Exception {
 		sync();
-		for (BundleDescriptor descriptor : descriptors.values()) {
-			if (isBsn(bsn, descriptor) && version.equals(descriptor.version)) {
-				return descriptor;
-			}
-		}
-		return null;
+		Map<Version,BundleDescriptor> versions = getLookup().versions.get(bsn);
+		if (versions == null)
+			return null;
+		return versions.get(version);
 	}
 
 	int getErrors(String name) {
-		int errors = 0;
-		for (BundleDescriptor bd : descriptors.values())
-			if ((name == null || name.equals(bd.bsn)) && bd.error != null)
-				errors++;
-		return errors;
+		Lookup lookup = getLookup();
+		if (name == null)
+			return lookup.errors;
+		Integer errors = lookup.errorsByBsn.get(name);
+		return errors == null ? 0 : errors;
 	}
 
 	Set<Program> getProgramsForBsn(String name) {
-		Set<Program> set = new HashSet<>();
-		for (BundleDescriptor bd : descriptors.values())
-			if (name == null || name.equals(bd.bsn)) {
-				set.add(bd.archive.revision.program);
+		Lookup lookup = getLookup();
+		if (name == null)
+			return new HashSet<>(lookup.programs);
+		Set<Program> programs = lookup.programsByBsn.get(name);
+		return programs == null ? new HashSet<Program>() : new HashSet<>(programs);
+	}
+
+	/**
+	 * Lookups are served from a snapshot of the descriptors. Every change to
+	 * the descriptors increments the generation, the snapshot is rebuilt on
+	 * the first lookup in a new generation. A snapshot built while a change
+	 * happened has an older generation and is therefore rebuilt on the next
+	 * lookup.
+	 */
+	private Lookup getLookup() {
+		Lookup lookup = this.lookup;
+		int current = generation.get();
+		if (lookup == null || lookup.generation != current) {
+			lookup = new Lookup(current, descriptors.values());
+			this.lookup = lookup;
+		}
+		return lookup;
+	}
+
+	private void changed() {
+		generation.incrementAndGet();
+	}
+
+	private static final class Lookup {
+		final int											generation;
+		final Map<String,Map<Version,BundleDescriptor>>	versions		= new HashMap<>();
+		final Set<String>									bsns			= new HashSet<>();
+		final Map<String,Integer>							errorsByBsn		= new HashMap<>();
+		final Map<String,Set<Program>>						programsByBsn	= new HashMap<>();
+		final Set<Program>									programs		= new HashSet<>();
+		int													errors;
+
+		Lookup(int generation, Collection<BundleDescriptor> descriptors) {
+			this.generation = generation;
+			for (BundleDescriptor descriptor : descriptors) {
+				index(descriptor.bsn, descriptor);
+				index(descriptor.archive.getWithoutVersion(), descriptor);
+
+				bsns.add(descriptor.bsn);
+
+				Set<Program> set = programsByBsn.get(descriptor.bsn);
+				if (set == null) {
+					set = new HashSet<>();
+					programsByBsn.put(descriptor.bsn, set);
+				}
+				set.add(descriptor.archive.revision.program);
+				programs.add(descriptor.archive.revision.program);
+
+				if (descriptor.error != null) {
+					errors++;
+					Integer n = errorsByBsn.get(descriptor.bsn);
+					errorsByBsn.put(descriptor.bsn, n == null ? 1 : n + 1);
+				}
 			}
-		return set;
+		}
+
+		private void index(String bsn, BundleDescriptor descriptor) {
+			if (bsn == null)
+				return;
+			Map<Version,BundleDescriptor> map = versions.get(bsn);
+			if (map == null) {
+				map = new HashMap<>();
+				versions.put(bsn, map);
+			}
+			if (!map.containsKey(descriptor.version))
+				map.put(descriptor.version, descriptor);
+		}
 	}
 
 	long last = 0L;
@@ -245,6 +314,7 @@ class IndexFile {
 
 			this.descriptors.keySet().removeAll(toBeDeleted);
 			this.promises.keySet().removeAll(toBeDeleted);
+			changed();
 		}
 	}
 
@@ -260,10 +330,13 @@ class IndexFile {
 				descriptorFile.delete();
 				reporter.error("Could not find file %s", descriptor.archive);
 				descriptor.error = "File not found";
+				changed();
 			} else {
 				if (descriptor.lastModified != file.lastModified()) {
 
-					Domain m = Domain.domain(file);
+					MessageDigest sha1 = MessageDigest.getInstance(SHA1.ALGORITHM);
+					MessageDigest sha256 = MessageDigest.getInstance(SHA256.ALGORITHM);
+					Domain m = read(file, sha1, sha256);
 					if (m == null)
 						m = Domain.domain(Collections.<String, String> emptyMap());
 
@@ -278,11 +351,13 @@ class IndexFile {
 					} else if (descriptor.version == null)
 						descriptor.version = Version.LOWEST;
 					descriptor.description = m.getBundleDescription();
-					descriptor.id = SHA1.digest(file).digest();
+					descriptor.id = sha1.digest();
 					descriptor.included = false;
 					descriptor.lastModified = file.lastModified();
-					descriptor.sha256 = SHA256.digest(file).digest();
+					descriptor.sha256 = sha256.digest();
+					descriptor.resource = null;
 					saveDescriptor(descriptor);
+					changed();
 					refresh.set(true);
 				}
 				if (descriptor.promise == null && file != null)
@@ -291,11 +366,41 @@ class IndexFile {
 		} catch (Exception e) {
 			e.printStackTrace();
 			descriptor.error = e.toString();
+			changed();
 			refresh.set(true);
 
 		}
 	}
 
+	/*
+	 * Read the archive once to calculate the digests and to get the manifest.
+	 * The manifest is normally at the start of a JAR so the rest is only
+	 * drained through the digests. Other files and JARs where the manifest is
+	 * not at the start are parsed separately.
+	 */
+	private Domain read(File file, MessageDigest sha1, MessageDigest sha256) throws Exception {
+		Manifest manifest = null;
+		String name = file.getName();
+		boolean jar = !(name.endsWith(".mf") || name.endsWith(".properties") || name.endsWith(".bnd")
+				|| name.endsWith(".pom"));
+
+		try (InputStream in = new DigestInputStream(new DigestInputStream(IO.stream(file), sha1), sha256)) {
+			if (jar) {
+				try {
+					manifest = new JarInputStream(in, false).getManifest();
+				} catch (IOException e) {
+					// not a JAR, will be parsed separately
+				}
+			}
+			IO.drain(in);
+		}
+
+		if (manifest != null)
+			return Domain.domain(manifest);
+
+		return Domain.domain(file);
+	}
+
 	private void saveDescriptor(BundleDescriptor descriptor) throws IOException, Exception {
 		File df = getDescriptorFile(descriptor.archive);
 		df.getParentFile().mkdirs();
@@ -319,6 +424,7 @@ class IndexFile {
 					descriptor.promise = Promises.resolved(archiveFile);
 					descriptor.resource = null;
 					descriptors.put(archive, descriptor);
+					changed();
 					return true;
 				} catch (Exception e) {
 					// ignore
@@ -337,10 +443,12 @@ class IndexFile {
 		BundleDescriptor descriptor = createInitialDescriptor(archive);
 		promise = updateAsync(descriptor, promise);
 		descriptors.put(archive, descriptor);
+		changed();
 		return promise;
 	}
 
 	Promise<File> updateAsync(final BundleDescriptor descriptor, Promise<File> promise) throws Exception {
+		final Archive archive = descriptor.archive;
 		descriptor.promise = promise.map(new Function<File,File>() {
 			@Override
 			public File apply(File file) {
@@ -349,7 +457,12 @@ class IndexFile {
 			}
 		});
 		descriptor.resource = null;
-		promises.put(descriptor.archive, descriptor.promise);
+		promises.put(archive, descriptor.promise.then(null, new Failure() {
+			@Override
+			public void fail(Promise< ? > resolved) throws Exception {
+				reporter.exception(resolved.getFailure(), "Failed to sync %s", archive);
+			}
+		}));
 		return descriptor.promise;
 	}
 
@@ -390,23 +503,27 @@ class IndexFile {
 		return descriptors.keySet();
 	}
 
-	@SuppressWarnings({
-			"unchecked", "rawtypes"
-	})
+	/**
+	 * The resources are indexed to quickly find the providers. The index is
+	 * rebuilt on the first search in a new generation of the descriptors.
+	 */
 	public Map<Requirement,Collection<Capability>> findProviders(Collection< ? extends Requirement> requirements) {
-		MultiMap<Requirement,Capability> providers = new MultiMap<>();
-		for (BundleDescriptor bd : descriptors.values()) {
-			Resource r = bd.getResource();
-			if (r != null) {
-				for (Requirement req : requirements) {
-					for (Capability cap : r.getCapabilities(req.getNamespace())) {
-						if (ResourceUtils.matches(req, cap))
-							providers.add(req, cap);
-					}
-				}
+		return getIndex().findProviders(requirements);
+	}
+
+	private synchronized ResourcesRepository getIndex() {
+		int current = generation.get();
+		if (index == null || indexGeneration != current) {
+			List<Resource> resources = new ArrayList<>(descriptors.size());
+			for (BundleDescriptor bd : descriptors.values()) {
+				Resource r = bd.getResource();
+				if (r != null)
+					resources.add(r);
 			}
+			index = new ResourcesRepository(resources);
+			indexGeneration = current;
 		}
-		return (Map) providers;
+		return index;
 	}
 
 }
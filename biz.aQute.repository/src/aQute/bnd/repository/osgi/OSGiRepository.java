@@ -18,6 +18,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
 import org.osgi.util.promise.Promise;
 
 import aQute.bnd.annotation.plugin.BndPlugin;
@@ -34,6 +35,7 @@ import aQute.bnd.service.RegistryPlugin;
 import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.bnd.service.repository.Prepare;
+import aQute.bnd.service.repository.RepositoryDigest;
 import aQute.bnd.util.repository.DownloadListenerPromise;
 import aQute.bnd.version.Version;
 import aQute.configurable.Config;
@@ -46,7 +48,8 @@ import aQute.service.reporter.Reporter;
 
 @BndPlugin(name = "OSGiRepository", parameters = Config.class)
 public class OSGiRepository extends BaseRepository
-		implements Plugin, RepositoryPlugin, Actionable, Refreshable, RegistryPlugin, Prepare, Closeable {
+		implements Plugin, RepositoryPlugin, Actionable, Refreshable, RegistryPlugin, Prepare, Closeable,
+		RepositoryDigest {
 	final static int	YEAR		= 365 * 24 * 60 * 60;
 	static int			DEFAULT_POLL_TIME	= (int) TimeUnit.MINUTES.toSeconds(5);
 
@@ -319,4 +322,18 @@ public class OSGiRepository extends BaseRepository
 			throw Exceptions.duck(e);
 		}
 	}
+
+	/**
+	 * The digest of the current index, a refresh or a poll that reads a
+	 * changed index changes it.
+	 */
+	@Override
+	public byte[] getDigest() {
+		try {
+			Repository repository = getIndex().getBridge().getRepository();
+			return repository instanceof RepositoryDigest ? ((RepositoryDigest) repository).getDigest() : null;
+		} catch (Exception e) {
+			return null;
+		}
+	}
 }
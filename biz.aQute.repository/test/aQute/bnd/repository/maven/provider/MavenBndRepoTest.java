@@ -5,6 +5,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -24,6 +25,7 @@ import aQute.bnd.http.HttpClient;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.osgi.resource.ResourceUtils;
 import aQute.bnd.osgi.resource.ResourceUtils.IdentityCapability;
+import aQute.bnd.repository.maven.provider.IndexFile.BundleDescriptor;
 import aQute.bnd.service.RepositoryPlugin.PutOptions;
 import aQute.bnd.service.RepositoryPlugin.PutResult;
 import aQute.bnd.service.maven.PomOptions;
@@ -31,6 +33,8 @@ import aQute.bnd.service.progress.ProgressPlugin;
 import aQute.bnd.version.Version;
 import aQute.http.testservers.HttpTestServer.Config;
 import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA1;
+import aQute.libg.cryptography.SHA256;
 import aQute.maven.api.MavenScope;
 import aQute.maven.api.Revision;
 import aQute.maven.provider.FakeNexus;
@@ -158,6 +162,29 @@ public class MavenBndRepoTest extends TestCase {
 		assertEquals(f12maven, f12osgi);
 	}
 
+	public void testDescriptorLookup() throws Exception {
+		Map<String,String> map = new HashMap<>();
+		map.put("releaseUrl", remote.toURI().toString());
+		config(map);
+
+		File file = repo.get("org.apache.commons.cli", new Version("1.2.0"), null);
+		assertNotNull(file);
+
+		BundleDescriptor osgi = repo.getDescriptor("org.apache.commons.cli", new Version("1.2.0"));
+		BundleDescriptor maven = repo.getDescriptor("commons-cli:commons-cli", new Version("1.2.0"));
+		assertNotNull(osgi);
+		assertSame(osgi, maven);
+		assertNull(repo.getDescriptor("org.apache.commons.cli", new Version("1.0.0")));
+		assertNull(repo.getDescriptor("not.there", new Version("1.2.0")));
+
+		assertTrue(Arrays.equals(SHA1.digest(file).digest(), osgi.id));
+		assertTrue(Arrays.equals(SHA256.digest(file).digest(), osgi.sha256));
+
+		repo.index.remove(osgi.archive);
+		assertNull(repo.getDescriptor("org.apache.commons.cli", new Version("1.2.0")));
+		assertFalse(repo.list(null).contains("org.apache.commons.cli"));
+	}
+
 	public void testList() throws Exception {
 		config(null);
 		List<String> l = repo.list(null);
@@ -13,7 +13,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -21,8 +20,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
@@ -57,6 +59,7 @@ import aQute.bnd.osgi.resource.ResourceBuilder;
 import aQute.bnd.osgi.resource.ResourceUtils;
 import aQute.bnd.service.resolve.hook.ResolverHook;
 import aQute.bnd.version.VersionRange;
+import aQute.lib.exceptions.Exceptions;
 import aQute.lib.io.IO;
 import aQute.libg.filters.AndFilter;
 import aQute.libg.filters.Filter;
@@ -93,6 +96,8 @@ public abstract class AbstractResolveContext extends ResolveContext {
 	private final List<Repository>					repositories				= new ArrayList<Repository>();
 	private final List<Requirement>					failed						= new ArrayList<Requirement>();
 	private final Map<CacheKey,List<Capability>>	providerCache				= new HashMap<CacheKey,List<Capability>>();
+	private ProviderCache							sharedProviderCache;
+	private boolean									parallelQueries;
 	private final Set<Resource>						optionalRoots				= new HashSet<Resource>();
 	private final ConcurrentMap<Resource,Integer>	resourcePriorities			= new ConcurrentHashMap<Resource,Integer>();
 	private final Comparator<Capability>			capabilityComparator;
@@ -105,6 +110,8 @@ public abstract class AbstractResolveContext extends ResolveContext {
 	private Set<Resource>							blacklistedResources		= new HashSet<Resource>();
 	private int										level						= 0;
 	private Resource								framework;
+	private Set<Requirement>						prefetchedRequirements		= Collections.emptySet();
+	private List<Map<Requirement,Collection<Capability>>>	prefetched;
 
 	public AbstractResolveContext(LogService log) {
 		this.log = log;
@@ -141,6 +148,44 @@ public abstract class AbstractResolveContext extends ResolveContext {
 		return result;
 	}
 
+	/**
+	 * Find the providers for a number of requirements. The requirements that
+	 * are not cached yet are passed to each repository in a single
+	 * {@link #findProviders(Repository, Collection)} call, the answers are
+	 * then used by {@link #findProvidersFromRepositories(Requirement, LinkedHashSet)}.
+	 * 
+	 * @param requirements the requirements
+	 * @return the providers for each requirement, in the order of the
+	 *         requirements
+	 */
+	public Map<Requirement,List<Capability>> findProviders(Collection< ? extends Requirement> requirements) {
+		init();
+		List<Requirement> uncached = new ArrayList<Requirement>();
+		for (Requirement requirement : requirements) {
+			if (needsRepositories(requirement) && !providerCache.containsKey(getCacheKey(requirement)))
+				uncached.add(requirement);
+		}
+		if (!uncached.isEmpty()) {
+			prefetched = findProvidersInRepositories(uncached);
+			prefetchedRequirements = new HashSet<Requirement>(uncached);
+		}
+
+		try {
+			Map<Requirement,List<Capability>> result = new LinkedHashMap<Requirement,List<Capability>>();
+			for (Requirement requirement : requirements) {
+				List<Capability> providers = findProviders0(requirement);
+				if (providers == null || providers.isEmpty()) {
+					failed.add(requirement);
+				}
+				result.put(requirement, providers);
+			}
+			return result;
+		} finally {
+			prefetched = null;
+			prefetchedRequirements = Collections.emptySet();
+		}
+	}
+
 	@Override
 	public Collection<Resource> getMandatoryResources() {
 		init();
@@ -224,9 +269,7 @@ public abstract class AbstractResolveContext extends ResolveContext {
 			// root resource,
 			// then we are done already, no need to look for providers from the
 			// repos.
-			boolean optional = Namespace.RESOLUTION_OPTIONAL
-					.equals(requirement.getDirectives().get(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE));
-			if (optional && !optionalRoots.contains(requirement.getResource())) {
+			if (!needsRepositories(requirement)) {
 
 				result = new ArrayList<Capability>(firstStageResult);
 				Collections.sort(result, capabilityComparator);
@@ -247,6 +290,12 @@ public abstract class AbstractResolveContext extends ResolveContext {
 
 	}
 
+	private boolean needsRepositories(Requirement requirement) {
+		boolean optional = Namespace.RESOLUTION_OPTIONAL
+				.equals(requirement.getDirectives().get(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE));
+		return !optional || optionalRoots.contains(requirement.getResource());
+	}
+
 	protected void processMandatoryResource(Requirement requirement, LinkedHashSet<Capability> firstStageResult,
 			Resource resource) {
 		if (resource != null) {
@@ -262,15 +311,22 @@ public abstract class AbstractResolveContext extends ResolveContext {
 
 	protected ArrayList<Capability> findProvidersFromRepositories(Requirement requirement,
 			LinkedHashSet<Capability> existingWiredCapabilities) {
+		List<Map<Requirement,Collection<Capability>>> answers = prefetchedRequirements.contains(requirement)
+				? prefetched : findProvidersInRepositories(Collections.singleton(requirement));
+		return findProvidersFromRepositories(requirement, existingWiredCapabilities, answers);
+	}
+
+	private ArrayList<Capability> findProvidersFromRepositories(Requirement requirement,
+			LinkedHashSet<Capability> existingWiredCapabilities, List<Map<Requirement,Collection<Capability>>> answers) {
 		// Second stage results: repository contents; may be reordered.
 		ArrayList<Capability> secondStageResult = new ArrayList<Capability>();
 
-		// Iterate over the repos
+		// Iterate over the answers of the repos in repository order
 		int order = 0;
 		ArrayList<Capability> repoCapabilities = new ArrayList<Capability>();
-		for (Repository repo : repositories) {
+		for (Map<Requirement,Collection<Capability>> answer : answers) {
 			repoCapabilities.clear();
-			Collection<Capability> capabilities = findProviders(repo, requirement);
+			Collection<Capability> capabilities = answer.get(requirement);
 			if (capabilities != null && !capabilities.isEmpty()) {
 				repoCapabilities.ensureCapacity(capabilities.size());
 				for (Capability capability : capabilities) {
@@ -293,9 +349,84 @@ public abstract class AbstractResolveContext extends ResolveContext {
 		return secondStageList;
 	}
 
+	/**
+	 * Ask all repositories for the providers of the requirements. When
+	 * parallel queries are enabled and there is more than one repository the
+	 * repositories are queried concurrently, the first repository on the
+	 * calling thread.
+	 * 
+	 * @param requirements the requirements
+	 * @return the answer of each repository, in repository order
+	 */
+	private List<Map<Requirement,Collection<Capability>>> findProvidersInRepositories(
+			final Collection< ? extends Requirement> requirements) {
+		int size = repositories.size();
+		if (size == 0)
+			return Collections.emptyList();
+
+		if (!parallelQueries || size == 1) {
+			List<Map<Requirement,Collection<Capability>>> answers = new ArrayList<Map<Requirement,Collection<Capability>>>(
+					size);
+			for (Repository repo : repositories) {
+				answers.add(findProvidersInRepository(repo, requirements));
+			}
+			return answers;
+		}
+
+		List<FutureTask<Map<Requirement,Collection<Capability>>>> tasks = new ArrayList<FutureTask<Map<Requirement,Collection<Capability>>>>(
+				size - 1);
+		for (final Repository repo : repositories.subList(1, size)) {
+			FutureTask<Map<Requirement,Collection<Capability>>> task = new FutureTask<Map<Requirement,Collection<Capability>>>(
+					new Callable<Map<Requirement,Collection<Capability>>>() {
+						@Override
+						public Map<Requirement,Collection<Capability>> call() throws Exception {
+							return findProvidersInRepository(repo, requirements);
+						}
+					});
+			Processor.getExecutor().execute(task);
+			tasks.add(task);
+		}
+
+		List<Map<Requirement,Collection<Capability>>> answers = new ArrayList<Map<Requirement,Collection<Capability>>>(
+				size);
+		try {
+			answers.add(findProvidersInRepository(repositories.get(0), requirements));
+			for (FutureTask<Map<Requirement,Collection<Capability>>> task : tasks) {
+				answers.add(task.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw Exceptions.duck(e.getCause());
+		} finally {
+			for (FutureTask<Map<Requirement,Collection<Capability>>> task : tasks) {
+				// do not interrupt, a repository may not survive it
+				task.cancel(false);
+			}
+		}
+		return answers;
+	}
+
+	/**
+	 * Ask one repository through the hooks: a single requirement through
+	 * {@link #findProviders(Repository, Requirement)}, more requirements
+	 * through {@link #findProviders(Repository, Collection)}.
+	 */
+	private Map<Requirement,Collection<Capability>> findProvidersInRepository(Repository repo,
+			Collection< ? extends Requirement> requirements) {
+		if (requirements.size() == 1) {
+			Requirement requirement = requirements.iterator().next();
+			return Collections.singletonMap(requirement, findProviders(repo, requirement));
+		}
+		return findProviders(repo, requirements);
+	}
+
 	/**
 	 * Return any capabilities from the given repo. This method will filter the
-	 * blacklist.
+	 * blacklist. When parallel queries are enabled, see
+	 * {@link #setParallelQueries(boolean)}, it is called concurrently for
+	 * different repos and must be thread safe.
 	 * 
 	 * @param repo The repo to fetch requirements from
 	 * @param requirement the requirement
@@ -303,20 +434,54 @@ public abstract class AbstractResolveContext extends ResolveContext {
 	 *         that are skipped.
 	 */
 	protected Collection<Capability> findProviders(Repository repo, Requirement requirement) {
-		Map<Requirement,Collection<Capability>> map = repo.findProviders(Collections.singleton(requirement));
-
-		if (map.isEmpty())
+		Collection<Capability> caps = query(repo, Collections.singleton(requirement)).get(requirement);
+		if (caps == null || caps.isEmpty())
 			return Collections.emptySet();
+		return permitted(caps);
+	}
 
-		Collection<Capability> caps = map.get(requirement);
+	/**
+	 * Return any capabilities from the given repo for a number of
+	 * requirements in one call to the repo. This method will filter the
+	 * blacklist. It is used for the requirements of
+	 * {@link #findProviders(Collection)}, a single requirement is always asked
+	 * through {@link #findProviders(Repository, Requirement)}. When parallel
+	 * queries are enabled, see {@link #setParallelQueries(boolean)}, it is
+	 * called concurrently for different repos and must be thread safe.
+	 * 
+	 * @param repo The repo to fetch requirements from
+	 * @param requirements the requirements
+	 * @return the caps for each asked requirement minus the capabilities that
+	 *         are skipped.
+	 */
+	protected Map<Requirement,Collection<Capability>> findProviders(Repository repo,
+			Collection< ? extends Requirement> requirements) {
+		Map<Requirement,Collection<Capability>> map = query(repo, requirements);
+
+		Map<Requirement,Collection<Capability>> result = new HashMap<Requirement,Collection<Capability>>();
+		for (Requirement requirement : requirements) {
+			Collection<Capability> caps = map.get(requirement);
+			if (caps == null || caps.isEmpty())
+				continue;
 
-		for (Iterator<Capability> c = caps.iterator(); c.hasNext();) {
-			Capability capability = c.next();
+			result.put(requirement, permitted(caps));
+		}
+		return result;
+	}
+
+	private Map<Requirement,Collection<Capability>> query(Repository repo,
+			Collection< ? extends Requirement> requirements) {
+		ProviderCache cache = sharedProviderCache;
+		return cache != null ? cache.findProviders(repo, requirements) : repo.findProviders(requirements);
+	}
 
-			if (blacklistedResources.contains(capability.getResource()))
-				c.remove();
+	private List<Capability> permitted(Collection<Capability> caps) {
+		List<Capability> permitted = new ArrayList<Capability>(caps.size());
+		for (Capability capability : caps) {
+			if (!blacklistedResources.contains(capability.getResource()))
+				permitted.add(capability);
 		}
-		return caps;
+		return permitted;
 	}
 
 	private void setResourcePriority(int priority, Resource resource) {
@@ -375,6 +540,29 @@ public abstract class AbstractResolveContext extends ResolveContext {
 		repositories.add(repo);
 	}
 
+	/**
+	 * Share the answers of the repositories with other contexts through a
+	 * provider cache.
+	 * 
+	 * @param cache the cache or {@code null} to not share answers
+	 */
+	public void setProviderCache(ProviderCache cache) {
+		this.sharedProviderCache = cache;
+	}
+
+	/**
+	 * Query the repositories concurrently on the executor of bnd. The
+	 * {@link #findProviders(Repository, Requirement)} and
+	 * {@link #findProviders(Repository, Collection)} hooks are then called
+	 * from several threads at the same time, for different repositories.
+	 * 
+	 * @param parallel true to query the repositories concurrently, by default
+	 *            they are queried one after the other on the calling thread
+	 */
+	public void setParallelQueries(boolean parallel) {
+		this.parallelQueries = parallel;
+	}
+
 	public List<Repository> getRepositories() {
 		return repositories;
 	}
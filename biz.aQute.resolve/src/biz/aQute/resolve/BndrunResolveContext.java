@@ -59,6 +59,8 @@ public class BndrunResolveContext extends AbstractResolveContext {
 	private static final String BND_AUGMENT = "bnd.augment";
 	public static final String	RUN_EFFECTIVE_INSTRUCTION	= "-resolve.effective";
 	public static final String	PROP_RESOLVE_PREFERENCES	= "-resolve.preferences";
+	public static final String	PROP_RESOLVE_PROVIDERCACHE	= "-resolve.providercache";
+	public static final String	PROP_RESOLVE_PARALLEL		= "-resolve.parallel";
 
 	private Registry			registry;
 	private Parameters			resolvePrefs;
@@ -384,6 +386,23 @@ public class BndrunResolveContext extends AbstractResolveContext {
 			super.addRepository(repository);
 		}
 
+		//
+		// Share the answers of the repositories with the other contexts
+		// in this process. The cache checks the digest of a repository
+		// on each lookup
+		//
+
+		if (Processor.isTrue(properties.getProperty(PROP_RESOLVE_PROVIDERCACHE))) {
+			setProviderCache(ProviderCache.getDefault());
+		}
+
+		//
+		// Query the repositories concurrently, the findProviders hooks of
+		// subclasses must then be thread safe
+		//
+
+		setParallelQueries(Processor.isTrue(properties.getProperty(PROP_RESOLVE_PARALLEL)));
+
 		return repositoryAugments;
 	}
 
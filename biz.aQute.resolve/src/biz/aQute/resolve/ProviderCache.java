@@ -0,0 +1,161 @@
+package biz.aQute.resolve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.service.repository.RepositoryDigest;
+
+/**
+ * A cache of the answers of repositories to requirements that can be shared
+ * between resolve contexts, also concurrently. The answers are kept per
+ * repository and per generation of that repository, keyed by the namespace,
+ * directives and attributes of the requirement. Empty answers are cached as
+ * well.
+ * <p>
+ * A generation is identified by the {@link RepositoryDigest} of the
+ * repository, the digest is checked on each lookup so any change of the
+ * content starts a new generation, whether the repository was refreshed,
+ * polled or changed otherwise. Repositories without a digest are not cached.
+ * A repository that is no longer used is dropped from the cache when it is
+ * garbage collected.
+ */
+public class ProviderCache {
+	private final static ProviderCache				DEFAULT			= new ProviderCache();
+
+	private final Map<Repository,Generation>		generations		= new WeakHashMap<>();
+
+	static class Generation {
+		final byte[]								digest;
+		final ConcurrentMap<Key,List<Capability>>	answers	= new ConcurrentHashMap<>();
+
+		Generation(byte[] digest) {
+			this.digest = digest;
+		}
+	}
+
+	/**
+	 * Return the process wide cache.
+	 */
+	public static ProviderCache getDefault() {
+		return DEFAULT;
+	}
+
+	public boolean isCacheable(Repository repository) {
+		return repository instanceof RepositoryDigest;
+	}
+
+	/**
+	 * Find the providers for the requirements in the repository. Requirements
+	 * that are not cached are passed to the repository in a single call and
+	 * the answers are cached.
+	 * 
+	 * @return the providers for each requirement, possibly empty
+	 */
+	public Map<Requirement,Collection<Capability>> findProviders(Repository repository,
+			Collection< ? extends Requirement> requirements) {
+		byte[] digest = isCacheable(repository) ? ((RepositoryDigest) repository).getDigest() : null;
+		if (digest == null)
+			return repository.findProviders(requirements);
+
+		Generation generation = getGeneration(repository, digest);
+
+		Map<Requirement,Collection<Capability>> result = new HashMap<>();
+		List<Requirement> missing = new ArrayList<>();
+		for (Requirement requirement : requirements) {
+			List<Capability> answer = generation.answers.get(new Key(requirement));
+			if (answer != null)
+				result.put(requirement, answer);
+			else
+				missing.add(requirement);
+		}
+
+		if (!missing.isEmpty()) {
+			Map<Requirement,Collection<Capability>> found = repository.findProviders(missing);
+			for (Requirement requirement : missing) {
+				Collection<Capability> capabilities = found.get(requirement);
+				List<Capability> answer = capabilities == null || capabilities.isEmpty()
+						? Collections.<Capability> emptyList()
+						: Collections.unmodifiableList(new ArrayList<>(capabilities));
+				generation.answers.put(new Key(requirement), answer);
+				result.put(requirement, answer);
+			}
+		}
+		return result;
+	}
+
+	private Generation getGeneration(Repository repository, byte[] digest) {
+		synchronized (generations) {
+			Generation generation = generations.get(repository);
+			if (generation == null || !Arrays.equals(generation.digest, digest)) {
+				generation = new Generation(digest);
+				generations.put(repository, generation);
+			}
+			return generation;
+		}
+	}
+
+	/**
+	 * Start a new generation for the repository. Answers of the current
+	 * generation are no longer used.
+	 */
+	public void invalidate(Repository repository) {
+		synchronized (generations) {
+			generations.remove(repository);
+		}
+	}
+
+	/**
+	 * Start a new generation for all repositories.
+	 */
+	public void clear() {
+		synchronized (generations) {
+			generations.clear();
+		}
+	}
+
+	/*
+	 * The answer of a repository does not depend on the resource of the
+	 * requirement, so requirements of different resources share their answer.
+	 */
+	static final class Key {
+		final String				namespace;
+		final Map<String,String>	directives;
+		final Map<String,Object>	attributes;
+		final int					hashcode;
+
+		Key(Requirement requirement) {
+			this.namespace = requirement.getNamespace();
+			this.directives = requirement.getDirectives();
+			this.attributes = requirement.getAttributes();
+			this.hashcode = (31 * namespace.hashCode() + directives.hashCode()) * 31 + attributes.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hashcode == other.hashcode && namespace.equals(other.namespace)
+					&& directives.equals(other.directives) && attributes.equals(other.attributes);
+		}
+	}
+}
@@ -0,0 +1,418 @@
+package biz.aQute.resolve;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.repository.Repository;
+import org.osgi.service.resolver.HostedCapability;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceUtils;
+import aQute.bnd.osgi.resource.ResourceUtils.ContentCapability;
+import aQute.bnd.osgi.resource.ResourceUtils.IdentityCapability;
+import aQute.bnd.service.repository.RepositoryDigest;
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import aQute.lib.json.JSONCodec;
+import aQute.libg.cryptography.Digester;
+import aQute.libg.cryptography.SHA1;
+
+/**
+ * A persistent cache of the resolutions of run models. A resolution is stored
+ * under a key that is the digest of the resolve relevant properties of the run
+ * model, the input and system resource it results in, and the content
+ * digest of each repository. If any of these change, the key changes and the
+ * stored resolution is no longer used. Only repositories that implement
+ * {@link RepositoryDigest} can tell that their content has not changed without
+ * enumerating it, so a run model is not cached when it uses another
+ * repository.
+ * <p>
+ * The resolved resources are stored by identity, version and content hash and
+ * are looked up in the repositories again when the resolution is used. The
+ * wires are stored as indexes into the requirements and capabilities of these
+ * resources. A resolution that cannot be restored in this way is not stored.
+ * <p>
+ * Resolution callbacks are not called for a resolution that comes from the
+ * cache.
+ */
+public class ResolutionCache {
+	private final static JSONCodec	codec	= new JSONCodec();
+
+	static final String[]			KEYS	= {
+			Constants.RUNREQUIRES, Constants.RUNFW, Constants.RUNEE, Constants.RUNBLACKLIST, Constants.RUNREPOS,
+			Constants.RUNSYSTEMPACKAGES, Constants.RUNSYSTEMCAPABILITIES, Constants.RUNPROVIDEDCAPABILITIES,
+			Constants.RUNPATH, Constants.DISTRO, Constants.AUGMENT, BndrunResolveContext.RUN_EFFECTIVE_INSTRUCTION,
+			BndrunResolveContext.PROP_RESOLVE_PREFERENCES
+	};
+
+	static final int				INPUT	= -1;
+	static final int				SYSTEM	= -2;
+
+	public static class ResolutionDTO {
+		public String				key;
+		public List<ResourceDTO>	resources	= new ArrayList<>();
+		public List<WiringDTO>		required	= new ArrayList<>();
+		public List<WiringDTO>		optional	= new ArrayList<>();
+	}
+
+	public static class ResourceDTO {
+		public String	identity;
+		public String	version;
+		public String	content;
+	}
+
+	/**
+	 * The wires to a resource. Resources are referred to by their index in the
+	 * resources, {@link #INPUT} or {@link #SYSTEM}.
+	 */
+	public static class WiringDTO {
+		public int				resource;
+		public List<WireDTO>	wires	= new ArrayList<>();
+	}
+
+	public static class WireDTO {
+		public int	requirer;
+		public int	requirementResource;
+		public int	requirement;
+		public int	provider;
+		public int	capabilityResource;
+		public int	capability;
+	}
+
+	/**
+	 * The result of a resolve that was stored in or restored from the cache.
+	 */
+	public static class Resolution {
+		public final Map<Resource,List<Wire>>	required;
+		public final Map<Resource,List<Wire>>	optional;
+
+		public Resolution(Map<Resource,List<Wire>> required, Map<Resource,List<Wire>> optional) {
+			this.required = required;
+			this.optional = optional;
+		}
+	}
+
+	private final File dir;
+
+	public ResolutionCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Return the cache of the workspace of the project if the
+	 * {@link Constants#RESOLVECACHE} instruction is set in the properties.
+	 * 
+	 * @return the cache or {@code null} if resolutions should not be cached
+	 */
+	public static ResolutionCache getCache(Processor properties, Project project) {
+		if (project == null || !Processor.isTrue(properties.getProperty(Constants.RESOLVECACHE)))
+			return null;
+
+		Workspace workspace = project.getWorkspace();
+		if (workspace == null)
+			return null;
+
+		return new ResolutionCache(workspace.getCache("resolve"));
+	}
+
+	/**
+	 * Calculate the key of a resolution. This initializes the context.
+	 * 
+	 * @return the key or {@code null} if a repository does not provide the
+	 *         digest of its content
+	 */
+	public String getKey(Processor properties, BndrunResolveContext context) throws Exception {
+		context.init();
+
+		Digester<SHA1> digester = SHA1.getDigester();
+		StringBuilder sb = new StringBuilder();
+		for (String key : KEYS) {
+			sb.append(key).append('=').append(properties.mergeProperties(key)).append('\n');
+		}
+		append(sb, context.getInputResource());
+		append(sb, context.getSystemResource());
+		for (Repository repository : context.getRepositories()) {
+			String digest = getDigest(repository);
+			if (digest == null)
+				return null;
+			sb.append("repository=").append(digest).append('\n');
+		}
+		digester.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+		return digester.digest().asHex();
+	}
+
+	private static void append(StringBuilder sb, Resource resource) {
+		if (resource == null)
+			return;
+		for (Capability capability : resource.getCapabilities(null))
+			sb.append(capability).append('\n');
+		for (Requirement requirement : resource.getRequirements(null))
+			sb.append(requirement).append('\n');
+	}
+
+	/**
+	 * The digest of the content of a repository, or {@code null} if the
+	 * repository does not provide it. Enumerating the content of other
+	 * repositories on every resolve would cost more than the cache saves.
+	 */
+	static String getDigest(Repository repository) throws Exception {
+		if (!(repository instanceof RepositoryDigest))
+			return null;
+
+		byte[] digest = ((RepositoryDigest) repository).getDigest();
+		return digest == null ? null : Hex.toHexString(digest);
+	}
+
+	private static String getContent(Resource resource) {
+		ContentCapability content = ResourceUtils.getContentCapability(resource);
+		if (content != null && content.osgi_content() != null)
+			return content.osgi_content();
+
+		IdentityCapability identity = ResourceUtils.getIdentityCapability(resource);
+		return identity == null ? resource.toString() : identity.osgi_identity() + ";" + identity.version();
+	}
+
+	/**
+	 * Get the stored resolution for the key.
+	 * 
+	 * @param name the name of the run model, the last resolution of each name
+	 *            is kept
+	 * @return the resolution or {@code null} if the resolution for this key is
+	 *         not stored or cannot be restored
+	 */
+	public Resolution get(String name, String key, BndrunResolveContext context) throws Exception {
+		File file = getFile(name);
+		if (!file.isFile())
+			return null;
+
+		ResolutionDTO dto = codec.dec().from(file).get(ResolutionDTO.class);
+		if (dto == null || !key.equals(dto.key))
+			return null;
+
+		List<Resource> resources = new ArrayList<>(dto.resources.size());
+		for (ResourceDTO r : dto.resources) {
+			Resource resource = find(context.getRepositories(), r);
+			if (resource == null)
+				return null;
+			resources.add(resource);
+		}
+
+		Map<Resource,List<Wire>> required = restore(dto.required, resources, context);
+		Map<Resource,List<Wire>> optional = restore(dto.optional, resources, context);
+		if (required == null || optional == null)
+			return null;
+
+		return new Resolution(required, optional);
+	}
+
+	/**
+	 * Store a resolution under the key.
+	 * 
+	 * @return {@code true} if the resolution could be stored
+	 */
+	public boolean put(String name, String key, BndrunResolveContext context, Resolution resolution)
+			throws Exception {
+		ResolutionDTO dto = new ResolutionDTO();
+		dto.key = key;
+
+		Map<Resource,Integer> refs = new HashMap<>();
+		List<WiringDTO> required = store(resolution.required, refs, dto.resources, context);
+		List<WiringDTO> optional = store(resolution.optional, refs, dto.resources, context);
+		if (required == null || optional == null)
+			return false;
+
+		dto.required = required;
+		dto.optional = optional;
+
+		//
+		// Write to a temporary file first, a concurrent resolve of the same
+		// run model must not read a partially written file
+		//
+		File file = getFile(name);
+		file.getParentFile().mkdirs();
+		File tmp = IO.createTempFile(file.getParentFile(), "resolution", ".tmp");
+		try {
+			codec.enc().to(tmp).put(dto);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			IO.delete(tmp);
+		}
+		return true;
+	}
+
+	private File getFile(String name) throws Exception {
+		return new File(dir, SHA1.digest(name.getBytes(StandardCharsets.UTF_8)).asHex() + ".json");
+	}
+
+	private static Resource find(List<Repository> repositories, ResourceDTO dto) {
+		Requirement requirement = CapReqBuilder
+				.createBundleRequirement(dto.identity, "[" + dto.version + "," + dto.version + "]")
+				.buildSyntheticRequirement();
+
+		for (Repository repository : repositories) {
+			Collection<Capability> capabilities = repository.findProviders(Collections.singleton(requirement))
+					.get(requirement);
+			if (capabilities == null)
+				continue;
+
+			for (Capability capability : capabilities) {
+				Resource resource = capability.getResource();
+				if (dto.content.equals(getContent(resource)))
+					return resource;
+			}
+		}
+		return null;
+	}
+
+	private static List<WiringDTO> store(Map<Resource,List<Wire>> wirings, Map<Resource,Integer> refs,
+			List<ResourceDTO> resources, BndrunResolveContext context) {
+		List<WiringDTO> result = new ArrayList<>(wirings.size());
+		for (Map.Entry<Resource,List<Wire>> entry : wirings.entrySet()) {
+			WiringDTO wiring = new WiringDTO();
+			wiring.resource = ref(entry.getKey(), refs, resources, context);
+			if (wiring.resource == Integer.MIN_VALUE)
+				return null;
+
+			for (Wire wire : entry.getValue()) {
+				Capability capability = wire.getCapability();
+				if (capability instanceof HostedCapability)
+					capability = ((HostedCapability) capability).getDeclaredCapability();
+				Requirement requirement = wire.getRequirement();
+
+				WireDTO w = new WireDTO();
+				w.requirer = ref(wire.getRequirer(), refs, resources, context);
+				w.provider = ref(wire.getProvider(), refs, resources, context);
+				w.capabilityResource = ref(capability.getResource(), refs, resources, context);
+				w.requirementResource = ref(requirement.getResource(), refs, resources, context);
+				if (w.requirer == Integer.MIN_VALUE || w.provider == Integer.MIN_VALUE
+						|| w.capabilityResource == Integer.MIN_VALUE || w.requirementResource == Integer.MIN_VALUE)
+					return null;
+
+				w.capability = capability.getResource().getCapabilities(null).indexOf(capability);
+				w.requirement = requirement.getResource().getRequirements(null).indexOf(requirement);
+				if (w.capability < 0 || w.requirement < 0)
+					return null;
+
+				wiring.wires.add(w);
+			}
+			result.add(wiring);
+		}
+		return result;
+	}
+
+	/*
+	 * Return the reference to a resource, adding it to the resources when it
+	 * is not known yet. Returns Integer.MIN_VALUE for a resource that cannot be
+	 * found again in the repositories.
+	 */
+	private static int ref(Resource resource, Map<Resource,Integer> refs, List<ResourceDTO> resources,
+			BndrunResolveContext context) {
+		if (context.isInputResource(resource))
+			return INPUT;
+		if (context.isSystemResource(resource))
+			return SYSTEM;
+
+		Integer ref = refs.get(resource);
+		if (ref != null)
+			return ref;
+
+		IdentityCapability identity = ResourceUtils.getIdentityCapability(resource);
+		if (identity == null || identity.osgi_identity() == null || identity.version() == null)
+			return Integer.MIN_VALUE;
+
+		ResourceDTO dto = new ResourceDTO();
+		dto.identity = identity.osgi_identity();
+		dto.version = identity.version().toString();
+		dto.content = getContent(resource);
+		resources.add(dto);
+		refs.put(resource, resources.size() - 1);
+		return resources.size() - 1;
+	}
+
+	private static Map<Resource,List<Wire>> restore(List<WiringDTO> wirings, List<Resource> resources,
+			BndrunResolveContext context) {
+		Map<Resource,List<Wire>> result = new LinkedHashMap<>();
+		for (WiringDTO wiring : wirings) {
+			List<Wire> wires = new ArrayList<>(wiring.wires.size());
+			for (WireDTO w : wiring.wires) {
+				List<Capability> capabilities = resolve(w.capabilityResource, resources, context).getCapabilities(null);
+				List<Requirement> requirements = resolve(w.requirementResource, resources, context)
+						.getRequirements(null);
+				if (w.capability >= capabilities.size() || w.requirement >= requirements.size())
+					return null;
+
+				wires.add(new CachedWire(capabilities.get(w.capability), requirements.get(w.requirement),
+						resolve(w.provider, resources, context), resolve(w.requirer, resources, context)));
+			}
+			result.put(resolve(wiring.resource, resources, context), wires);
+		}
+		return result;
+	}
+
+	private static Resource resolve(int ref, List<Resource> resources, BndrunResolveContext context) {
+		switch (ref) {
+			case INPUT :
+				return context.getInputResource();
+			case SYSTEM :
+				return context.getSystemResource();
+			default :
+				return resources.get(ref);
+		}
+	}
+
+	static class CachedWire implements Wire {
+		private final Capability	capability;
+		private final Requirement	requirement;
+		private final Resource		provider;
+		private final Resource		requirer;
+
+		CachedWire(Capability capability, Requirement requirement, Resource provider, Resource requirer) {
+			this.capability = capability;
+			this.requirement = requirement;
+			this.provider = provider;
+			this.requirer = requirer;
+		}
+
+		@Override
+		public Capability getCapability() {
+			return capability;
+		}
+
+		@Override
+		public Requirement getRequirement() {
+			return requirement;
+		}
+
+		@Override
+		public Resource getProvider() {
+			return provider;
+		}
+
+		@Override
+		public Resource getRequirer() {
+			return requirer;
+		}
+
+		@Override
+		public String toString() {
+			return requirement + " -> " + capability;
+		}
+	}
+}
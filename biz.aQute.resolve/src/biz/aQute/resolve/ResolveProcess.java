@@ -5,6 +5,7 @@ import static org.osgi.framework.namespace.IdentityNamespace.IDENTITY_NAMESPACE;
 import static org.osgi.resource.Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE;
 import static org.osgi.resource.Namespace.RESOLUTION_OPTIONAL;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -62,10 +63,73 @@ public class ResolveProcess {
 
 	public Map<Resource,List<Wire>> resolveRequired(Processor properties, Project project, Registry plugins,
 			Resolver resolver, Collection<ResolutionCallback> callbacks, LogService log) throws ResolutionException {
+		ResolutionCache cache = ResolutionCache.getCache(properties, project);
+		File file = properties.getPropertiesFile();
+		if (cache == null || file == null)
+			return resolve(properties, project, plugins, resolver, callbacks, log);
+
+		return resolveRequired(cache, file.getAbsolutePath(), properties, project, plugins, resolver, callbacks,
+				log);
+	}
+
+	/**
+	 * Resolve with a resolution cache. When the cache holds a resolution for
+	 * the same inputs and repository contents it is used instead of resolving.
+	 * Otherwise the resolution is stored in the cache.
+	 * 
+	 * @param cache the resolution cache
+	 * @param name the name of the run model in the cache
+	 */
+	public Map<Resource,List<Wire>> resolveRequired(ResolutionCache cache, String name, Processor properties,
+			Project project, Registry plugins, Resolver resolver, Collection<ResolutionCallback> callbacks,
+			LogService log) throws ResolutionException {
+		BndrunResolveContext rc = new BndrunResolveContext(properties, project, plugins, log);
+		String key = null;
+		try {
+			key = cache.getKey(properties, rc);
+			if (key == null)
+				log.log(LogService.LOG_INFO, "The resolution cache is off for " + name
+						+ ", a repository does not provide the digest of its content");
+			ResolutionCache.Resolution cached = key == null ? null : cache.get(name, key, rc);
+			if (cached != null) {
+				log.log(LogService.LOG_INFO, "Using cached resolution for " + name);
+				required = new HashMap<Resource,List<Wire>>(cached.required);
+				optional = cached.optional;
+				return cached.required;
+			}
+		} catch (Exception e) {
+			log.log(LogService.LOG_WARNING, "Cannot use the resolution cache for " + name, e);
+			// start over with a context that is not half initialized
+			rc = new BndrunResolveContext(properties, project, plugins, log);
+			key = null;
+		}
+
+		// the context is initialized already, use it for the resolve
+		Map<Resource,List<Wire>> result = resolve(rc, properties, project, plugins, resolver, callbacks, log);
+
+		if (key != null) {
+			try {
+				if (!cache.put(name, key, rc, new ResolutionCache.Resolution(result, optional)))
+					log.log(LogService.LOG_DEBUG, "Resolution for " + name + " cannot be cached");
+			} catch (Exception e) {
+				log.log(LogService.LOG_WARNING, "Cannot store the resolution of " + name, e);
+			}
+		}
+		return result;
+	}
+
+	private Map<Resource,List<Wire>> resolve(Processor properties, Project project, Registry plugins,
+			Resolver resolver, Collection<ResolutionCallback> callbacks, LogService log) throws ResolutionException {
+		return resolve(new BndrunResolveContext(properties, project, plugins, log), properties, project, plugins,
+				resolver, callbacks, log);
+	}
+
+	private Map<Resource,List<Wire>> resolve(BndrunResolveContext rc, Processor properties, Project project,
+			Registry plugins, Resolver resolver, Collection<ResolutionCallback> callbacks, LogService log)
+			throws ResolutionException {
 		required = new HashMap<Resource,List<Wire>>();
 		optional = new HashMap<Resource,List<Wire>>();
 
-		BndrunResolveContext rc = new BndrunResolveContext(properties, project, plugins, log);
 		rc.addCallbacks(callbacks);
 		// 1. Resolve initial requirements
 		try {
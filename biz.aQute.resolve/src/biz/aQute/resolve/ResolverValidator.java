@@ -11,10 +11,19 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.felix.resolver.ResolverImpl;
 import org.osgi.resource.Capability;
@@ -41,6 +50,7 @@ public class ResolverValidator extends Processor {
 	Resolver	resolver		= new ResolverImpl(reporter, null);
 	List<URI>	repositories	= new ArrayList<>();
 	Resource	system			= null;
+	int			threads			= 1;
 
 	public static class Resolution {
 		public Resource				resource;
@@ -69,6 +79,16 @@ public class ResolverValidator extends Processor {
 		this.system = resource;
 	}
 
+	/**
+	 * Set the number of threads used to resolve the resources. With more than
+	 * one thread the resources are resolved concurrently.
+	 * 
+	 * @param threads the number of threads, 1 resolves one resource at a time
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
 	public List<Resolution> validate() throws Exception {
 		FixedIndexedRepo repository = getRepository();
 		Set<Resource> resources = getAllResources(repository);
@@ -93,24 +113,112 @@ public class ResolverValidator extends Processor {
 
 	public List<Resolution> validateResources(Repository repository, Collection<Resource> resources) throws Exception {
 		setProperty("-runfw", "dummy");
+		if (threads > 1 && resources.size() > 1)
+			return validateConcurrently(repository, resources);
+
 		List<Resolution> result = new ArrayList<>();
-		List<Resource> resourceList = new ArrayList<>(resources);
+		Set<Resource> resourceList = new LinkedHashSet<>(resources);
 		while (!resourceList.isEmpty()) {
-			Resource resource = resourceList.remove(0);
+			Iterator<Resource> first = resourceList.iterator();
+			Resource resource = first.next();
+			first.remove();
 			Resolution resolution = resolve(repository, resource);
 			result.add(resolution);
 			for (Resource resolved : resolution.resolved) {
 				if (resourceList.remove(resolved)) {
-					Resolution curResolution = new Resolution();
-					curResolution.resource = resolved;
-					curResolution.succeeded = true;
-					result.add(curResolution);
+					result.add(resolved(resolved));
 				}
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Resolve the resources concurrently. All resolves share one indexed view
+	 * of the repository that is not modified anymore. Each resolve has its own
+	 * properties, resolver and reporter, the reports are merged in the order
+	 * of the resources afterwards. A resource that is part of the resolution
+	 * of an earlier resolve is not resolved again.
+	 * <p>
+	 * The result is ordered like the result of a serial validation: each
+	 * resolved resource is followed by the resources that are part of its
+	 * resolution. A resource that was skipped by a worker but comes first in
+	 * that order is resolved again on the calling thread.
+	 * 
+	 * @return the resolutions in the order of a serial validation
+	 */
+	List<Resolution> validateConcurrently(Repository repository, Collection<Resource> resources) throws Exception {
+		final Repository view = repository instanceof ResourcesRepository ? repository
+				: new ResourcesRepository(getAllResources(repository));
+		final Set<Resource> proven = Collections.newSetFromMap(new ConcurrentHashMap<Resource,Boolean>());
+
+		// the plugins are initialized lazily, the workers only read them
+		getPlugins();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Map<Resource,Future<Resolution>> futures = new LinkedHashMap<>();
+			List<Processor> reporters = new ArrayList<>();
+			for (final Resource resource : new LinkedHashSet<>(resources)) {
+				final Processor properties = new Processor(this);
+				properties.setTrace(isTrace());
+				reporters.add(properties);
+				futures.put(resource, executor.submit(new Callable<Resolution>() {
+					@Override
+					public Resolution call() throws Exception {
+						if (proven.contains(resource))
+							return null;
+
+						LogReporter log = new LogReporter(properties);
+						Resolution resolution = resolve(properties, new ResolverImpl(log, null), log, view, resource);
+						if (resolution.succeeded)
+							proven.addAll(resolution.resolved);
+						return resolution;
+					}
+				}));
+			}
+
+			Map<Resource,Resolution> resolutions = new HashMap<>();
+			Iterator<Processor> r = reporters.iterator();
+			for (Entry<Resource,Future<Resolution>> e : futures.entrySet()) {
+				resolutions.put(e.getKey(), e.getValue().get());
+				getInfo(r.next());
+			}
+
+			List<Resolution> result = new ArrayList<>();
+			Set<Resource> resourceList = new LinkedHashSet<>(futures.keySet());
+			while (!resourceList.isEmpty()) {
+				Iterator<Resource> first = resourceList.iterator();
+				Resource resource = first.next();
+				first.remove();
+				Resolution resolution = resolutions.get(resource);
+				if (resolution == null) {
+					Processor properties = new Processor(this);
+					properties.setTrace(isTrace());
+					LogReporter log = new LogReporter(properties);
+					resolution = resolve(properties, new ResolverImpl(log, null), log, view, resource);
+					getInfo(properties);
+				}
+				result.add(resolution);
+				for (Resource resolved : resolution.resolved) {
+					if (resourceList.remove(resolved)) {
+						result.add(resolved(resolved));
+					}
+				}
+			}
+			return result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Resolution resolved(Resource resource) {
+		Resolution resolution = new Resolution();
+		resolution.resource = resource;
+		resolution.succeeded = true;
+		return resolution;
+	}
+
 	public static Set<Resource> getAllResources(Repository repository) {
 		Requirement r = createWildcardRequirement();
 
@@ -119,8 +227,8 @@ public class ResolverValidator extends Processor {
 		return resources;
 	}
 
-	private BndrunResolveContext getResolveContext() throws Exception {
-		BndrunResolveContext context = new BndrunResolveContext(this, null, this, reporter) {
+	private BndrunResolveContext getResolveContext(Processor properties, LogReporter reporter) throws Exception {
+		BndrunResolveContext context = new BndrunResolveContext(properties, null, this, reporter) {
 			@Override
 			void loadFramework(ResourceBuilder systemBuilder) throws Exception {
 				systemBuilder.addCapabilities(system.getCapabilities(null));
@@ -135,12 +243,17 @@ public class ResolverValidator extends Processor {
 	}
 
 	public Resolution resolve(Repository repository, Resource resource) throws Exception {
+		return resolve(this, resolver, reporter, repository, resource);
+	}
+
+	private Resolution resolve(Processor properties, Resolver resolver, LogReporter reporter, Repository repository,
+			Resource resource) throws Exception {
 		Resolution resolution = new Resolution();
 
 		Requirement identity = getIdentity(resource);
-		setProperty("-runrequires", ResourceUtils.toRequireCapability(identity));
+		properties.setProperty("-runrequires", ResourceUtils.toRequireCapability(identity));
 
-		BndrunResolveContext context = getResolveContext();
+		BndrunResolveContext context = getResolveContext(properties, reporter);
 
 		context.addRepository(repository);
 		context.init();
@@ -152,15 +265,15 @@ public class ResolverValidator extends Processor {
 			resolution.succeeded = true;
 			resolution.resolved = resolve2.keySet();
 
-			trace("resolving %s succeeded", resource);
+			properties.trace("resolving %s succeeded", resource);
 		} catch (ResolutionException e) {
-			trace("resolving %s failed", resource);
+			properties.trace("resolving %s failed", resource);
 
 			resolution.succeeded = false;
 			resolution.message = e.getMessage();
 
 			for (Requirement req : e.getUnresolvedRequirements()) {
-				trace("    missing %s", req);
+				properties.trace("    missing %s", req);
 				resolution.unresolved.add(req);
 			}
 
@@ -185,19 +298,19 @@ public class ResolverValidator extends Processor {
 							resolution.missing.add(r);
 
 					} else {
-						trace("     found %s in repo", r);
+						properties.trace("     found %s in repo", r);
 						resolution.repos.add(r);
 					}
 				} else {
-					trace("     found %s in system", r);
+					properties.trace("     found %s in system", r);
 					resolution.system.add(r);
 				}
 			}
 
-			error("resolving %s failed with %s", resource, resolution.message);
+			properties.error("resolving %s failed with %s", resource, resolution.message);
 		} catch (Exception e) {
 			e.printStackTrace();
-			error("resolving %s failed with %s", context.getInputResource().getRequirements(null), e);
+			properties.error("resolving %s failed with %s", context.getInputResource().getRequirements(null), e);
 			resolution.message = e.getMessage();
 		}
 
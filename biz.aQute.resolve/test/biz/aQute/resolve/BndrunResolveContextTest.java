@@ -9,8 +9,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.resource.Capability;
 import org.osgi.resource.Namespace;
@@ -22,6 +27,7 @@ import org.osgi.service.repository.Repository;
 import aQute.bnd.build.model.BndEditModel;
 import aQute.bnd.build.model.EE;
 import aQute.bnd.build.model.clauses.ExportedPackage;
+import aQute.bnd.deployer.repository.FixedIndexedRepo;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.osgi.resource.CapReqBuilder;
 import aQute.bnd.osgi.resource.ResourceUtils;
@@ -246,6 +252,163 @@ public class BndrunResolveContextTest extends TestCase {
 				findContentURI(resource));
 	}
 
+	public static void testBatchFindProviders() {
+		Requirement gogo = new CapReqBuilder("osgi.wiring.package")
+				.addDirective("filter", "(osgi.wiring.package=org.apache.felix.gogo.api)").buildSyntheticRequirement();
+		Requirement unknown = new CapReqBuilder("osgi.wiring.package")
+				.addDirective("filter", "(osgi.wiring.package=does.not.exist)").buildSyntheticRequirement();
+
+		MockRegistry registry = new MockRegistry();
+		registry.addPlugin(createRepo(IO.getFile("testdata/repo2.index.xml")));
+		registry.addPlugin(createRepo(IO.getFile("testdata/repo1.index.xml")));
+
+		BndrunResolveContext context = new BndrunResolveContext(new BndEditModel(), registry, log);
+		Map<Requirement,List<Capability>> providers = context.findProviders(Arrays.asList(gogo, unknown));
+		assertEquals(Arrays.asList(gogo, unknown), new ArrayList<Requirement>(providers.keySet()));
+
+		List<Capability> caps = providers.get(gogo);
+		assertEquals(2, caps.size());
+		assertEquals(IO.getFile("testdata/repo2/org.apache.felix.gogo.runtime-0.10.0.jar").toURI(),
+				findContentURI(caps.get(0).getResource()));
+		assertEquals(IO.getFile("testdata/repo1/org.apache.felix.gogo.runtime-0.10.0.jar").toURI(),
+				findContentURI(caps.get(1).getResource()));
+		assertEquals(caps, context.findProviders(gogo));
+
+		assertEquals(0, providers.get(unknown).size());
+		assertTrue(context.getFailed().contains(unknown));
+	}
+
+	public static void testFindProvidersHooks() {
+		Requirement gogo = new CapReqBuilder("osgi.wiring.package")
+				.addDirective("filter", "(osgi.wiring.package=org.apache.felix.gogo.api)").buildSyntheticRequirement();
+		Requirement unknown = new CapReqBuilder("osgi.wiring.package")
+				.addDirective("filter", "(osgi.wiring.package=does.not.exist)").buildSyntheticRequirement();
+
+		MockRegistry registry = new MockRegistry();
+		final Repository repo2 = createRepo(IO.getFile("testdata/repo2.index.xml"));
+		registry.addPlugin(repo2);
+		registry.addPlugin(createRepo(IO.getFile("testdata/repo1.index.xml")));
+
+		final List<Requirement> fromRepositories = new ArrayList<Requirement>();
+		BndrunResolveContext context = new BndrunResolveContext(new BndEditModel(), registry, log) {
+			@Override
+			protected Collection<Capability> findProviders(Repository repo, Requirement requirement) {
+				return repo == repo2 ? Collections.<Capability> emptySet() : super.findProviders(repo, requirement);
+			}
+
+			@Override
+			protected ArrayList<Capability> findProvidersFromRepositories(Requirement requirement,
+					LinkedHashSet<Capability> existingWiredCapabilities) {
+				fromRepositories.add(requirement);
+				return super.findProvidersFromRepositories(requirement, existingWiredCapabilities);
+			}
+		};
+
+		List<Capability> caps = context.findProviders(gogo);
+		assertEquals(1, caps.size());
+		assertEquals(IO.getFile("testdata/repo1/org.apache.felix.gogo.runtime-0.10.0.jar").toURI(),
+				findContentURI(caps.get(0).getResource()));
+
+		context.findProviders(Arrays.asList(unknown));
+		assertEquals(Arrays.asList(gogo, unknown), fromRepositories);
+	}
+
+	public static void testParallelQueries() {
+		Requirement gogo = new CapReqBuilder("osgi.wiring.package")
+				.addDirective("filter", "(osgi.wiring.package=org.apache.felix.gogo.api)").buildSyntheticRequirement();
+
+		MockRegistry registry = new MockRegistry();
+		registry.addPlugin(createRepo(IO.getFile("testdata/repo2.index.xml")));
+		registry.addPlugin(createRepo(IO.getFile("testdata/repo1.index.xml")));
+
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		BndrunResolveContext context = new BndrunResolveContext(new BndEditModel(), registry, log) {
+			@Override
+			protected Collection<Capability> findProviders(Repository repo, Requirement requirement) {
+				threads.add(Thread.currentThread());
+				return super.findProviders(repo, requirement);
+			}
+		};
+
+		// by default the repositories are queried on the calling thread
+		List<Capability> caps = context.findProviders(gogo);
+		assertEquals(2, caps.size());
+		assertEquals(Collections.singleton(Thread.currentThread()), threads);
+
+		context = new BndrunResolveContext(new BndEditModel(), registry, log) {
+			@Override
+			protected Collection<Capability> findProviders(Repository repo, Requirement requirement) {
+				threads.add(Thread.currentThread());
+				return super.findProviders(repo, requirement);
+			}
+		};
+		context.init();
+		context.setParallelQueries(true);
+		assertEquals(caps, context.findProviders(gogo));
+	}
+
+	public static void testSharedProviderCache() throws Exception {
+		final AtomicInteger queries = new AtomicInteger();
+		FixedIndexedRepo repo = new FixedIndexedRepo() {
+			@Override
+			public Map<Requirement,Collection<Capability>> findProviders(
+					Collection< ? extends Requirement> requirements) {
+				queries.addAndGet(requirements.size());
+				return super.findProviders(requirements);
+			}
+		};
+		repo.setProperties(Collections.singletonMap(FixedIndexedRepo.PROP_LOCATIONS,
+				IO.getFile("testdata/repo1.index.xml").toURI().toString()));
+
+		MockRegistry registry = new MockRegistry();
+		registry.addPlugin(repo);
+		ProviderCache cache = new ProviderCache();
+
+		Requirement gogo = new CapReqBuilder("osgi.wiring.package")
+				.addDirective("filter", "(osgi.wiring.package=org.apache.felix.gogo.api)").buildSyntheticRequirement();
+		Requirement unknown = new CapReqBuilder("osgi.wiring.package")
+				.addDirective("filter", "(osgi.wiring.package=does.not.exist)").buildSyntheticRequirement();
+
+		BndrunResolveContext context = new BndrunResolveContext(new BndEditModel(), registry, log);
+		context.init();
+		context.setProviderCache(cache);
+		int count = queries.get();
+		assertEquals(1, context.findProviders(gogo).size());
+		assertEquals(0, context.findProviders(unknown).size());
+		assertEquals(count + 2, queries.get());
+
+		// A second context gets both the positive and the negative answer
+		// from the cache
+		context = new BndrunResolveContext(new BndEditModel(), registry, log);
+		context.init();
+		context.setProviderCache(cache);
+		count = queries.get();
+		assertEquals(1, context.findProviders(gogo).size());
+		assertEquals(0, context.findProviders(unknown).size());
+		assertEquals(count, queries.get());
+
+		// A refresh that reads the same content keeps the generation
+		repo.refresh();
+		context = new BndrunResolveContext(new BndEditModel(), registry, log);
+		context.init();
+		context.setProviderCache(cache);
+		count = queries.get();
+		assertEquals(1, context.findProviders(gogo).size());
+		assertEquals(count, queries.get());
+
+		// A change of the content starts a new generation, no event is
+		// needed
+		repo.setProperties(Collections.singletonMap(FixedIndexedRepo.PROP_LOCATIONS,
+				IO.getFile("testdata/repo2.index.xml").toURI().toString()));
+		repo.reset();
+		context = new BndrunResolveContext(new BndEditModel(), registry, log);
+		context.init();
+		context.setProviderCache(cache);
+		count = queries.get();
+		assertEquals(1, context.findProviders(gogo).size());
+		assertEquals(count + 1, queries.get());
+	}
+
 	public static void testReorderRepositories() {
 		Requirement req = new CapReqBuilder("osgi.wiring.package")
 				.addDirective("filter", "(osgi.wiring.package=org.apache.felix.gogo.api)").buildSyntheticRequirement();
@@ -11,15 +11,21 @@ import java.net.URISyntaxException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 import org.osgi.resource.Wire;
+import org.osgi.service.repository.Repository;
 import org.osgi.service.resolver.ResolutionException;
 
 import aQute.bnd.deployer.repository.FixedIndexedRepo;
@@ -141,6 +147,93 @@ public class ResolveProcessTest extends TestCase {
 				"org.osgi.service.cm", "org.osgi.service.log", "org.osgi.service.metatype");
 	}
 
+	public void testResolutionCache() throws Exception {
+		File tmp = IO.getFile("generated/tmp/resolutioncache");
+		IO.delete(tmp);
+		try {
+			ResolutionCache cache = new ResolutionCache(tmp);
+			ResolverLogger logger = new ResolverLogger();
+
+			MockRegistry registry = new MockRegistry();
+			registry.addPlugin(getIndex("testdata/repo7/index.xml"));
+
+			Processor model = new Processor();
+			model.setProperty("-runfw", "org.apache.felix.framework");
+			model.setProperty("-runrequires",
+					"osgi.extender;filter:='(&(osgi.extender=osgi.component)(version>=1.3)(!(version>=2)))'");
+
+			ResolveProcess process = new ResolveProcess();
+			Map<Resource,List<Wire>> resolved = process.resolveRequired(cache, "test", model, null, registry,
+					new BndResolver(logger), Collections.<ResolutionCallback> emptyList(), logger);
+			assertEquals(1, tmp.list().length);
+
+			final AtomicInteger callbacks = new AtomicInteger();
+			ResolutionCallback callback = new ResolutionCallback() {
+				@Override
+				public void processCandidates(Requirement requirement, Set<Capability> wired,
+						List<Capability> candidates) {
+					callbacks.incrementAndGet();
+				}
+			};
+
+			ResolveProcess cached = new ResolveProcess();
+			Map<Resource,List<Wire>> fromCache = cached.resolveRequired(cache, "test", model, null, registry,
+					new BndResolver(logger), Collections.singleton(callback), logger);
+			assertEquals(0, callbacks.get());
+			assertEquals(resolved.keySet(), fromCache.keySet());
+			assertEquals(new HashSet<Resource>(process.getOptionalResources()),
+					new HashSet<Resource>(cached.getOptionalResources()));
+			for (Resource resource : resolved.keySet()) {
+				assertEquals(resolved.get(resource).size(), fromCache.get(resource).size());
+			}
+			for (Resource resource : process.getOptionalResources()) {
+				assertEquals(process.getOptionalReasons(resource).size(),
+						cached.getOptionalReasons(resource).size());
+			}
+
+			model.setProperty("-runblacklist", "osgi.identity;filter:='(osgi.identity=osgi.cmpn)'");
+			ResolveProcess changed = new ResolveProcess();
+			changed.resolveRequired(cache, "test", model, null, registry, new BndResolver(logger),
+					Collections.singleton(callback), logger);
+			assertTrue(callbacks.get() > 0);
+		} finally {
+			IO.delete(tmp);
+		}
+	}
+
+	public void testResolutionCacheOffWithoutDigest() throws Exception {
+		File tmp = IO.getFile("generated/tmp/resolutioncache");
+		IO.delete(tmp);
+		try {
+			ResolutionCache cache = new ResolutionCache(tmp);
+			ResolverLogger logger = new ResolverLogger();
+
+			// a repository that does not provide the digest of its content
+			final FixedIndexedRepo index = getIndex("testdata/repo7/index.xml");
+			MockRegistry registry = new MockRegistry();
+			registry.addPlugin(new Repository() {
+				@Override
+				public Map<Requirement,Collection<Capability>> findProviders(
+						Collection< ? extends Requirement> requirements) {
+					return index.findProviders(requirements);
+				}
+			});
+
+			Processor model = new Processor();
+			model.setProperty("-runfw", "org.apache.felix.framework");
+			model.setProperty("-runrequires",
+					"osgi.extender;filter:='(&(osgi.extender=osgi.component)(version>=1.3)(!(version>=2)))'");
+
+			ResolveProcess process = new ResolveProcess();
+			Map<Resource,List<Wire>> resolved = process.resolveRequired(cache, "test", model, null, registry,
+					new BndResolver(logger), Collections.<ResolutionCallback> emptyList(), logger);
+			assertFalse(resolved.isEmpty());
+			assertFalse(tmp.isDirectory() && tmp.list().length > 0);
+		} finally {
+			IO.delete(tmp);
+		}
+	}
+
 	protected FixedIndexedRepo getIndex(String location) throws MalformedURLException, URISyntaxException {
 		File index = IO.getFile(location);
 		FixedIndexedRepo fir = new FixedIndexedRepo();
@@ -1,6 +1,8 @@
 package biz.aQute.resolve;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.osgi.framework.namespace.PackageNamespace;
 import org.osgi.resource.Resource;
@@ -108,6 +110,60 @@ public class ValidatorTest extends TestCase {
 		}
 	}
 
+	public void testConcurrentSameAsSerial() throws Exception {
+		List<Resolution> serial = validate(1, "testdata/enroute/index.xml");
+		List<Resolution> concurrent = validate(4, "testdata/enroute/index.xml");
+		assertEquals(serial.size(), concurrent.size());
+		assertEquals(succeeded(serial), succeeded(concurrent));
+		for (int i = 0; i < serial.size(); i++)
+			assertEquals(serial.get(i).resource, concurrent.get(i).resource);
+	}
+
+	public void testConcurrentDelibarateFail() throws Exception {
+		try (ResolverValidator validator = new ResolverValidator();) {
+			ResourceBuilder system = new ResourceBuilder();
+			system.addEE(EE.JavaSE_1_8);
+			system.addManifest(OSGI_CORE.R6_0_0.getManifest());
+			validator.setSystem(system.build());
+			validator.setThreads(4);
+			List<Resource> resources = XMLResourceParser
+					.getResources(IO.getFile("testdata/repo5-broken.index.xml").toURI());
+			resources.addAll(XMLResourceParser
+					.getResources(IO.getFile("testdata/osgi.cmpn-4.3.0.index.xml").toURI()));
+			List<Resolution> resolutions = validator.validate(resources);
+			assertEquals(1, validator.getErrors().size());
+			assertFalse(validator.check());
+			assertEquals(resources.size(), resolutions.size());
+			assertFalse(resolutions.get(0).succeeded);
+			assertTrue(resolutions.get(0).message.contains("missing requirement org.apache.felix.gogo.api"));
+		}
+	}
+
+	private List<Resolution> validate(int threads, String index) throws Exception {
+		try (ResolverValidator validator = new ResolverValidator();) {
+			ResourceBuilder system = new ResourceBuilder();
+			system.addEE(EE.JavaSE_1_8);
+			system.addManifest(OSGI_CORE.R6_0_0.getManifest());
+			validator.setSystem(system.build());
+			validator.setThreads(threads);
+			validator.addRepository(IO.getFile(index).toURI());
+			List<Resolution> resolutions = validator.validate();
+			int failed = 0;
+			for (Resolution resolution : resolutions)
+				if (!resolution.succeeded)
+					failed++;
+			assertEquals(failed, validator.getErrors().size());
+			return resolutions;
+		}
+	}
+
+	private static Map<Resource,Boolean> succeeded(List<Resolution> resolutions) {
+		Map<Resource,Boolean> result = new HashMap<>();
+		for (Resolution resolution : resolutions)
+			assertNull(result.put(resolution.resource, resolution.succeeded));
+		return result;
+	}
+
 	public void _testLarger() throws Exception {
 		try (ResolverValidator validator = new ResolverValidator();) {
 			ResourceBuilder system = new ResourceBuilder();
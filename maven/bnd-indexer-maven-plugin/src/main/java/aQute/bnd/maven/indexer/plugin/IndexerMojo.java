@@ -95,6 +95,9 @@ public class IndexerMojo extends AbstractMojo {
 	@Parameter(property = "bnd.indexer.include.gzip", defaultValue = "true", readonly = true)
 	private boolean						includeGzip;
 
+	@Parameter(property = "bnd.indexer.cache.dir", defaultValue = "${project.build.directory}/index-cache")
+	private File						cacheDir;
+
 	@Parameter(defaultValue = "false", readonly = true)
 	private boolean						skip;
     
@@ -176,6 +179,9 @@ public class IndexerMojo extends AbstractMojo {
 
 		Map<String,String> config = new HashMap<String,String>();
 		config.put(ResourceIndexer.PRETTY, "true");
+		if (cacheDir != null) {
+			config.put(RepoIndex.CACHE, cacheDir.getAbsolutePath());
+		}
 
 		OutputStream output;
 		try {
@@ -51,6 +51,9 @@ public class LocalIndexerMojo extends AbstractMojo {
 	@Parameter(property = "bnd.indexer.include.gzip", defaultValue = "true", readonly = true)
 	private boolean						includeGzip;
 
+	@Parameter(property = "bnd.indexer.cache.dir", defaultValue = "${project.build.directory}/index-cache")
+	private File						cacheDir;
+
 	@Parameter(defaultValue = "false", readonly = true)
 	private boolean						skip;
 
@@ -88,6 +91,9 @@ public class LocalIndexerMojo extends AbstractMojo {
 
 		Map<String,String> config = new HashMap<String,String>();
 		config.put(ResourceIndexer.PRETTY, "true");
+		if (cacheDir != null) {
+			config.put(RepoIndex.CACHE, cacheDir.getAbsolutePath());
+		}
 
 		OutputStream output;
 		try {
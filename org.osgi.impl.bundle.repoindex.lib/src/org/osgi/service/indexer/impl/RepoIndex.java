@@ -9,29 +9,38 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.indexer.Capability;
+import org.osgi.service.indexer.Namespaces;
 import org.osgi.service.indexer.Requirement;
 import org.osgi.service.indexer.ResourceAnalyzer;
 import org.osgi.service.indexer.ResourceIndexer;
-import org.osgi.service.indexer.impl.types.TypedValue;
 import org.osgi.service.indexer.impl.util.AddOnlyList;
 import org.osgi.service.indexer.impl.util.Indent;
 import org.osgi.service.indexer.impl.util.Pair;
@@ -48,6 +57,22 @@ public class RepoIndex implements ResourceIndexer {
 	 */
 	public static final String							REPOSITORY_INCREMENT_OVERRIDE	= "-repository.increment.override";
 
+	/**
+	 * Name of the configuration variable for the number of resources that are
+	 * analyzed concurrently. The value is a number of threads or
+	 * <code>true</code> to use a thread per processor. The resources are
+	 * written in the same order as when they are analyzed one at a time.
+	 */
+	public static final String							PARALLEL						= "parallel";
+
+	/**
+	 * Name of the configuration variable for the directory of the resource
+	 * cache. When set, the resource elements are cached per file and reused
+	 * when the file, the analyzers, the configuration and the URLs returned by
+	 * the URL resolvers have not changed.
+	 */
+	public static final String							CACHE							= "cache";
+
 	/** the generic bundle analyzer */
 	private final BundleAnalyzer						bundleAnalyzer;
 
@@ -182,15 +207,7 @@ public class RepoIndex implements ResourceIndexer {
 			repoTag.addAttribute(Schema.ATTR_XML_NAMESPACE, Schema.NAMESPACE);
 
 			repoTag.printOpen(indent, pw, false);
-			for (File file : filesToIndex) {
-				try {
-					Tag resourceTag = generateResource(file, config);
-					resourceTag.print(indent.next(), pw);
-				} catch (Exception e) {
-					log(LogService.LOG_WARNING,
-							MessageFormat.format("Could not index {0}, skipped ({1}).", file, e), null);
-				}
-			}
+			writeResources(filesToIndex, config, indent.next(), pw);
 			repoTag.printClose(indent, pw);
 		} finally {
 			if (pw != null) {
@@ -221,70 +238,243 @@ public class RepoIndex implements ResourceIndexer {
 		else
 			pw = new PrintWriter(out);
 
-		for (File file : files) {
+		writeResources(files, config, Indent.PRETTY, pw);
+	}
+
+	/**
+	 * Write the resource elements for the files in the order of the files.
+	 * Files that cannot be indexed are skipped.
+	 */
+	private void writeResources(Collection<File> files, final Map<String,String> config, final Indent indent,
+			PrintWriter pw) throws Exception {
+		final ResourceCache cache = getCache(config);
+		final String configurationKey = cache != null ? getConfigurationKey(config, indent) : null;
+
+		int threads = getParallelism(config);
+		if (threads <= 1 || files.size() <= 1) {
+			for (File file : files) {
+				writeResource(file, config, indent, pw, cache, configurationKey);
+			}
+		} else {
+			writeResources(files, config, indent, pw, threads, cache, configurationKey);
+		}
+
+		if (cache != null)
+			cache.prune();
+	}
+
+	private void writeResources(Collection<File> files, final Map<String,String> config, final Indent indent,
+			PrintWriter pw, int threads, final ResourceCache cache, final String configurationKey) throws Exception {
+
+		//
+		// Each resource is written to a buffer by a worker thread. Only a
+		// limited number of resources are ahead of the one that is written
+		// next, so memory use does not depend on the number of files.
+		//
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Deque<Future<String>> pending = new ArrayDeque<Future<String>>();
+			Iterator<File> iterator = files.iterator();
+			while (iterator.hasNext() || !pending.isEmpty()) {
+				while (iterator.hasNext() && pending.size() < threads * 4) {
+					final File file = iterator.next();
+					pending.add(executor.submit(new Callable<String>() {
+						public String call() throws Exception {
+							StringWriter buffer = new StringWriter();
+							PrintWriter out = new PrintWriter(buffer);
+							writeResource(file, config, indent, out, cache, configurationKey);
+							out.flush();
+							return buffer.toString();
+						}
+					}));
+				}
+				try {
+					pw.print(pending.remove().get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw (Exception) cause;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static int getParallelism(Map<String,String> config) {
+		String parallel = config != null ? config.get(PARALLEL) : null;
+		if (parallel == null || parallel.equalsIgnoreCase("false"))
+			return 1;
+		if (parallel.equalsIgnoreCase("true"))
+			return Runtime.getRuntime().availableProcessors();
+		try {
+			return Integer.parseInt(parallel.trim());
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	private static ResourceCache getCache(Map<String,String> config) {
+		String dir = config != null ? config.get(CACHE) : null;
+		if (dir == null || dir.isEmpty())
+			return null;
+		return new ResourceCache(new File(dir));
+	}
+
+	/**
+	 * Answer a key for everything besides the file itself that influences the
+	 * resource elements
+	 */
+	private String getConfigurationKey(Map<String,String> config, Indent indent) throws Exception {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		synchronized (analyzers) {
+			for (Pair<ResourceAnalyzer,Filter> entry : analyzers) {
+				pw.println(entry.getFirst().getClass().getName());
+				pw.println(entry.getSecond());
+			}
+		}
+		pw.println(getRootURL(config));
+		pw.println(config.get(ResourceIndexer.URL_TEMPLATE));
+		indent.print(pw);
+		pw.flush();
+		return sw.toString();
+	}
+
+	/**
+	 * Answer the key of the cache entry of a file or null if the URL resolvers
+	 * fail for the file
+	 */
+	private String getResourceKey(File file, String configurationKey) {
+		StringBuilder sb = new StringBuilder(configurationKey);
+		for (URLResolver resolver : resolvers) {
 			try {
-				Tag resourceTag = generateResource(file, config);
-				resourceTag.print(Indent.PRETTY, pw);
+				sb.append('\n').append(resolver.resolver(file));
 			} catch (Exception e) {
-				log(LogService.LOG_WARNING,
-						MessageFormat.format("Could not index {0}, skipped ({1}).", file, e), null);
+				return null;
 			}
 		}
+		return sb.toString();
 	}
 
-	private Tag generateResource(File file, Map<String,String> config) throws Exception {
+	private void writeResource(File file, Map<String,String> config, Indent indent, PrintWriter pw,
+			ResourceCache cache, String configurationKey) {
+		String key = null;
+		if (cache != null) {
+			key = getResourceKey(file, configurationKey);
+			if (key != null) {
+				try {
+					String resource = cache.get(file, key);
+					if (resource != null) {
+						pw.print(resource);
+						return;
+					}
+				} catch (Exception e) {
+					log(LogService.LOG_WARNING,
+							MessageFormat.format("Could not read the cached resource of {0} ({1}).", file, e), null);
+				}
+			}
+		}
 
-		JarResource resource = new JarResource(file);
+		List<String> comments = new ArrayList<String>();
 		List<Capability> caps = new AddOnlyList<Capability>(new LinkedList<Capability>());
 		List<Requirement> reqs = new AddOnlyList<Requirement>(new LinkedList<Requirement>());
+		try {
+			generateResource(file, config, comments, caps, reqs);
+		} catch (Exception e) {
+			log(LogService.LOG_WARNING, MessageFormat.format("Could not index {0}, skipped ({1}).", file, e), null);
+			return;
+		}
 
-		Tag resourceTag = new Tag(Schema.ELEM_RESOURCE);
+		if (key == null) {
+			new ResourceWriter(pw).writeResource(indent, comments, caps, reqs);
+			return;
+		}
+
+		StringWriter buffer = new StringWriter();
+		PrintWriter out = new PrintWriter(buffer);
+		new ResourceWriter(out).writeResource(indent, comments, caps, reqs);
+		out.flush();
+		String resource = buffer.toString();
+		pw.print(resource);
+
+		// Resources with errors are analyzed again next time
+		if (comments.isEmpty()) {
+			try {
+				cache.put(file, key, getContentSHA(caps), resource);
+			} catch (Exception e) {
+				log(LogService.LOG_WARNING,
+						MessageFormat.format("Could not cache the resource of {0} ({1}).", file, e), null);
+			}
+		}
+	}
+
+	private static String getContentSHA(List<Capability> caps) {
+		for (Capability cap : caps) {
+			if (Namespaces.NS_CONTENT.equals(cap.getNamespace())) {
+				Object sha = cap.getAttributes().get(Namespaces.NS_CONTENT);
+				if (sha != null)
+					return sha.toString();
+			}
+		}
+		return null;
+	}
+
+	private static URL getRootURL(Map<String,String> config) throws MalformedURLException {
+		String rootURLStr = config.get(ResourceIndexer.ROOT_URL);
+		if (rootURLStr != null) {
+			File rootDir = new File(rootURLStr);
+			if (rootDir.isDirectory())
+				return rootDir.toURI().toURL();
+			return new URL(rootURLStr);
+		}
+		return new File(System.getProperty("user.dir")).toURI().toURL();
+	}
+
+	private void generateResource(File file, Map<String,String> config, List<String> comments,
+			List<Capability> caps, List<Requirement> reqs) throws Exception {
+
+		JarResource resource = new JarResource(file);
 		try {
 			// Read config settings and save in thread local state
 			if (config != null) {
-				URL rootURL;
-				String rootURLStr = config.get(ResourceIndexer.ROOT_URL);
-				if (rootURLStr != null) {
-					File rootDir = new File(rootURLStr);
-					if (rootDir.isDirectory())
-						rootURL = rootDir.toURI().toURL();
-					else
-						rootURL = new URL(rootURLStr);
-				} else
-					rootURL = new File(System.getProperty("user.dir")).toURI().toURL();
-
+				URL rootURL = getRootURL(config);
 				String urlTemplate = config.get(ResourceIndexer.URL_TEMPLATE);
 				bundleAnalyzer.setStateLocal(new GeneratorState(rootURL.toURI().normalize(), urlTemplate, resolvers));
 			} else {
 				bundleAnalyzer.setStateLocal(null);
 			}
 
-			// Iterate over the analyzers
+			// Iterate over a copy of the analyzers, other threads may be
+			// analyzing resources at the same time
+			List<Pair<ResourceAnalyzer,Filter>> analyzers;
+			synchronized (this.analyzers) {
+				analyzers = new ArrayList<Pair<ResourceAnalyzer,Filter>>(this.analyzers);
+			}
 			try {
-				synchronized (analyzers) {
-					for (Pair<ResourceAnalyzer,Filter> entry : analyzers) {
-						ResourceAnalyzer analyzer = entry.getFirst();
-						Filter filter = entry.getSecond();
-
-						if (filter == null || filter.match(resource.getProperties())) {
-							try {
-								analyzer.analyzeResource(resource, caps, reqs);
-							} catch (Exception e) {
-								log(LogService.LOG_ERROR,
-										MessageFormat.format("Error calling analyzer \"{0}\" on resource {1}.",
-												analyzer.getClass().getName(), resource.getLocation()),
-										e);
-
-								StringWriter writer = new StringWriter();
-								Formatter comment = new Formatter(writer);
-								comment.format(
-										"Error calling analyzer \"%s\" on resource %s with message %s and stack: ",
-										analyzer.getClass().getName(), resource.getLocation(), e);
-								comment.close();
-								e.printStackTrace(new PrintWriter(writer));
-
-								resourceTag.addComment(writer.toString());
-							}
+				for (Pair<ResourceAnalyzer,Filter> entry : analyzers) {
+					ResourceAnalyzer analyzer = entry.getFirst();
+					Filter filter = entry.getSecond();
+
+					if (filter == null || filter.match(resource.getProperties())) {
+						try {
+							analyzer.analyzeResource(resource, caps, reqs);
+						} catch (Exception e) {
+							log(LogService.LOG_ERROR,
+									MessageFormat.format("Error calling analyzer \"{0}\" on resource {1}.",
+											analyzer.getClass().getName(), resource.getLocation()),
+									e);
+
+							StringWriter writer = new StringWriter();
+							Formatter comment = new Formatter(writer);
+							comment.format("Error calling analyzer \"%s\" on resource %s with message %s and stack: ",
+									analyzer.getClass().getName(), resource.getLocation(), e);
+							comment.close();
+							e.printStackTrace(new PrintWriter(writer));
+
+							comments.add(writer.toString());
 						}
 					}
 				}
@@ -294,26 +484,6 @@ public class RepoIndex implements ResourceIndexer {
 		} finally {
 			resource.close();
 		}
-
-		for (Capability cap : caps) {
-			Tag capTag = new Tag(Schema.ELEM_CAPABILITY);
-			capTag.addAttribute(Schema.ATTR_NAMESPACE, cap.getNamespace());
-
-			appendAttributeAndDirectiveTags(capTag, cap.getAttributes(), cap.getDirectives());
-
-			resourceTag.addContent(capTag);
-		}
-
-		for (Requirement req : reqs) {
-			Tag reqTag = new Tag(Schema.ELEM_REQUIREMENT);
-			reqTag.addAttribute(Schema.ATTR_NAMESPACE, req.getNamespace());
-
-			appendAttributeAndDirectiveTags(reqTag, req.getAttributes(), req.getDirectives());
-
-			resourceTag.addContent(reqTag);
-		}
-
-		return resourceTag;
 	}
 
 	private void log(int level, String message, Throwable t) {
@@ -340,24 +510,6 @@ public class RepoIndex implements ResourceIndexer {
 		}
 	}
 
-	private static void appendAttributeAndDirectiveTags(Tag parentTag, Map<String,Object> attribs,
-			Map<String,String> directives) {
-		for (Entry<String,Object> attribEntry : attribs.entrySet()) {
-			Tag attribTag = new Tag(Schema.ELEM_ATTRIBUTE);
-			attribTag.addAttribute(Schema.ATTR_NAME, attribEntry.getKey());
-			TypedValue value = TypedValue.valueOf(attribEntry.getValue());
-			value.addTo(attribTag);
-			parentTag.addContent(attribTag);
-		}
-
-		for (Entry<String,String> directiveEntry : directives.entrySet()) {
-			Tag directiveTag = new Tag(Schema.ELEM_DIRECTIVE);
-			directiveTag.addAttribute(Schema.ATTR_NAME, directiveEntry.getKey());
-			directiveTag.addAttribute(Schema.ATTR_VALUE, directiveEntry.getValue());
-			parentTag.addContent(directiveTag);
-		}
-	}
-
 	/**
 	 * Get the current analyzers
 	 */
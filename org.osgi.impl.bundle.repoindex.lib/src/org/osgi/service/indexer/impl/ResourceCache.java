@@ -0,0 +1,205 @@
+package org.osgi.service.indexer.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.osgi.service.indexer.impl.util.Hex;
+
+/**
+ * A cache of the resource elements that were written for files. The cache is
+ * a directory with an entry file per indexed file. An entry holds the size,
+ * modification time and SHA-256 digest of the file, a key for the
+ * configuration of the indexer and the resource element.
+ * <p>
+ * An entry is used when the key is the same and the file has the same size
+ * and modification time. When only the modification time differs the digest
+ * of the file is compared, a file that was copied or touched does not need to
+ * be analyzed again.
+ */
+class ResourceCache {
+	private static final Charset	UTF_8	= Charset.forName("UTF-8");
+	private static final String		VERSION	= "1";
+
+	/** the directory with the entries */
+	private final File				dir;
+
+	/**
+	 * Constructor
+	 *
+	 * @param dir the directory with the entries
+	 */
+	ResourceCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Answer the cached resource element of a file
+	 *
+	 * @param file the indexed file
+	 * @param key the key of the configuration that wrote the element
+	 * @return the resource element or null when there is no valid entry
+	 */
+	String get(File file, String key) throws IOException, NoSuchAlgorithmException {
+		File entryFile = getEntryFile(file);
+		if (!entryFile.isFile())
+			return null;
+
+		Entry entry = read(entryFile);
+		if (entry == null || !entry.path.equals(file.getAbsolutePath()) || !entry.key.equals(digest("SHA-1", key)))
+			return null;
+
+		long size = file.length();
+		if (entry.size != size)
+			return null;
+
+		long lastModified = file.lastModified();
+		if (entry.lastModified != lastModified) {
+			if (!entry.sha.equals(sha256(file)))
+				return null;
+			entry.lastModified = lastModified;
+			write(entryFile, entry);
+		}
+		return entry.resource;
+	}
+
+	/**
+	 * Store the resource element of a file
+	 *
+	 * @param file the indexed file
+	 * @param key the key of the configuration that wrote the element
+	 * @param sha the SHA-256 digest of the file or null if not known
+	 * @param resource the resource element
+	 */
+	void put(File file, String key, String sha, String resource) throws IOException, NoSuchAlgorithmException {
+		Entry entry = new Entry();
+		entry.path = file.getAbsolutePath();
+		entry.size = file.length();
+		entry.lastModified = file.lastModified();
+		entry.sha = sha != null ? sha : sha256(file);
+		entry.key = digest("SHA-1", key);
+		entry.resource = resource;
+
+		dir.mkdirs();
+		write(getEntryFile(file), entry);
+	}
+
+	/**
+	 * Remove the entries of files that no longer exist
+	 */
+	void prune() {
+		File[] entryFiles = dir.listFiles();
+		if (entryFiles == null)
+			return;
+
+		for (File entryFile : entryFiles) {
+			try {
+				Entry entry = read(entryFile);
+				if (entry != null && new File(entry.path).isFile())
+					continue;
+			} catch (IOException e) {
+				// a broken entry is removed
+			}
+			entryFile.delete();
+		}
+	}
+
+	private File getEntryFile(File file) throws NoSuchAlgorithmException {
+		return new File(dir, digest("SHA-1", file.getAbsolutePath()));
+	}
+
+	private static class Entry {
+		String	path;
+		long	size;
+		long	lastModified;
+		String	sha;
+		String	key;
+		String	resource;
+	}
+
+	private static Entry read(File entryFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(entryFile), UTF_8));
+		try {
+			if (!VERSION.equals(reader.readLine()))
+				return null;
+
+			Entry entry = new Entry();
+			entry.path = reader.readLine();
+			entry.size = Long.parseLong(reader.readLine());
+			entry.lastModified = Long.parseLong(reader.readLine());
+			entry.sha = reader.readLine();
+			entry.key = reader.readLine();
+			if (entry.path == null || entry.sha == null || entry.key == null)
+				return null;
+
+			StringBuilder sb = new StringBuilder();
+			char[] buffer = new char[4096];
+			int n;
+			while ((n = reader.read(buffer)) >= 0)
+				sb.append(buffer, 0, n);
+			entry.resource = sb.toString();
+			return entry;
+		} catch (NumberFormatException e) {
+			return null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Write an entry to a temporary file first, so a concurrent reader never
+	 * sees half an entry
+	 */
+	private void write(File entryFile, Entry entry) throws IOException {
+		File tmp = File.createTempFile(entryFile.getName(), ".tmp", dir);
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), UTF_8);
+			try {
+				writer.write(VERSION + "\n");
+				writer.write(entry.path + "\n");
+				writer.write(entry.size + "\n");
+				writer.write(entry.lastModified + "\n");
+				writer.write(entry.sha + "\n");
+				writer.write(entry.key + "\n");
+				writer.write(entry.resource);
+			} finally {
+				writer.close();
+			}
+			entryFile.delete();
+			if (!tmp.renameTo(entryFile))
+				throw new IOException("Could not rename " + tmp + " to " + entryFile);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static String digest(String algorithm, String s) throws NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance(algorithm);
+		return Hex.toHexString(digest.digest(s.getBytes(UTF_8)));
+	}
+
+	private static String sha256(File file) throws IOException, NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		byte[] buf = new byte[8192];
+
+		InputStream stream = new FileInputStream(file);
+		try {
+			int bytesRead;
+			while ((bytesRead = stream.read(buf)) >= 0) {
+				digest.update(buf, 0, bytesRead);
+			}
+		} finally {
+			stream.close();
+		}
+		return Hex.toHexString(digest.digest());
+	}
+}
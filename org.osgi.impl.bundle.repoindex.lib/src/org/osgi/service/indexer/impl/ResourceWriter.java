@@ -0,0 +1,146 @@
+package org.osgi.service.indexer.impl;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.osgi.service.indexer.Capability;
+import org.osgi.service.indexer.Requirement;
+import org.osgi.service.indexer.impl.types.TypedValue;
+import org.osgi.service.indexer.impl.util.Indent;
+
+/**
+ * Writes <code>resource</code> elements directly to a writer, without building
+ * a {@link org.osgi.service.indexer.impl.util.Tag Tag} tree first. The output
+ * is the same as printing the equivalent Tag tree.
+ */
+class ResourceWriter {
+	private final PrintWriter pw;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param pw the writer to write to
+	 */
+	ResourceWriter(PrintWriter pw) {
+		this.pw = pw;
+	}
+
+	/**
+	 * Write a resource element
+	 * 
+	 * @param indent the indent of the resource element
+	 * @param comments the comments of the resource
+	 * @param caps the capabilities of the resource
+	 * @param reqs the requirements of the resource
+	 */
+	void writeResource(Indent indent, List<String> comments, List<Capability> caps, List<Requirement> reqs) {
+		boolean empty = comments.isEmpty() && caps.isEmpty() && reqs.isEmpty();
+		open(indent, Schema.ELEM_RESOURCE);
+		if (empty) {
+			pw.print("/>");
+			return;
+		}
+		pw.print('>');
+
+		Indent next = indent.next();
+		for (String comment : comments) {
+			next.print(pw);
+			pw.print("<!-- ");
+			pw.print(escape(comment));
+			pw.print(" -->");
+		}
+		for (Capability cap : caps) {
+			writeClause(next, Schema.ELEM_CAPABILITY, cap.getNamespace(), cap.getAttributes(), cap.getDirectives());
+		}
+		for (Requirement req : reqs) {
+			writeClause(next, Schema.ELEM_REQUIREMENT, req.getNamespace(), req.getAttributes(), req.getDirectives());
+		}
+		close(indent, Schema.ELEM_RESOURCE);
+	}
+
+	private void writeClause(Indent indent, String element, String namespace, Map<String,Object> attribs,
+			Map<String,String> directives) {
+		open(indent, element);
+		attribute(Schema.ATTR_NAMESPACE, namespace);
+		if (attribs.isEmpty() && directives.isEmpty()) {
+			pw.print("/>");
+			return;
+		}
+		pw.print('>');
+
+		Indent next = indent.next();
+		for (Entry<String,Object> attribEntry : attribs.entrySet()) {
+			TypedValue value = TypedValue.valueOf(attribEntry.getValue());
+			open(next, Schema.ELEM_ATTRIBUTE);
+			attribute(Schema.ATTR_NAME, attribEntry.getKey());
+			String typeName = value.getTypeName();
+			if (typeName != null)
+				attribute(Schema.ATTR_TYPE, typeName);
+			attribute(Schema.ATTR_VALUE, value.getValueString());
+			pw.print("/>");
+		}
+		for (Entry<String,String> directiveEntry : directives.entrySet()) {
+			open(next, Schema.ELEM_DIRECTIVE);
+			attribute(Schema.ATTR_NAME, directiveEntry.getKey());
+			attribute(Schema.ATTR_VALUE, directiveEntry.getValue());
+			pw.print("/>");
+		}
+		close(indent, element);
+	}
+
+	private void open(Indent indent, String element) {
+		indent.print(pw);
+		pw.print('<');
+		pw.print(element);
+	}
+
+	private void close(Indent indent, String element) {
+		indent.print(pw);
+		pw.print("</");
+		pw.print(element);
+		pw.print('>');
+	}
+
+	/**
+	 * Attributes must be written in the order of their names, like a Tag does
+	 */
+	private void attribute(String name, String value) {
+		pw.print(' ');
+		pw.print(name);
+		pw.print("=\"");
+		pw.print(escape(value).replace("\"", "&quot;"));
+		pw.print('"');
+	}
+
+	private static String escape(String s) {
+		if (s == null)
+			return "?null?";
+
+		StringBuilder sb = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			String entity;
+			switch (c) {
+				case '<' :
+					entity = "&lt;";
+					break;
+				case '>' :
+					entity = "&gt;";
+					break;
+				case '&' :
+					entity = "&amp;";
+					break;
+				default :
+					if (sb != null)
+						sb.append(c);
+					continue;
+			}
+			if (sb == null)
+				sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+			sb.append(entity);
+		}
+		return sb == null ? s : sb.toString();
+	}
+}
@@ -32,10 +32,29 @@ public class TypedValue {
 	}
 
 	public Tag addTo(Tag tag) {
-		if (type.isList() || type.getType() != ScalarType.String) {
-			tag.addAttribute(Schema.ATTR_TYPE, type.toString());
+		String typeName = getTypeName();
+		if (typeName != null) {
+			tag.addAttribute(Schema.ATTR_TYPE, typeName);
 		}
-		tag.addAttribute(Schema.ATTR_VALUE, type.convertToString(value));
+		tag.addAttribute(Schema.ATTR_VALUE, getValueString());
 		return tag;
 	}
+
+	/**
+	 * @return the name of the type, null for a String since that is the
+	 *         default type
+	 */
+	public String getTypeName() {
+		if (type.isList() || type.getType() != ScalarType.String) {
+			return type.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value as it is written in the index
+	 */
+	public String getValueString() {
+		return type.convertToString(value);
+	}
 }
@@ -12,7 +12,10 @@ import static org.mockito.Mockito.verify;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.net.URI;
 import java.util.Collections;
@@ -22,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -304,6 +308,138 @@ public class TestIndexer extends TestCase {
 		}
 	}
 
+	public void testParallelIndex() throws Exception {
+		RepoIndex indexer = new RepoIndex();
+		indexer.addAnalyzer(new BadAnalyzer(), FrameworkUtil.createFilter("(location=*-export*)"));
+
+		Set<File> files = new LinkedHashSet<File>();
+		for (File file : new File("testdata").listFiles()) {
+			if (file.getName().endsWith(".jar"))
+				files.add(file);
+		}
+		files.add(new File("testdata/does-not-exist.jar"));
+
+		Map<String,String> config = new HashMap<String,String>();
+		config.put(RepoIndex.REPOSITORY_INCREMENT_OVERRIDE, "0");
+		config.put(ResourceIndexer.REPOSITORY_NAME, "parallel");
+		config.put(ResourceIndexer.PRETTY, "true");
+
+		ByteArrayOutputStream serial = new ByteArrayOutputStream();
+		indexer.index(files, serial, config);
+
+		config.put(RepoIndex.PARALLEL, "3");
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		indexer.index(files, parallel, config);
+
+		// the stack traces in the comments differ
+		Pattern comments = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+		assertTrue(serial.toString().contains("Error calling analyzer"));
+		assertEquals(comments.matcher(serial.toString()).replaceAll(""),
+				comments.matcher(parallel.toString()).replaceAll(""));
+	}
+
+	public void testCachedIndex() throws Exception {
+		File dir = new File("generated/cachetest");
+		File cacheDir = new File(dir, "cache");
+		delete(dir);
+		dir.mkdirs();
+		try {
+			File a = new File(dir, "a.jar");
+			File b = new File(dir, "b.jar");
+			copy(new File("testdata/03-export.jar"), a);
+			copy(new File("testdata/06-requirebundle.jar"), b);
+
+			final AtomicInteger analyzed = new AtomicInteger();
+			RepoIndex indexer = new RepoIndex();
+			indexer.addAnalyzer(new ResourceAnalyzer() {
+				public void analyzeResource(Resource resource, List<Capability> capabilities,
+						List<Requirement> requirements) throws Exception {
+					analyzed.incrementAndGet();
+				}
+			}, null);
+
+			Set<File> files = new LinkedHashSet<File>();
+			files.add(a);
+			files.add(b);
+
+			Map<String,String> config = new HashMap<String,String>();
+			config.put(RepoIndex.REPOSITORY_INCREMENT_OVERRIDE, "0");
+			config.put(ResourceIndexer.PRETTY, "true");
+
+			ByteArrayOutputStream uncached = new ByteArrayOutputStream();
+			indexer.index(files, uncached, config);
+			assertEquals(2, analyzed.get());
+
+			config.put(RepoIndex.CACHE, cacheDir.getPath());
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			indexer.index(files, out, config);
+			assertEquals(4, analyzed.get());
+			assertEquals(uncached.toString(), out.toString());
+			assertEquals(2, cacheDir.list().length);
+
+			// nothing changed
+			out.reset();
+			indexer.index(files, out, config);
+			assertEquals(4, analyzed.get());
+			assertEquals(uncached.toString(), out.toString());
+
+			// touched but the same content
+			a.setLastModified(a.lastModified() - 10000);
+			out.reset();
+			indexer.index(files, out, config);
+			assertEquals(4, analyzed.get());
+			assertEquals(uncached.toString(), out.toString());
+
+			// different content
+			copy(new File("testdata/01-bsn+version.jar"), b);
+			out.reset();
+			indexer.index(files, out, config);
+			assertEquals(5, analyzed.get());
+			assertTrue(out.toString().contains("org.example.a"));
+
+			// a different configuration
+			config.put(ResourceIndexer.URL_TEMPLATE, "%f");
+			out.reset();
+			indexer.index(files, out, config);
+			assertEquals(7, analyzed.get());
+
+			// entries of removed files are pruned
+			a.delete();
+			files.remove(a);
+			out.reset();
+			indexer.index(files, out, config);
+			assertEquals(7, analyzed.get());
+			assertEquals(1, cacheDir.list().length);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[4096];
+				int n;
+				while ((n = in.read(buffer)) >= 0)
+					out.write(buffer, 0, n);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
 	public void testAddAnalyzer() throws Exception {
 		RepoIndex indexer = new RepoIndex();
 		indexer.addAnalyzer(new WibbleAnalyzer(), null);